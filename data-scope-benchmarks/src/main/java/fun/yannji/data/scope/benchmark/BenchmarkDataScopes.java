@@ -0,0 +1,89 @@
+package fun.yannji.data.scope.benchmark;
+
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.util.SqlParseUtil;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 基准测试使用的 DataScope
+ *
+ * @author yannji
+ */
+final class BenchmarkDataScopes {
+
+	private BenchmarkDataScopes() {
+	}
+
+	/**
+	 * 创建指定数量的 DataScope，依次轮流过滤语料中的各张表
+	 * @param count 数量
+	 * @param declareTables 是否声明表名
+	 * @return DataScope
+	 */
+	static List<DataScope> create(int count, boolean declareTables) {
+		List<DataScope> dataScopes = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			String tableName = SqlCorpus.TABLES[i % SqlCorpus.TABLES.length];
+			dataScopes.add(new ColumnEqualsDataScope("BENCHMARK_" + i, tableName, "scope_" + i, i, declareTables));
+		}
+		return dataScopes;
+	}
+
+	private static final class ColumnEqualsDataScope implements DataScope {
+
+		private final String key;
+
+		private final String tableName;
+
+		private final String columnName;
+
+		private final long value;
+
+		private final boolean declareTables;
+
+		private ColumnEqualsDataScope(String key, String tableName, String columnName, long value,
+				boolean declareTables) {
+			this.key = key;
+			this.tableName = tableName;
+			this.columnName = columnName;
+			this.value = value;
+			this.declareTables = declareTables;
+		}
+
+		@Override
+		public String getDataScopeKey() {
+			return this.key;
+		}
+
+		@Override
+		public boolean includes(String tableName) {
+			return this.tableName.equals(tableName);
+		}
+
+		@Override
+		public Expression getExpression(String tableName, Alias tableAlias) {
+			return new EqualsTo(SqlParseUtil.getAliasColumn(tableName, tableAlias, this.columnName),
+					new LongValue(this.value));
+		}
+
+		@Override
+		public Set<String> getTableNames() {
+			return this.declareTables ? Collections.singleton(this.tableName) : null;
+		}
+
+		@Override
+		public String getFingerprint() {
+			return "1";
+		}
+
+	}
+
+}
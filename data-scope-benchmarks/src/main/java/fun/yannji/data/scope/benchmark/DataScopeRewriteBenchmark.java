@@ -0,0 +1,174 @@
+package fun.yannji.data.scope.benchmark;
+
+import com.baomidou.mybatisplus.extension.parser.JsqlParserGlobal;
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.holder.DataScopeTableIndex;
+import fun.yannji.data.scope.processor.DataScopeRewritePlan;
+import fun.yannji.data.scope.processor.DataScopeSqlProcessor;
+import net.sf.jsqlparser.statement.Statement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQL 改写链路的基准测试
+ * <p>
+ * 以不注入数据权限的解析 + 序列化作为基线，分别测量解析、注入 + 序列化、单独序列化三个阶段，
+ * 以及完整的 parserSingle、词法预判和改写计划执行的开销。配合 -prof gc 可以查看各阶段的内存分配速率。
+ *
+ * @author yannji
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataScopeRewriteBenchmark {
+
+	@Param({ "SINGLE_TABLE", "MULTI_JOIN", "NESTED_SUBQUERY", "UNION", "CTE", "HUGE_IN_LIST", "UPDATE", "DELETE" })
+	public SqlCorpus corpus;
+
+	@Param({ "1", "5", "50" })
+	public int scopeCount;
+
+	private String sql;
+
+	private List<DataScope> dataScopes;
+
+	private DataScopeTableIndex tableIndex;
+
+	private PhaseProcessor processor;
+
+	/**
+	 * 关闭快速改写的处理器，所有语句都走 AST 解析
+	 */
+	private DataScopeSqlProcessor astProcessor;
+
+	private DataScopeRewritePlan rewritePlan;
+
+	/**
+	 * 已解析的语句，用于单独测量序列化
+	 */
+	private Statement parsedStatement;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		this.sql = this.corpus.getSql();
+		this.dataScopes = BenchmarkDataScopes.create(this.scopeCount, true);
+		this.tableIndex = DataScopeTableIndex.of(this.dataScopes);
+		this.processor = new PhaseProcessor();
+		this.astProcessor = new DataScopeSqlProcessor();
+		this.astProcessor.setFastPathEnabled(false);
+		this.rewritePlan = this.processor.compile(this.sql, this.tableIndex);
+		this.parsedStatement = JsqlParserGlobal.parse(this.sql);
+	}
+
+	/**
+	 * 基线：不注入数据权限的解析 + 序列化
+	 */
+	@Benchmark
+	public String baselineUnscopedParse() throws Exception {
+		return JsqlParserGlobal.parse(this.sql).toString();
+	}
+
+	/**
+	 * 完整改写：解析 + 注入 + 序列化
+	 */
+	@Benchmark
+	public String parserSingle() {
+		return this.processor.parserSingle(this.sql, this.dataScopes);
+	}
+
+	/**
+	 * 改写：简单单表查询走快速改写，其余语句回退到 AST 解析
+	 */
+	@Benchmark
+	public Object rewrite() {
+		return this.processor.rewrite(this.sql, this.tableIndex);
+	}
+
+	/**
+	 * 改写：关闭快速改写，与 {@link #rewrite()} 对比
+	 */
+	@Benchmark
+	public Object rewriteWithoutFastPath() {
+		return this.astProcessor.rewrite(this.sql, this.tableIndex);
+	}
+
+	/**
+	 * 阶段：解析
+	 */
+	@Benchmark
+	public Statement phaseParse() throws Exception {
+		return JsqlParserGlobal.parse(this.sql);
+	}
+
+	/**
+	 * 阶段：注入 + 序列化，语句在每次调用前重新解析，不计入耗时
+	 */
+	@Benchmark
+	public String phaseRewrite(ParsedStatementState state) {
+		return this.processor.process(state.statement, this.tableIndex);
+	}
+
+	/**
+	 * 阶段：序列化
+	 */
+	@Benchmark
+	public String phaseSerialize() {
+		return this.parsedStatement.toString();
+	}
+
+	/**
+	 * 解析前的词法预判
+	 */
+	@Benchmark
+	public boolean prefilter() {
+		return this.tableIndex.mayContainTable(this.sql);
+	}
+
+	/**
+	 * 执行预编译的改写计划
+	 */
+	@Benchmark
+	public Object rewritePlanResolve() {
+		return this.rewritePlan.resolve();
+	}
+
+	@State(Scope.Thread)
+	public static class ParsedStatementState {
+
+		private Statement statement;
+
+		@Setup(Level.Invocation)
+		public void parse(DataScopeRewriteBenchmark benchmark) throws Exception {
+			this.statement = JsqlParserGlobal.parse(benchmark.sql);
+		}
+
+	}
+
+	/**
+	 * 暴露注入阶段，便于单独测量
+	 */
+	static final class PhaseProcessor extends DataScopeSqlProcessor {
+
+		String process(Statement statement, DataScopeTableIndex tableIndex) {
+			return processParser(statement, 0, null, tableIndex.getDataScopes());
+		}
+
+	}
+
+}
@@ -0,0 +1,79 @@
+package fun.yannji.data.scope.benchmark;
+
+/**
+ * 基准测试使用的 SQL 语料，覆盖常见的 SQL 结构
+ *
+ * @author yannji
+ */
+public enum SqlCorpus {
+
+	/**
+	 * 单表查询
+	 */
+	SINGLE_TABLE("SELECT id, name, status FROM sys_user WHERE id = ?"),
+
+	/**
+	 * 右连接、内连接与隐式内连接混用
+	 */
+	MULTI_JOIN("SELECT u.id, r.name, d.name FROM sys_user u RIGHT JOIN sys_role r ON r.id = u.role_id "
+			+ "INNER JOIN sys_dept d ON d.id = u.dept_id LEFT JOIN sys_order o ON o.user_id = u.id, sys_user_role ur "
+			+ "WHERE ur.user_id = u.id AND u.status = ?"),
+
+	/**
+	 * WHERE、SELECT、FROM 中的嵌套子查询
+	 */
+	NESTED_SUBQUERY("SELECT u.id, (SELECT COUNT(1) FROM sys_order o WHERE o.user_id = u.id) AS order_count "
+			+ "FROM (SELECT id, dept_id FROM sys_user WHERE status = ?) u "
+			+ "WHERE u.dept_id IN (SELECT id FROM sys_dept WHERE parent_id = ? "
+			+ "AND EXISTS (SELECT 1 FROM sys_role r WHERE r.dept_id = sys_dept.id))"),
+
+	/**
+	 * UNION
+	 */
+	UNION("SELECT id, name FROM sys_user WHERE status = ? UNION ALL SELECT id, name FROM sys_role WHERE status = ?"),
+
+	/**
+	 * CTE
+	 */
+	CTE("WITH active_user AS (SELECT id FROM sys_user WHERE status = ?) "
+			+ "SELECT ur.* FROM sys_user_role ur JOIN active_user a ON a.id = ur.user_id"),
+
+	/**
+	 * MyBatis foreach 生成的大 IN 列表
+	 */
+	HUGE_IN_LIST(hugeInList(5000)),
+
+	/**
+	 * update
+	 */
+	UPDATE("UPDATE sys_user SET status = ?, update_time = ? WHERE id = ?"),
+
+	/**
+	 * delete
+	 */
+	DELETE("DELETE FROM sys_order WHERE create_time < ?");
+
+	/**
+	 * 语料涉及的表
+	 */
+	static final String[] TABLES = { "sys_user", "sys_role", "sys_dept", "sys_order", "sys_user_role" };
+
+	private final String sql;
+
+	SqlCorpus(String sql) {
+		this.sql = sql;
+	}
+
+	public String getSql() {
+		return this.sql;
+	}
+
+	private static String hugeInList(int size) {
+		StringBuilder builder = new StringBuilder("SELECT id, amount FROM sys_order WHERE status = ? AND id IN (");
+		for (int i = 0; i < size; i++) {
+			builder.append(i == 0 ? "?" : ", ?");
+		}
+		return builder.append(")").toString();
+	}
+
+}
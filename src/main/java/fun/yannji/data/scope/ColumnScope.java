@@ -0,0 +1,61 @@
+package fun.yannji.data.scope;
+
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.NullValue;
+import net.sf.jsqlparser.schema.Column;
+
+/**
+ * 字段级数据权限：在 SQL 的查询列表中把字段替换为脱敏表达式，如 NULL 或 CONCAT(LEFT(t.phone, 3), '****')，
+ * 由数据库完成脱敏，不需要在 Java 中逐行处理结果对象。
+ * <p>
+ * 与其它 DataScope 一样通过 key 开启，或实现 {@link GlobalDataScope} 始终生效；按角色脱敏时为不同角色开启不同的 ColumnScope。
+ * 只替换出现在语句结果中的查询列表（顶层查询、集合运算的各个分支、from/join 中的子查询）中直接引用的字段，
+ * select * 及 t.* 会按 MyBatis-Plus TableInfoHelper 中的表信息展开后再替换。
+ * 没有表信息无法展开、函数及运算等查询项中引用了需要替换的字段、多表查询中无法确定字段所属的表时抛出异常，不会返回未脱敏的数据。
+ * where、having、on、order by、update set、insert ... select 等位置的子查询中的字段不会被替换，不影响过滤和写入的值。
+ * <p>
+ * 脱敏表达式需要只由表名、字段决定（不能包含 ? 占位符），改写结果会按 {@link #getFingerprint()} 缓存
+ *
+ * @author yannji
+ */
+public interface ColumnScope extends DataScope {
+
+	/**
+	 * 获取查询列表中字段的替换表达式，结果列名保持不变
+	 * @param tableName 表名
+	 * @param columnName 字段名（已去除转义字符）
+	 * @param column SQL 中的字段，select * 展开的字段带有表别名或表名
+	 * @return 替换表达式，返回 null 时保留原字段
+	 */
+	Expression getColumnExpression(String tableName, String columnName, Column column);
+
+	/**
+	 * 字段级数据权限默认不过滤行
+	 * @param tableName 表名
+	 * @param tableAlias 表别名
+	 * @return null
+	 */
+	@Override
+	default Expression getExpression(String tableName, Alias tableAlias) {
+		return null;
+	}
+
+	/**
+	 * 脱敏表达式与当前用户无关，默认可以缓存
+	 * @return 指纹
+	 */
+	@Override
+	default String getFingerprint() {
+		return getDataScopeKey();
+	}
+
+	/**
+	 * 将字段替换为 NULL
+	 * @return NULL
+	 */
+	static Expression nullValue() {
+		return new NullValue();
+	}
+
+}
@@ -3,6 +3,9 @@ package fun.yannji.data.scope;
 import net.sf.jsqlparser.expression.Alias;
 import net.sf.jsqlparser.expression.Expression;
 
+import java.util.List;
+import java.util.Set;
+
 public interface DataScope {
 
 	/**
@@ -18,6 +21,25 @@ public interface DataScope {
 	 */
 	boolean includes(String tableName);
 
+	/**
+	 * 声明需要过滤的表名（不区分大小写）。
+	 * 返回非 null 时，DataScopeHolder 会据此建立 表名 → DataScope 的索引，解析 SQL 时直接按表名查找，不再调用 {@link #includes}；
+	 * 返回 null 表示未声明，解析时仍逐表调用 {@link #includes} 判断
+	 * @return 表名集合，默认为 null
+	 */
+	default Set<String> getTableNames() {
+		return null;
+	}
+
+	/**
+	 * 声明需要过滤的表名通配模式（不区分大小写），支持 * 通配，如 sys_*。
+	 * 与 {@link #getTableNames} 任一返回非 null 即视为已声明表集合
+	 * @return 表名通配模式集合，默认为 null
+	 */
+	default Set<String> getTablePatterns() {
+		return null;
+	}
+
 	/**
 	 * 构建条件表达式
 	 * @param tableName
@@ -26,4 +48,45 @@ public interface DataScope {
 	 */
 	Expression getExpression(String tableName, Alias tableAlias);
 
-}
\ No newline at end of file
+	/**
+	 * 表达式指纹，用于改写 SQL 的缓存。
+	 * 返回非 null 时表示只要指纹不变，相同表名/别名下 {@link #getExpression} 的结果就不变；
+	 * 返回 null 表示表达式是动态的（如依赖当前登录用户），此时改写结果不会被缓存
+	 * @return 指纹，默认为 null
+	 */
+	default String getFingerprint() {
+		return null;
+	}
+
+	/**
+	 * 在同一个数据权限作用域内（如 {@link fun.yannji.data.scope.helper.DataScopeHelper#openDataScope} 打开的作用域、
+	 * {@link fun.yannji.data.scope.annotation.DataScoped} 方法的一次调用），相同表名/别名下 {@link #getExpression} 的结果是否不变。
+	 * 返回 true 时表达式（以及参数化 DataScope 的参数值）按 DataScope key + 表名 + 别名 在作用域内只计算一次，
+	 * 适用于需要查询组织树等开销较大的 DataScope
+	 * @return 默认为 false
+	 */
+	default boolean isMemoizable() {
+		return false;
+	}
+
+	/**
+	 * insert 语句中需要自动填充的字段，语句的字段列表中已经包含的字段不会填充，由调用方提供的值为准。
+	 * 字段只能由表名决定，改写结果会被缓存；值在每次执行时通过 {@link #getInsertValues} 获取，以参数形式绑定，
+	 * 同一条 insert 语句（如 saveBatch 的每一行）只改写一次
+	 * @param tableName 表名
+	 * @return 字段名，默认为 null 表示不填充
+	 */
+	default List<String> getInsertColumns(String tableName) {
+		return null;
+	}
+
+	/**
+	 * insert 语句自动填充字段的值
+	 * @param tableName 表名
+	 * @return 值，顺序与 {@link #getInsertColumns} 一致
+	 */
+	default List<Object> getInsertValues(String tableName) {
+		return null;
+	}
+
+}
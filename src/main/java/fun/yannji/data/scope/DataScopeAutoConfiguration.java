@@ -1,16 +1,39 @@
 package fun.yannji.data.scope;
 
+import fun.yannji.data.scope.annotation.DataScopedAnnotationAdvisor;
+import fun.yannji.data.scope.annotation.DataScopedMethodInterceptor;
+import fun.yannji.data.scope.annotation.DataScopedStatementRegistry;
+import fun.yannji.data.scope.helper.DataScopeHelperConfigurer;
 import fun.yannji.data.scope.holder.DataScopeHolder;
+import fun.yannji.data.scope.interceptor.DataPermissionInterceptorConfigurer;
+import fun.yannji.data.scope.interceptor.DataScopeStreamingInterceptor;
+import fun.yannji.data.scope.metrics.DataScopeMetrics;
+import fun.yannji.data.scope.metrics.MicrometerDataScopeMetrics;
+import fun.yannji.data.scope.propagation.DataScopeTaskDecorator;
+import fun.yannji.data.scope.warmup.DataScopeWarmUp;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.ibatis.session.SqlSessionFactory;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.task.TaskDecorator;
 
 
-@AutoConfiguration
+@AutoConfiguration(afterName = {
+		"org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration",
+		"org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration" })
 @RequiredArgsConstructor
 @ConditionalOnBean(DataScope.class)
+@EnableConfigurationProperties(DataScopeProperties.class)
 public class DataScopeAutoConfiguration {
 
 	@Bean
@@ -19,4 +42,97 @@ public class DataScopeAutoConfiguration {
 		return new DataScopeHolder();
 	}
 
-}
\ No newline at end of file
+	/**
+	 * 为 DataScopeHelper 设置 DataScopeHolder，按 key 开启数据权限时不再每次查找 Bean
+	 */
+	@Bean
+	@ConditionalOnMissingBean
+	public DataScopeHelperConfigurer dataScopeHelperConfigurer(ObjectProvider<DataScopeHolder> dataScopeHolder) {
+		return new DataScopeHelperConfigurer(dataScopeHolder);
+	}
+
+	/**
+	 * Mapper 方法上 {@link fun.yannji.data.scope.annotation.DataScoped} 声明的数据权限，拦截器按 MappedStatement id 查找
+	 */
+	@Bean
+	@ConditionalOnMissingBean
+	public DataScopedStatementRegistry dataScopedStatementRegistry(DataScopeHolder dataScopeHolder) {
+		return new DataScopedStatementRegistry(dataScopeHolder);
+	}
+
+	/**
+	 * 为 SqlSessionFactory 中手动创建的 DataPermissionInterceptor 注入 DataScopeHolder、注解声明的数据权限及监控指标
+	 */
+	@Bean
+	@ConditionalOnMissingBean
+	public DataPermissionInterceptorConfigurer dataPermissionInterceptorConfigurer(
+			ObjectProvider<SqlSessionFactory> sqlSessionFactories, ObjectProvider<DataScopeHolder> dataScopeHolder,
+			ObjectProvider<DataScopedStatementRegistry> dataScopedStatementRegistry,
+			ObjectProvider<DataScopeMetrics> dataScopeMetrics) {
+		return new DataPermissionInterceptorConfigurer(sqlSessionFactories, dataScopeHolder,
+				dataScopedStatementRegistry, dataScopeMetrics);
+	}
+
+	/**
+	 * {@link fun.yannji.data.scope.annotation.DataScoped} 切面，DataScopeHolder 延迟获取，避免 Advisor 提前初始化其它 Bean
+	 */
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	@ConditionalOnMissingBean
+	public static DataScopedAnnotationAdvisor dataScopedAnnotationAdvisor(
+			ObjectProvider<DataScopeHolder> dataScopeHolderProvider) {
+		return new DataScopedAnnotationAdvisor(new DataScopedMethodInterceptor(dataScopeHolderProvider));
+	}
+
+	/**
+	 * 启动时预热静态 SQL 的解析及改写缓存
+	 */
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnProperty(prefix = DataScopeProperties.PREFIX, name = "warm-up.enabled", havingValue = "true")
+	public DataScopeWarmUp dataScopeWarmUp(ObjectProvider<SqlSessionFactory> sqlSessionFactories,
+			DataScopeHolder dataScopeHolder, DataScopedStatementRegistry dataScopedStatementRegistry,
+			DataScopeProperties properties) {
+		return new DataScopeWarmUp(sqlSessionFactories, dataScopeHolder, dataScopedStatementRegistry,
+				properties.getWarmUp());
+	}
+
+	/**
+	 * 游标、流式查询及嵌套查询的数据权限插件，由 MyBatis-Plus 自动配置注册到 SqlSessionFactory，
+	 * 游标查询不经过 beforeQuery，由它消费 startDataScope 的一次性设置
+	 */
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnProperty(prefix = DataScopeProperties.PREFIX, name = "streaming.enabled", havingValue = "true",
+			matchIfMissing = true)
+	public DataScopeStreamingInterceptor dataScopeStreamingInterceptor(
+			DataScopedStatementRegistry dataScopedStatementRegistry) {
+		return new DataScopeStreamingInterceptor(dataScopedStatementRegistry);
+	}
+
+	/**
+	 * 没有自定义 TaskDecorator 时，Spring Boot 自动配置的任务线程池（@Async）会使用它传递数据权限
+	 */
+	@Bean
+	@ConditionalOnMissingBean(TaskDecorator.class)
+	public DataScopeTaskDecorator dataScopeTaskDecorator() {
+		return new DataScopeTaskDecorator();
+	}
+
+	/**
+	 * 存在 MeterRegistry 时启用 Micrometer 监控指标
+	 */
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(MeterRegistry.class)
+	@ConditionalOnBean(MeterRegistry.class)
+	static class DataScopeMetricsConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean(DataScopeMetrics.class)
+		public MicrometerDataScopeMetrics dataScopeMetrics(MeterRegistry meterRegistry) {
+			return new MicrometerDataScopeMetrics(meterRegistry);
+		}
+
+	}
+
+}
@@ -0,0 +1,62 @@
+package fun.yannji.data.scope;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 数据权限配置
+ *
+ * @author yannji
+ */
+@Data
+@ConfigurationProperties(prefix = DataScopeProperties.PREFIX)
+public class DataScopeProperties {
+
+	public static final String PREFIX = "data-scope";
+
+	/**
+	 * 启动预热
+	 */
+	private WarmUp warmUp = new WarmUp();
+
+	/**
+	 * 游标、流式查询
+	 */
+	private Streaming streaming = new Streaming();
+
+	@Data
+	public static class WarmUp {
+
+		/**
+		 * 是否在启动时预先解析、改写所有静态 SQL
+		 */
+		private boolean enabled = false;
+
+		/**
+		 * 预热使用的线程数，小于等于 0 时使用 CPU 核数
+		 */
+		private int parallelism = 0;
+
+		/**
+		 * 没有 @DataScoped 注解的静态语句预热时使用的 DataScope key，为空时这些语句只解析不改写
+		 */
+		private List<String> dataScopeKeys = new ArrayList<>();
+
+	}
+
+	@Data
+	public static class Streaming {
+
+		/**
+		 * 是否注册 {@link fun.yannji.data.scope.interceptor.DataScopeStreamingInterceptor}，
+		 * 在游标、ResultHandler 查询及含有嵌套查询的语句执行期间保持数据权限。
+		 * 关闭后游标查询不会消费 startDataScope 的一次性设置，需要自行清除
+		 */
+		private boolean enabled = true;
+
+	}
+
+}
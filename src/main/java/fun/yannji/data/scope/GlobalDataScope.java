@@ -0,0 +1,15 @@
+package fun.yannji.data.scope;
+
+/**
+ * 始终生效的 DataScope，如多租户、逻辑删除、区域等行级过滤条件
+ * <p>
+ * 实现此接口的 DataScope Bean 不需要通过 startDataScope、openDataScope 或 {@link fun.yannji.data.scope.annotation.DataScoped} 开启，
+ * 拦截器会把它们并入每条语句生效的 DataScopeSet，与其它数据权限在同一次解析、遍历中注入（包括 join 的 on 条件），
+ * 不需要再单独注册 TenantLineInnerInterceptor 等插件重复解析 SQL。
+ * 显式开启的 DataScope 中已经包含时不会重复注入
+ *
+ * @author yannji
+ */
+public interface GlobalDataScope extends DataScope {
+
+}
@@ -0,0 +1,35 @@
+package fun.yannji.data.scope;
+
+import net.sf.jsqlparser.expression.Alias;
+
+import java.util.List;
+
+/**
+ * 参数化的 DataScope
+ * <p>
+ * {@link #getExpression} 返回的表达式使用 {@link net.sf.jsqlparser.expression.JdbcParameter}（即 ?）作为占位符，
+ * 具体的值由 {@link #getParameterValues} 提供，并以额外参数的形式追加到 BoundSql 中。
+ * 这样不同用户得到的改写 SQL 完全一致，既能命中改写缓存，也不会打散数据库/驱动的预编译语句缓存。
+ *
+ * @author yannji
+ */
+public interface ParameterizedDataScope extends DataScope {
+
+	/**
+	 * 获取表达式中占位符对应的参数值
+	 * @param tableName 表名
+	 * @param tableAlias 表别名
+	 * @return 参数值，顺序与占位符在表达式 SQL 文本中出现的顺序一致
+	 */
+	List<Object> getParameterValues(String tableName, Alias tableAlias);
+
+	/**
+	 * 参数化表达式的结构与参数值无关，默认可以缓存
+	 * @return 指纹
+	 */
+	@Override
+	default String getFingerprint() {
+		return getDataScopeKey();
+	}
+
+}
@@ -0,0 +1,31 @@
+package fun.yannji.data.scope.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 声明方法执行期间生效的数据权限，可用于 Service 方法及 Mapper 方法，标注在类上时对所有方法生效，方法上的注解优先。
+ * <ul>
+ * <li>Spring Bean 的方法：调用期间打开数据权限作用域，方法中执行的所有语句都会注入数据权限</li>
+ * <li>Mapper 方法：按 MappedStatement id 直接查找，执行该语句且当前线程没有开启数据权限时生效</li>
+ * </ul>
+ *
+ * @author yannji
+ */
+@Target({ ElementType.TYPE, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+@Inherited
+@Documented
+public @interface DataScoped {
+
+	/**
+	 * 生效的 DataScope key
+	 * @return DataScope key
+	 */
+	String[] value();
+
+}
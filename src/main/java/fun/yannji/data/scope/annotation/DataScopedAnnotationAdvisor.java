@@ -0,0 +1,36 @@
+package fun.yannji.data.scope.annotation;
+
+import org.aopalliance.aop.Advice;
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.support.AbstractPointcutAdvisor;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+
+/**
+ * 匹配类或方法上标注了 {@link DataScoped} 的 Bean
+ *
+ * @author yannji
+ */
+public class DataScopedAnnotationAdvisor extends AbstractPointcutAdvisor {
+
+	private final DataScopedMethodInterceptor advice;
+
+	private final Pointcut pointcut;
+
+	public DataScopedAnnotationAdvisor(DataScopedMethodInterceptor advice) {
+		this.advice = advice;
+		this.pointcut = new ComposablePointcut(new AnnotationMatchingPointcut(DataScoped.class, true))
+			.union(new AnnotationMatchingPointcut(null, DataScoped.class, true));
+	}
+
+	@Override
+	public Pointcut getPointcut() {
+		return this.pointcut;
+	}
+
+	@Override
+	public Advice getAdvice() {
+		return this.advice;
+	}
+
+}
@@ -0,0 +1,37 @@
+package fun.yannji.data.scope.annotation;
+
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+
+import java.lang.reflect.Method;
+
+/**
+ * 查找方法上生效的 {@link DataScoped}：依次查找实现类方法、接口方法、实现类、声明方法的类
+ *
+ * @author yannji
+ */
+final class DataScopedAnnotationResolver {
+
+	private DataScopedAnnotationResolver() {
+	}
+
+	static DataScoped find(Method method, Class<?> targetClass) {
+		Method specificMethod = targetClass == null ? method : AopUtils.getMostSpecificMethod(method, targetClass);
+		DataScoped dataScoped = AnnotatedElementUtils.findMergedAnnotation(specificMethod, DataScoped.class);
+		if (dataScoped == null && specificMethod != method) {
+			dataScoped = AnnotatedElementUtils.findMergedAnnotation(method, DataScoped.class);
+		}
+		if (dataScoped == null && targetClass != null) {
+			dataScoped = AnnotatedElementUtils.findMergedAnnotation(targetClass, DataScoped.class);
+		}
+		if (dataScoped == null) {
+			dataScoped = AnnotatedElementUtils.findMergedAnnotation(method.getDeclaringClass(), DataScoped.class);
+		}
+		return dataScoped;
+	}
+
+	static DataScoped findOnClass(Class<?> clazz) {
+		return AnnotatedElementUtils.findMergedAnnotation(clazz, DataScoped.class);
+	}
+
+}
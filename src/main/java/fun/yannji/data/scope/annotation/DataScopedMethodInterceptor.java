@@ -0,0 +1,58 @@
+package fun.yannji.data.scope.annotation;
+
+import fun.yannji.data.scope.helper.DataScopeHandle;
+import fun.yannji.data.scope.helper.DataScopeHelper;
+import fun.yannji.data.scope.holder.DataScopeHolder;
+import fun.yannji.data.scope.holder.DataScopeSet;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.MethodClassKey;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link DataScoped} 方法拦截器，调用期间打开数据权限作用域。注解及 DataScope 按 方法 + 目标类 解析一次后缓存
+ *
+ * @author yannji
+ */
+public class DataScopedMethodInterceptor implements MethodInterceptor {
+
+	private final ObjectProvider<DataScopeHolder> dataScopeHolderProvider;
+
+	private final Map<MethodClassKey, DataScopeSet> dataScopeSetCache = new ConcurrentHashMap<>();
+
+	public DataScopedMethodInterceptor(ObjectProvider<DataScopeHolder> dataScopeHolderProvider) {
+		this.dataScopeHolderProvider = dataScopeHolderProvider;
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		DataScopeSet dataScopeSet = getDataScopeSet(invocation);
+		if (dataScopeSet.isEmpty()) {
+			return invocation.proceed();
+		}
+		try (DataScopeHandle ignored = DataScopeHelper.openDataScope(dataScopeSet)) {
+			return invocation.proceed();
+		}
+	}
+
+	private DataScopeSet getDataScopeSet(MethodInvocation invocation) {
+		Method method = invocation.getMethod();
+		Object target = invocation.getThis();
+		Class<?> targetClass = target == null ? null : AopUtils.getTargetClass(target);
+		MethodClassKey cacheKey = new MethodClassKey(method, targetClass);
+		DataScopeSet dataScopeSet = this.dataScopeSetCache.get(cacheKey);
+		if (dataScopeSet == null) {
+			DataScoped dataScoped = DataScopedAnnotationResolver.find(method, targetClass);
+			dataScopeSet = dataScoped == null ? DataScopeSet.EMPTY
+					: this.dataScopeHolderProvider.getObject().getDataScopeSet(dataScoped.value());
+			this.dataScopeSetCache.put(cacheKey, dataScopeSet);
+		}
+		return dataScopeSet;
+	}
+
+}
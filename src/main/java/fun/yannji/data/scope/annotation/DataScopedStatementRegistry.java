@@ -0,0 +1,78 @@
+package fun.yannji.data.scope.annotation;
+
+import fun.yannji.data.scope.holder.DataScopeHolder;
+import fun.yannji.data.scope.holder.DataScopeSet;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.MappedStatement;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MappedStatement id → Mapper 方法上 {@link DataScoped} 声明的 DataScopeSet。
+ * <p>
+ * 每个 id 只在第一次执行时通过反射解析一次，之后直接查表；没有注解的语句同样缓存结果
+ *
+ * @author yannji
+ */
+@Slf4j
+public class DataScopedStatementRegistry {
+
+	private final DataScopeHolder dataScopeHolder;
+
+	private final Map<String, DataScopeSet> dataScopeSetCache = new ConcurrentHashMap<>();
+
+	public DataScopedStatementRegistry(DataScopeHolder dataScopeHolder) {
+		this.dataScopeHolder = dataScopeHolder;
+	}
+
+	/**
+	 * 获取 MappedStatement 对应的 Mapper 方法上声明的数据权限
+	 * @param ms MappedStatement
+	 * @return DataScopeSet，没有声明时返回 {@link DataScopeSet#EMPTY}
+	 */
+	public DataScopeSet getDataScopeSet(MappedStatement ms) {
+		String statementId = ms.getId();
+		DataScopeSet dataScopeSet = this.dataScopeSetCache.get(statementId);
+		if (dataScopeSet == null) {
+			DataScoped dataScoped = resolve(statementId);
+			dataScopeSet = dataScoped == null ? DataScopeSet.EMPTY
+					: this.dataScopeHolder.getDataScopeSet(dataScoped.value());
+			this.dataScopeSetCache.put(statementId, dataScopeSet);
+		}
+		return dataScopeSet;
+	}
+
+	/**
+	 * 根据 MappedStatement id（Mapper 全限定名.方法名）查找注解，优先使用方法上的注解
+	 * @param statementId MappedStatement id
+	 * @return DataScoped，找不到 Mapper 或没有注解时返回 null
+	 */
+	private static DataScoped resolve(String statementId) {
+		int index = statementId.lastIndexOf('.');
+		if (index <= 0) {
+			return null;
+		}
+		Class<?> mapperClass;
+		try {
+			mapperClass = Resources.classForName(statementId.substring(0, index));
+		}
+		catch (ClassNotFoundException e) {
+			log.debug("No mapper class found for statement {}", statementId);
+			return null;
+		}
+		String methodName = statementId.substring(index + 1);
+		for (Method method : mapperClass.getMethods()) {
+			if (method.getName().equals(methodName)) {
+				DataScoped dataScoped = DataScopedAnnotationResolver.find(method, mapperClass);
+				if (dataScoped != null) {
+					return dataScoped;
+				}
+			}
+		}
+		return DataScopedAnnotationResolver.findOnClass(mapperClass);
+	}
+
+}
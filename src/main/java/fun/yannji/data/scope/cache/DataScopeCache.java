@@ -0,0 +1,115 @@
+package fun.yannji.data.scope.cache;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 有界缓存，超出容量时按写入顺序淘汰最早的条目（FIFO）
+ * <p>
+ * 读操作无锁，适合“少量 key 被反复读取”的 SQL 改写场景；同时统计命中、未命中和淘汰次数
+ *
+ * @param <K> key
+ * @param <V> value
+ * @author yannji
+ */
+public class DataScopeCache<K, V> {
+
+	/**
+	 * 默认最大缓存条目数
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 2048;
+
+	private final int maximumSize;
+
+	private final ConcurrentHashMap<K, V> cache;
+
+	/**
+	 * 按写入顺序记录 key，用于淘汰
+	 */
+	private final Queue<K> insertionOrder = new ConcurrentLinkedQueue<>();
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private final LongAdder evictionCount = new LongAdder();
+
+	/**
+	 * @param maximumSize 最大缓存条目数，小于等于 0 时不缓存任何内容
+	 */
+	public DataScopeCache(int maximumSize) {
+		this.maximumSize = maximumSize;
+		this.cache = new ConcurrentHashMap<>(Math.max(16, Math.min(maximumSize, 1024)));
+	}
+
+	/**
+	 * 获取缓存值
+	 * @param key key
+	 * @return 缓存值，未命中时返回 null
+	 */
+	public V get(K key) {
+		V value = this.cache.get(key);
+		if (value == null) {
+			this.missCount.increment();
+		}
+		else {
+			this.hitCount.increment();
+		}
+		return value;
+	}
+
+	/**
+	 * 写入缓存，超出容量时淘汰最早写入的条目
+	 * @param key key
+	 * @param value value
+	 */
+	public void put(K key, V value) {
+		if (this.maximumSize <= 0) {
+			return;
+		}
+		if (this.cache.put(key, value) != null) {
+			return;
+		}
+		this.insertionOrder.add(key);
+		while (this.cache.size() > this.maximumSize) {
+			K eldest = this.insertionOrder.poll();
+			if (eldest == null) {
+				break;
+			}
+			if (this.cache.remove(eldest) != null) {
+				this.evictionCount.increment();
+			}
+		}
+	}
+
+	/**
+	 * 清空缓存，统计数据保留
+	 */
+	public void clear() {
+		this.cache.clear();
+		this.insertionOrder.clear();
+	}
+
+	public int size() {
+		return this.cache.size();
+	}
+
+	public int getMaximumSize() {
+		return this.maximumSize;
+	}
+
+	public long getHitCount() {
+		return this.hitCount.sum();
+	}
+
+	public long getMissCount() {
+		return this.missCount.sum();
+	}
+
+	public long getEvictionCount() {
+		return this.evictionCount.sum();
+	}
+
+}
@@ -0,0 +1,83 @@
+package fun.yannji.data.scope.cache;
+
+import fun.yannji.data.scope.DataScope;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 改写 SQL 缓存的 key：原始 SQL + 有序的 DataScope 标识 + 各 DataScope 的表达式指纹
+ *
+ * @author yannji
+ */
+public final class DataScopeCacheKey {
+
+	private final String sql;
+
+	/**
+	 * 依次存放每个 DataScope 的 key 和指纹；改写计划的 key 则为 MappedStatement id 及各 DataScope 的 key
+	 */
+	private final String[] scopeParts;
+
+	private final int hash;
+
+	private DataScopeCacheKey(String sql, String[] scopeParts) {
+		this.sql = sql;
+		this.scopeParts = scopeParts;
+		this.hash = 31 * sql.hashCode() + Arrays.hashCode(scopeParts);
+	}
+
+	/**
+	 * 构建缓存 key
+	 * @param sql 原始 SQL
+	 * @param dataScopes 当前生效的 DataScope
+	 * @return 缓存 key，存在动态表达式（指纹为 null）的 DataScope 时返回 null，表示不可缓存
+	 */
+	public static DataScopeCacheKey of(String sql, List<DataScope> dataScopes) {
+		String[] scopeParts = new String[dataScopes.size() * 2];
+		for (int i = 0; i < dataScopes.size(); i++) {
+			DataScope dataScope = dataScopes.get(i);
+			String fingerprint = dataScope.getFingerprint();
+			if (fingerprint == null) {
+				return null;
+			}
+			scopeParts[i * 2] = dataScope.getDataScopeKey();
+			scopeParts[i * 2 + 1] = fingerprint;
+		}
+		return new DataScopeCacheKey(sql, scopeParts);
+	}
+
+	/**
+	 * 构建改写计划缓存的 key，改写计划不依赖表达式本身，因此不需要指纹
+	 * @param statementId MappedStatement id
+	 * @param sql 原始 SQL
+	 * @param dataScopes 当前生效的 DataScope
+	 * @return 缓存 key
+	 */
+	public static DataScopeCacheKey forPlan(String statementId, String sql, List<DataScope> dataScopes) {
+		String[] scopeParts = new String[dataScopes.size() + 1];
+		scopeParts[0] = statementId;
+		for (int i = 0; i < dataScopes.size(); i++) {
+			scopeParts[i + 1] = dataScopes.get(i).getDataScopeKey();
+		}
+		return new DataScopeCacheKey(sql, scopeParts);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof DataScopeCacheKey)) {
+			return false;
+		}
+		DataScopeCacheKey that = (DataScopeCacheKey) o;
+		return this.hash == that.hash && this.sql.equals(that.sql) && Arrays.equals(this.scopeParts, that.scopeParts);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hash;
+	}
+
+}
@@ -0,0 +1,34 @@
+package fun.yannji.data.scope.helper;
+
+import fun.yannji.data.scope.holder.DataScopeSet;
+
+/**
+ * {@link DataScopeHelper#openDataScope(DataScopeSet)} 打开的数据权限作用域，配合 try-with-resources 使用：
+ * <pre>
+ * try (DataScopeHandle ignored = DataScopeHelper.openDataScope(roleScope)) {
+ *     long total = sysRoleDao.count(param);
+ *     List&lt;SysRole&gt; records = sysRoleDao.list(param);
+ * }
+ * </pre>
+ * 关闭时弹出本作用域以及在它之后打开、尚未关闭的作用域，恢复外层作用域；重复关闭或作用域已经用完时不做处理
+ *
+ * @author yannji
+ */
+public final class DataScopeHandle implements AutoCloseable {
+
+	private final DataScopeStack.Frame frame;
+
+	DataScopeHandle(DataScopeStack.Frame frame) {
+		this.frame = frame;
+	}
+
+	public DataScopeSet getDataScopeSet() {
+		return this.frame.dataScopeSet;
+	}
+
+	@Override
+	public void close() {
+		DataScopeHelper.close(this.frame);
+	}
+
+}
@@ -2,31 +2,197 @@ package fun.yannji.data.scope.helper;
 
 import fun.yannji.data.scope.DataScope;
 import fun.yannji.data.scope.holder.DataScopeHolder;
+import fun.yannji.data.scope.holder.DataScopeSet;
+import fun.yannji.data.scope.processor.DataScopeExpressionMemo;
 import fun.yannji.data.scope.util.SpringUtil;
+import org.springframework.util.Assert;
 
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class DataScopeHelper {
 
-    private static final ThreadLocal<List<DataScope>> dataScopeList = new ThreadLocal<>();
+    private static final ThreadLocal<DataScopeStack> dataScopeStack = new ThreadLocal<>();
 
+    /**
+     * 按 key 开启数据权限时使用的 DataScopeHolder，由 {@link DataScopeHelperConfigurer} 在容器启动后设置、关闭时清除
+     */
+    private static volatile DataScopeHolder dataScopeHolder;
+
+    /**
+     * 为下一条语句开启数据权限，语句执行后自动清除；重复调用时覆盖尚未使用的设置
+     * @param dataScopeKey DataScope key
+     */
     public static void startDataScope(String ...dataScopeKey) {
-        DataScopeHolder holder = SpringUtil.getBean(DataScopeHolder.class);
-        List<DataScope> dataScopes = Arrays.stream(dataScopeKey)
-                .map(resource -> holder.getDataScopeMap().get(resource))
-                .filter(e -> e != null)
-                .collect(Collectors.toList());
-        dataScopeList.set(dataScopes);
+        startDataScope(getDataScopeHolder().getDataScopeSet(dataScopeKey));
+    }
+
+    /**
+     * 使用预先获取的 DataScopeSet 开启数据权限，只设置 ThreadLocal，不做查找和对象分配
+     * @param dataScopes 通过 {@link DataScopeHolder#getDataScopeSet(String...)} 获取的 DataScopeSet
+     */
+    public static void startDataScope(DataScopeSet dataScopes) {
+        DataScopeStack stack = dataScopeStack.get();
+        if (stack == null) {
+            stack = new DataScopeStack();
+            dataScopeStack.set(stack);
+        }
+        stack.start(dataScopes);
+    }
+
+    /**
+     * 打开一个数据权限作用域，关闭前其中执行的所有语句都会注入数据权限，作用域可以嵌套
+     * @param dataScopeKey DataScope key
+     * @return DataScopeHandle
+     */
+    public static DataScopeHandle openDataScope(String ...dataScopeKey) {
+        return openDataScope(getDataScopeHolder().getDataScopeSet(dataScopeKey));
+    }
+
+    /**
+     * 打开一个数据权限作用域，关闭前其中执行的所有语句都会注入数据权限，作用域可以嵌套
+     * @param dataScopes DataScopeSet
+     * @return DataScopeHandle
+     */
+    public static DataScopeHandle openDataScope(DataScopeSet dataScopes) {
+        return open(dataScopes, DataScopeStack.UNLIMITED);
+    }
+
+    /**
+     * 打开一个只对接下来 statementCount 条语句生效的数据权限作用域，用完后自动恢复外层作用域
+     * @param dataScopes DataScopeSet
+     * @param statementCount 生效的语句数
+     * @return DataScopeHandle
+     */
+    public static DataScopeHandle openDataScope(DataScopeSet dataScopes, int statementCount) {
+        Assert.isTrue(statementCount > 0, "statementCount must be greater than 0");
+        return open(dataScopes, statementCount);
+    }
+
+    /**
+     * 将 startDataScope 设置的一次性数据权限转为不限语句数的作用域，关闭前一直生效。
+     * 用于游标、ResultHandler 流式查询等在语句执行期间还会执行嵌套查询的场景
+     * @return DataScopeHandle，没有一次性设置时返回 null
+     */
+    public static DataScopeHandle openPendingDataScope() {
+        DataScopeStack stack = dataScopeStack.get();
+        if (stack == null || stack.pending == null) {
+            return null;
+        }
+        DataScopeSet pending = stack.pending;
+        stack.pending = null;
+        return open(pending, DataScopeStack.UNLIMITED);
+    }
+
+    private static DataScopeHandle open(DataScopeSet dataScopes, int remaining) {
+        Assert.notNull(dataScopes, "dataScopes must not be null");
+        DataScopeStack stack = dataScopeStack.get();
+        if (stack == null) {
+            stack = new DataScopeStack();
+            dataScopeStack.set(stack);
+        }
+        return new DataScopeHandle(stack.push(dataScopes, remaining));
+    }
+
+    static void close(DataScopeStack.Frame frame) {
+        DataScopeStack stack = dataScopeStack.get();
+        if (stack != null && stack.pop(frame) && stack.isEmpty()) {
+            dataScopeStack.remove();
+        }
     }
 
     public static List<DataScope> getDataScope() {
-        return dataScopeList.get();
+        DataScopeSet current = getDataScopeSet();
+        return current == null ? null : current.getDataScopes();
     }
 
+    /**
+     * 当前生效的 DataScope，不会消费一次性设置及限定语句数的作用域
+     * @return DataScopeSet，没有时返回 null
+     */
+    public static DataScopeSet getDataScopeSet() {
+        DataScopeStack stack = dataScopeStack.get();
+        return stack == null ? null : stack.peek();
+    }
+
+    /**
+     * 当前生效作用域的表达式缓存，需要在 {@link #consumeDataScope()} 之前获取
+     * @return DataScopeExpressionMemo，startDataScope 设置的一次性数据权限或没有作用域时返回 null
+     */
+    public static DataScopeExpressionMemo getExpressionMemo() {
+        DataScopeStack stack = dataScopeStack.get();
+        return stack == null ? null : stack.peekMemo();
+    }
+
+    /**
+     * 为一条语句获取当前生效的 DataScope：startDataScope 的设置会被清除，限定语句数的作用域剩余次数减一
+     * @return DataScopeSet，没有时返回 null
+     */
+    public static DataScopeSet consumeDataScope() {
+        DataScopeStack stack = dataScopeStack.get();
+        return stack == null ? null : stack.consume();
+    }
+
+    /**
+     * 清除当前线程所有的数据权限设置，包括尚未关闭的作用域
+     */
     public static void clearDataScope() {
-        dataScopeList.remove();
+        dataScopeStack.remove();
+    }
+
+    /**
+     * 获取当前线程数据权限状态的快照，用于传递到其它线程
+     * @return DataScopeSnapshot
+     */
+    public static DataScopeSnapshot snapshot() {
+        DataScopeStack stack = dataScopeStack.get();
+        if (stack == null || stack.isEmpty()) {
+            return DataScopeSnapshot.EMPTY;
+        }
+        return new DataScopeSnapshot(stack.pending, DataScopeStack.copy(stack.top));
+    }
+
+    /**
+     * 将快照恢复到当前线程
+     * @param snapshot 快照，为 null 时清空
+     * @return 恢复前当前线程的状态，任务结束后应再次调用本方法恢复
+     */
+    public static DataScopeSnapshot restore(DataScopeSnapshot snapshot) {
+        DataScopeStack current = dataScopeStack.get();
+        DataScopeStack target = snapshot == null ? null : snapshot.toStack();
+        if (target == null) {
+            dataScopeStack.remove();
+        }
+        else {
+            dataScopeStack.set(target);
+        }
+        return current == null ? DataScopeSnapshot.EMPTY : new DataScopeSnapshot(current);
+    }
+
+    /**
+     * 设置按 key 开启数据权限时使用的 DataScopeHolder
+     * @param holder DataScopeHolder，为 null 时在下次使用时从容器中查找
+     */
+    public static synchronized void setDataScopeHolder(DataScopeHolder holder) {
+        dataScopeHolder = holder;
+    }
+
+    /**
+     * 清除设置的 DataScopeHolder，其它容器已经设置了新的 DataScopeHolder 时不清除
+     * @param holder 需要清除的 DataScopeHolder
+     */
+    static synchronized void resetDataScopeHolder(DataScopeHolder holder) {
+        if (dataScopeHolder == holder) {
+            dataScopeHolder = null;
+        }
+    }
+
+    private static DataScopeHolder getDataScopeHolder() {
+        DataScopeHolder holder = dataScopeHolder;
+        if (holder == null) {
+            holder = SpringUtil.getBean(DataScopeHolder.class);
+            dataScopeHolder = holder;
+        }
+        return holder;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,40 @@
+package fun.yannji.data.scope.helper;
+
+import fun.yannji.data.scope.holder.DataScopeHolder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+/**
+ * 为 {@link DataScopeHelper} 设置按 key 开启数据权限时使用的 DataScopeHolder。
+ * <p>
+ * 所有单例初始化完成后设置一次，之后 startDataScope、openDataScope 不再查找 Bean；容器关闭时清除，
+ * 避免刷新或关闭后的容器中的 DataScopeHolder 继续被使用
+ *
+ * @author yannji
+ */
+public class DataScopeHelperConfigurer implements SmartInitializingSingleton, DisposableBean {
+
+	private final ObjectProvider<DataScopeHolder> dataScopeHolder;
+
+	private DataScopeHolder configured;
+
+	public DataScopeHelperConfigurer(ObjectProvider<DataScopeHolder> dataScopeHolder) {
+		this.dataScopeHolder = dataScopeHolder;
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		this.configured = this.dataScopeHolder.getIfAvailable();
+		DataScopeHelper.setDataScopeHolder(this.configured);
+	}
+
+	@Override
+	public void destroy() {
+		if (this.configured != null) {
+			DataScopeHelper.resetDataScopeHolder(this.configured);
+			this.configured = null;
+		}
+	}
+
+}
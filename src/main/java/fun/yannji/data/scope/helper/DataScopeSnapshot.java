@@ -0,0 +1,118 @@
+package fun.yannji.data.scope.helper;
+
+import fun.yannji.data.scope.holder.DataScopeSet;
+
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * 当前线程数据权限状态的快照，由 {@link DataScopeHelper#snapshot()} 获取，
+ * 在其它线程中通过 {@link DataScopeHelper#restore(DataScopeSnapshot)} 恢复，用于把数据权限传递到异步任务中。
+ * <p>
+ * 快照不可变，可以在多个线程中同时恢复；任务结束后需要恢复之前的状态，避免数据权限残留在线程池的线程上，
+ * {@link #wrap(Runnable)} 等方法已经处理了这一点
+ *
+ * @author yannji
+ */
+public final class DataScopeSnapshot {
+
+	static final DataScopeSnapshot EMPTY = new DataScopeSnapshot(null, null);
+
+	private final DataScopeSet pending;
+
+	/**
+	 * 作用域栈的副本，恢复时会再复制一次，多个线程共享限定语句数作用域的剩余语句数
+	 */
+	private final DataScopeStack.Frame top;
+
+	/**
+	 * {@link DataScopeHelper#restore} 返回的恢复前状态，直接放回原来的栈，保证作用域句柄仍然可以关闭
+	 */
+	private final DataScopeStack stack;
+
+	DataScopeSnapshot(DataScopeSet pending, DataScopeStack.Frame top) {
+		this.pending = pending;
+		this.top = top;
+		this.stack = null;
+	}
+
+	DataScopeSnapshot(DataScopeStack stack) {
+		this.pending = null;
+		this.top = null;
+		this.stack = stack;
+	}
+
+	/**
+	 * 生成要放入线程的状态
+	 * @return DataScopeStack，没有数据权限时返回 null
+	 */
+	DataScopeStack toStack() {
+		if (this.stack != null) {
+			return this.stack;
+		}
+		if (isEmpty()) {
+			return null;
+		}
+		return new DataScopeStack(this.pending, DataScopeStack.copy(this.top));
+	}
+
+	/**
+	 * 快照中是否没有生效的数据权限
+	 * @return boolean
+	 */
+	public boolean isEmpty() {
+		return this.stack != null ? this.stack.isEmpty() : this.pending == null && this.top == null;
+	}
+
+	/**
+	 * 包装任务，执行时恢复本快照，结束后恢复执行线程原有的状态
+	 * @param task 任务
+	 * @return 包装后的任务
+	 */
+	public Runnable wrap(Runnable task) {
+		return () -> {
+			DataScopeSnapshot previous = DataScopeHelper.restore(this);
+			try {
+				task.run();
+			}
+			finally {
+				DataScopeHelper.restore(previous);
+			}
+		};
+	}
+
+	/**
+	 * 包装任务，执行时恢复本快照，结束后恢复执行线程原有的状态
+	 * @param task 任务
+	 * @return 包装后的任务
+	 */
+	public <T> Callable<T> wrap(Callable<T> task) {
+		return () -> {
+			DataScopeSnapshot previous = DataScopeHelper.restore(this);
+			try {
+				return task.call();
+			}
+			finally {
+				DataScopeHelper.restore(previous);
+			}
+		};
+	}
+
+	/**
+	 * 包装任务，执行时恢复本快照，结束后恢复执行线程原有的状态，可用于 CompletableFuture.supplyAsync
+	 * @param task 任务
+	 * @return 包装后的任务
+	 */
+	public <T> Supplier<T> wrap(Supplier<T> task) {
+		return () -> {
+			DataScopeSnapshot previous = DataScopeHelper.restore(this);
+			try {
+				return task.get();
+			}
+			finally {
+				DataScopeHelper.restore(previous);
+			}
+		};
+	}
+
+}
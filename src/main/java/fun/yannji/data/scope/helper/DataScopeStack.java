@@ -0,0 +1,194 @@
+package fun.yannji.data.scope.helper;
+
+import fun.yannji.data.scope.holder.DataScopeSet;
+import fun.yannji.data.scope.processor.DataScopeExpressionMemo;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 线程内的数据权限状态：startDataScope 设置的一次性 DataScope，以及 {@link DataScopeHandle} 压入的作用域栈。
+ * <p>
+ * 一次性 DataScope 优先于栈顶作用域，被下一条语句消费后回落到栈顶作用域；
+ * 栈中的作用域可以不限语句数（直到关闭），也可以只对接下来的 N 条语句生效，用完后自动出栈。
+ * 传递到其它线程的副本与原作用域共享剩余语句数，N 条语句在所有线程中合计生效
+ *
+ * @author yannji
+ */
+final class DataScopeStack {
+
+	static final int UNLIMITED = -1;
+
+	/**
+	 * startDataScope 设置的一次性 DataScope
+	 */
+	DataScopeSet pending;
+
+	/**
+	 * startDataScope 的调用次数，作用域记录打开时的值，用于判断一次性 DataScope 是否在作用域内设置
+	 */
+	int pendingSequence;
+
+	Frame top;
+
+	DataScopeStack() {
+	}
+
+	DataScopeStack(DataScopeSet pending, Frame top) {
+		this.pending = pending;
+		this.top = top;
+	}
+
+	boolean isEmpty() {
+		return this.pending == null && this.top == null;
+	}
+
+	/**
+	 * 当前生效的 DataScope
+	 * @return DataScopeSet，没有时返回 null
+	 */
+	DataScopeSet peek() {
+		if (this.pending != null) {
+			return this.pending;
+		}
+		Frame frame = active();
+		return frame == null ? null : frame.dataScopeSet;
+	}
+
+	/**
+	 * 当前生效作用域的表达式缓存，startDataScope 的一次性设置没有缓存
+	 * @return DataScopeExpressionMemo，没有时返回 null
+	 */
+	DataScopeExpressionMemo peekMemo() {
+		if (this.pending != null) {
+			return null;
+		}
+		Frame frame = active();
+		return frame == null ? null : frame.memo;
+	}
+
+	/**
+	 * 栈中第一个没有用完的作用域，限定语句数的作用域可能已经在其它线程中用完
+	 */
+	private Frame active() {
+		Frame frame = this.top;
+		while (frame != null && frame.remaining != null && frame.remaining.get() <= 0) {
+			frame = frame.parent;
+		}
+		return frame;
+	}
+
+	/**
+	 * 设置一次性 DataScope
+	 * @param dataScopeSet DataScopeSet
+	 */
+	void start(DataScopeSet dataScopeSet) {
+		this.pending = dataScopeSet;
+		this.pendingSequence++;
+	}
+
+	/**
+	 * 为一条语句消费当前生效的 DataScope：一次性 DataScope 被清除，限定语句数的作用域剩余次数减一，用完后出栈
+	 * @return DataScopeSet，没有时返回 null
+	 */
+	DataScopeSet consume() {
+		DataScopeSet pending = this.pending;
+		if (pending != null) {
+			this.pending = null;
+			return pending;
+		}
+		Frame frame = this.top;
+		while (frame != null) {
+			if (frame.remaining == null) {
+				return frame.dataScopeSet;
+			}
+			int remaining = frame.remaining.decrementAndGet();
+			if (remaining <= 0) {
+				this.top = frame.parent;
+			}
+			if (remaining >= 0) {
+				return frame.dataScopeSet;
+			}
+			// 已经在其它线程中用完
+			frame = this.top;
+		}
+		return null;
+	}
+
+	/**
+	 * 压入作用域，记录当前的 startDataScope 调用次数
+	 * @param dataScopeSet DataScopeSet
+	 * @param remaining 生效的语句数，{@link #UNLIMITED} 表示不限
+	 * @return 作用域
+	 */
+	Frame push(DataScopeSet dataScopeSet, int remaining) {
+		Frame frame = new Frame(dataScopeSet, remaining == UNLIMITED ? null : new AtomicInteger(remaining), this.top,
+				new DataScopeExpressionMemo(), this.pendingSequence);
+		this.top = frame;
+		return frame;
+	}
+
+	/**
+	 * 弹出指定作用域及其之上的所有作用域，作用域已不在栈中时不做处理。
+	 * 在作用域打开之后设置、尚未使用的一次性 DataScope 一并清除，打开之前设置的保留
+	 * @param frame 作用域
+	 * @return 是否弹出
+	 */
+	boolean pop(Frame frame) {
+		for (Frame current = this.top; current != null; current = current.parent) {
+			if (current == frame) {
+				this.top = frame.parent;
+				if (this.pendingSequence != frame.pendingSequence) {
+					this.pending = null;
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 复制作用域栈，剩余语句数及表达式缓存与原作用域共享。
+	 * 副本所在的栈重新记录 startDataScope 的调用次数，随快照传递的一次性 DataScope 视为在所有作用域打开之前设置
+	 * @param frame 栈顶
+	 * @return 副本栈顶
+	 */
+	static Frame copy(Frame frame) {
+		if (frame == null) {
+			return null;
+		}
+		return new Frame(frame.dataScopeSet, frame.remaining, copy(frame.parent), frame.memo, 0);
+	}
+
+	/**
+	 * 作用域栈中的一层
+	 */
+	static final class Frame {
+
+		final DataScopeSet dataScopeSet;
+
+		/**
+		 * 剩余语句数，不限语句数时为 null
+		 */
+		final AtomicInteger remaining;
+
+		final Frame parent;
+
+		final DataScopeExpressionMemo memo;
+
+		/**
+		 * 打开时栈的 startDataScope 调用次数
+		 */
+		final int pendingSequence;
+
+		Frame(DataScopeSet dataScopeSet, AtomicInteger remaining, Frame parent, DataScopeExpressionMemo memo,
+				int pendingSequence) {
+			this.dataScopeSet = dataScopeSet;
+			this.remaining = remaining;
+			this.parent = parent;
+			this.memo = memo;
+			this.pendingSequence = pendingSequence;
+		}
+
+	}
+
+}
@@ -0,0 +1,55 @@
+package fun.yannji.data.scope.hierarchy;
+
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.JdbcParameter;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+
+/**
+ * 基于闭包表的层级数据权限，闭包表中每个节点与其所有祖先（包括自身）各有一行，注入的条件为：
+ * <pre>
+ * EXISTS (SELECT 1 FROM sys_dept_closure ds_h_t WHERE ds_h_t.descendant = t.dept_id AND ds_h_t.ancestor = ?)
+ * </pre>
+ * 闭包表需要在 (ancestor, descendant) 上建立索引
+ *
+ * @author yannji
+ */
+public abstract class ClosureTableDataScope extends HierarchyDataScope {
+
+	private final String closureTable;
+
+	private final String ancestorColumn;
+
+	private final String descendantColumn;
+
+	/**
+	 * @param dataScopeKey DataScope 唯一标识
+	 * @param column 被过滤表中关联层级节点的字段，如 dept_id
+	 * @param closureTable 闭包表
+	 * @param ancestorColumn 闭包表中祖先节点字段
+	 * @param descendantColumn 闭包表中后代节点字段
+	 * @param tableNames 需要过滤的表
+	 */
+	protected ClosureTableDataScope(String dataScopeKey, String column, String closureTable, String ancestorColumn,
+			String descendantColumn, String... tableNames) {
+		super(dataScopeKey, column, tableNames);
+		this.closureTable = closureTable;
+		this.ancestorColumn = ancestorColumn;
+		this.descendantColumn = descendantColumn;
+	}
+
+	@Override
+	protected Table getHierarchyTable(String hierarchyAlias) {
+		return new Table(this.closureTable).withAlias(new Alias(hierarchyAlias, false));
+	}
+
+	@Override
+	protected Expression buildHierarchyCondition(Column nodeColumn, String hierarchyAlias) {
+		return new AndExpression(new EqualsTo(hierarchyColumn(hierarchyAlias, this.descendantColumn), nodeColumn),
+				new EqualsTo(hierarchyColumn(hierarchyAlias, this.ancestorColumn), new JdbcParameter()));
+	}
+
+}
@@ -0,0 +1,137 @@
+package fun.yannji.data.scope.hierarchy;
+
+import fun.yannji.data.scope.ParameterizedDataScope;
+import fun.yannji.data.scope.util.SqlParseUtil;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.operators.relational.ExistsExpression;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.select.ParenthesedSelect;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 层级（组织树）数据权限：当前用户可以看到所在节点及其所有下级节点的数据。
+ * <p>
+ * 不在 Java 中展开下级节点 id 列表，而是注入一个关联层级表的 EXISTS 子查询，由数据库通过索引完成过滤。
+ * 表达式只包含一个 ? 占位符，绑定 {@link #getCurrentNode()} 的值，改写结果与用户无关，可以缓存。
+ * <p>
+ * {@link #getCurrentNode()} 返回 null 时绑定 null，不匹配任何数据
+ *
+ * @author yannji
+ */
+public abstract class HierarchyDataScope implements ParameterizedDataScope {
+
+	/**
+	 * 子查询中层级表别名的前缀，后接被过滤表的别名或表名，保证与被过滤表的别名不同
+	 */
+	protected static final String HIERARCHY_ALIAS_PREFIX = "ds_h_";
+
+	private final String dataScopeKey;
+
+	private final String column;
+
+	private final Set<String> tableNames;
+
+	/**
+	 * @param dataScopeKey DataScope 唯一标识
+	 * @param column 被过滤表中关联层级节点的字段，如 dept_id
+	 * @param tableNames 需要过滤的表
+	 */
+	protected HierarchyDataScope(String dataScopeKey, String column, String... tableNames) {
+		this.dataScopeKey = dataScopeKey;
+		this.column = column;
+		Set<String> names = new LinkedHashSet<>();
+		for (String tableName : tableNames) {
+			names.add(tableName.toLowerCase(Locale.ROOT));
+		}
+		this.tableNames = Collections.unmodifiableSet(names);
+	}
+
+	/**
+	 * 当前用户可见的层级根节点，如用户所在部门的 id
+	 * @return 根节点，返回 null 时不匹配任何数据
+	 */
+	protected abstract Object getCurrentNode();
+
+	/**
+	 * 构建层级子查询的过滤条件，其中只能包含一个 ? 占位符
+	 * @param nodeColumn 被过滤表中关联层级节点的字段（已添加表别名）
+	 * @param hierarchyAlias 层级表的别名
+	 * @return 子查询的 where 条件
+	 */
+	protected abstract Expression buildHierarchyCondition(Column nodeColumn, String hierarchyAlias);
+
+	/**
+	 * 层级子查询的 from 表
+	 * @param hierarchyAlias 层级表的别名
+	 * @return 表
+	 */
+	protected abstract Table getHierarchyTable(String hierarchyAlias);
+
+	@Override
+	public String getDataScopeKey() {
+		return this.dataScopeKey;
+	}
+
+	@Override
+	public boolean includes(String tableName) {
+		return this.tableNames.contains(tableName.toLowerCase(Locale.ROOT));
+	}
+
+	@Override
+	public Set<String> getTableNames() {
+		return this.tableNames;
+	}
+
+	@Override
+	public Expression getExpression(String tableName, Alias tableAlias) {
+		Column nodeColumn = SqlParseUtil.getAliasColumn(tableName, tableAlias, this.column);
+		String hierarchyAlias = hierarchyAlias(tableAlias == null ? tableName : tableAlias.getName());
+		PlainSelect plainSelect = new PlainSelect().addSelectItem(new LongValue(1))
+			.withFromItem(getHierarchyTable(hierarchyAlias))
+			.withWhere(buildHierarchyCondition(nodeColumn, hierarchyAlias));
+		return new ExistsExpression().withRightExpression(new ParenthesedSelect().withSelect(plainSelect));
+	}
+
+	@Override
+	public List<Object> getParameterValues(String tableName, Alias tableAlias) {
+		return Collections.singletonList(getCurrentNode());
+	}
+
+	/**
+	 * 层级表中的字段
+	 * @param hierarchyAlias 层级表的别名
+	 * @param columnName 字段名
+	 * @return 添加了层级表别名的字段
+	 */
+	protected static Column hierarchyColumn(String hierarchyAlias, String columnName) {
+		return new Column(hierarchyAlias + "." + columnName);
+	}
+
+	/**
+	 * 由被过滤表的别名生成层级表的别名，如 t → ds_h_t，只保留字母、数字及下划线
+	 * @param qualifier 被过滤表的别名，没有别名时为表名
+	 * @return 层级表的别名
+	 */
+	static String hierarchyAlias(String qualifier) {
+		StringBuilder builder = new StringBuilder(HIERARCHY_ALIAS_PREFIX.length() + qualifier.length());
+		builder.append(HIERARCHY_ALIAS_PREFIX);
+		for (int i = qualifier.lastIndexOf('.') + 1; i < qualifier.length(); i++) {
+			char c = qualifier.charAt(i);
+			if (c < 128 && (Character.isLetterOrDigit(c) || c == '_')) {
+				builder.append(c);
+			}
+		}
+		String alias = builder.toString();
+		return alias.equalsIgnoreCase(qualifier) ? alias + "_" : alias;
+	}
+
+}
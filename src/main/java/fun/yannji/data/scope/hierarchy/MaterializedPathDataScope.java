@@ -0,0 +1,90 @@
+package fun.yannji.data.scope.hierarchy;
+
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.JdbcParameter;
+import net.sf.jsqlparser.expression.StringValue;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.expression.operators.relational.LikeExpression;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于物化路径的层级数据权限，节点表中保存了从根节点开始的路径（如 /1/5/12/），注入的条件为：
+ * <pre>
+ * EXISTS (SELECT 1 FROM sys_dept ds_h_t WHERE ds_h_t.id = t.dept_id AND ds_h_t.path LIKE ? ESCAPE '!')
+ * </pre>
+ * 参数为 {@link #getCurrentNode()} 返回的当前节点路径加上 %，路径中的通配符会被转义。
+ * 路径字段需要建立索引，前缀匹配可以使用索引
+ *
+ * @author yannji
+ */
+public abstract class MaterializedPathDataScope extends HierarchyDataScope {
+
+	private static final char ESCAPE = '!';
+
+	private final String nodeTable;
+
+	private final String idColumn;
+
+	private final String pathColumn;
+
+	/**
+	 * @param dataScopeKey DataScope 唯一标识
+	 * @param column 被过滤表中关联层级节点的字段，如 dept_id
+	 * @param nodeTable 保存路径的节点表，如 sys_dept
+	 * @param idColumn 节点表的主键字段
+	 * @param pathColumn 节点表的路径字段
+	 * @param tableNames 需要过滤的表
+	 */
+	protected MaterializedPathDataScope(String dataScopeKey, String column, String nodeTable, String idColumn,
+			String pathColumn, String... tableNames) {
+		super(dataScopeKey, column, tableNames);
+		this.nodeTable = nodeTable;
+		this.idColumn = idColumn;
+		this.pathColumn = pathColumn;
+	}
+
+	/**
+	 * 当前用户所在节点的路径，如 /1/5/
+	 * @return 路径，返回 null 时不匹配任何数据
+	 */
+	@Override
+	protected abstract Object getCurrentNode();
+
+	@Override
+	protected Table getHierarchyTable(String hierarchyAlias) {
+		return new Table(this.nodeTable).withAlias(new Alias(hierarchyAlias, false));
+	}
+
+	@Override
+	protected Expression buildHierarchyCondition(Column nodeColumn, String hierarchyAlias) {
+		LikeExpression like = new LikeExpression().withLeftExpression(hierarchyColumn(hierarchyAlias, this.pathColumn))
+			.withRightExpression(new JdbcParameter())
+			.withEscape(new StringValue(String.valueOf(ESCAPE)));
+		return new AndExpression(new EqualsTo(hierarchyColumn(hierarchyAlias, this.idColumn), nodeColumn), like);
+	}
+
+	@Override
+	public List<Object> getParameterValues(String tableName, Alias tableAlias) {
+		Object path = getCurrentNode();
+		return Collections.singletonList(path == null ? null : escape(path.toString()) + "%");
+	}
+
+	private static String escape(String path) {
+		StringBuilder builder = new StringBuilder(path.length() + 4);
+		for (int i = 0; i < path.length(); i++) {
+			char c = path.charAt(i);
+			if (c == '%' || c == '_' || c == ESCAPE) {
+				builder.append(ESCAPE);
+			}
+			builder.append(c);
+		}
+		return builder.toString();
+	}
+
+}
@@ -1,13 +1,16 @@
 package fun.yannji.data.scope.holder;
 
 import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.GlobalDataScope;
 import lombok.Getter;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
-import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -15,6 +18,28 @@ public class DataScopeHolder implements InitializingBean, ApplicationContextAwar
 
     @Getter
     private final Map<String, DataScope> dataScopeMap = new ConcurrentHashMap<>();
+
+    /**
+     * 请求的 DataScope key 组合 → DataScopeSet
+     */
+    private final Map<List<String>, DataScopeSet> dataScopeSetCache = new ConcurrentHashMap<>();
+
+    /**
+     * 实际生效的 DataScope key 组合 → DataScopeSet，保证相同组合只有一个实例
+     */
+    private final Map<List<String>, DataScopeSet> internedDataScopeSets = new ConcurrentHashMap<>();
+
+    /**
+     * 始终生效的 {@link GlobalDataScope}，启动时收集
+     */
+    @Getter
+    private DataScopeSet globalDataScopeSet = DataScopeSet.EMPTY;
+
+    /**
+     * 语句生效的 DataScopeSet → 并入 GlobalDataScope 后的 DataScopeSet
+     */
+    private final Map<DataScopeSet, DataScopeSet> globalMergedDataScopeSets = new ConcurrentHashMap<>();
+
     private ApplicationContext applicationContext;
 
     @Override
@@ -25,8 +50,70 @@ public class DataScopeHolder implements InitializingBean, ApplicationContextAwar
     @Override
     public void afterPropertiesSet() throws Exception {
         Map<String, DataScope> beansOfType = applicationContext.getBeansOfType(DataScope.class);
+        List<String> globalKeys = new ArrayList<>();
         beansOfType.forEach((k, v) -> {
             dataScopeMap.put(v.getDataScopeKey(), v);
+            if (v instanceof GlobalDataScope) {
+                globalKeys.add(v.getDataScopeKey());
+            }
         });
+        this.globalDataScopeSet = getDataScopeSet(globalKeys.toArray(new String[0]));
+    }
+
+    /**
+     * 将 {@link GlobalDataScope} 并入语句生效的 DataScopeSet，GlobalDataScope 在前，已经包含的不会重复加入。
+     * 相同的输入返回同一个实例，并入后的结果再次传入时原样返回
+     * @param dataScopeSet 语句生效的 DataScopeSet，可以为 null
+     * @return DataScopeSet，没有 GlobalDataScope 时返回传入的 DataScopeSet
+     */
+    public DataScopeSet withGlobalDataScopes(DataScopeSet dataScopeSet) {
+        DataScopeSet globals = this.globalDataScopeSet;
+        if (globals.isEmpty()) {
+            return dataScopeSet;
+        }
+        if (dataScopeSet == null || dataScopeSet.isEmpty() || dataScopeSet == globals) {
+            return globals;
+        }
+        DataScopeSet merged = globalMergedDataScopeSets.get(dataScopeSet);
+        if (merged != null) {
+            return merged;
+        }
+        List<DataScope> dataScopes = new ArrayList<>(globals.getDataScopes());
+        List<String> keys = new ArrayList<>(globals.getDataScopeKeys());
+        for (DataScope dataScope : dataScopeSet.getDataScopes()) {
+            if (!keys.contains(dataScope.getDataScopeKey())) {
+                dataScopes.add(dataScope);
+                keys.add(dataScope.getDataScopeKey());
+            }
+        }
+        merged = internedDataScopeSets.computeIfAbsent(keys, k -> new DataScopeSet(dataScopes));
+        globalMergedDataScopeSets.putIfAbsent(dataScopeSet, merged);
+        return merged;
+    }
+
+    /**
+     * 获取一组 key 对应的 DataScopeSet，不存在的 key 会被忽略。相同的 key 组合返回同一个实例，
+     * 可以在启动时获取并保存，之后直接传给 {@link fun.yannji.data.scope.helper.DataScopeHelper#startDataScope(DataScopeSet)}
+     * @param dataScopeKeys DataScope key
+     * @return DataScopeSet
+     */
+    public DataScopeSet getDataScopeSet(String... dataScopeKeys) {
+        DataScopeSet dataScopeSet = dataScopeSetCache.get(Arrays.asList(dataScopeKeys));
+        if (dataScopeSet != null) {
+            return dataScopeSet;
+        }
+        List<DataScope> dataScopes = new ArrayList<>(dataScopeKeys.length);
+        List<String> resolvedKeys = new ArrayList<>(dataScopeKeys.length);
+        for (String dataScopeKey : dataScopeKeys) {
+            DataScope dataScope = dataScopeMap.get(dataScopeKey);
+            if (dataScope != null) {
+                dataScopes.add(dataScope);
+                resolvedKeys.add(dataScopeKey);
+            }
+        }
+        dataScopeSet = dataScopes.isEmpty() ? DataScopeSet.EMPTY
+                : internedDataScopeSets.computeIfAbsent(resolvedKeys, k -> new DataScopeSet(dataScopes));
+        dataScopeSetCache.putIfAbsent(new ArrayList<>(Arrays.asList(dataScopeKeys)), dataScopeSet);
+        return dataScopeSet;
     }
 }
@@ -0,0 +1,51 @@
+package fun.yannji.data.scope.holder;
+
+import fun.yannji.data.scope.DataScope;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一组生效的 DataScope，由 {@link DataScopeHolder#getDataScopeSet(String...)} 创建并按 key 组合缓存。
+ * <p>
+ * 不可变，持有解析好的 DataScope 列表及其表名索引，可以预先获取后重复传给
+ * {@link fun.yannji.data.scope.helper.DataScopeHelper#startDataScope(DataScopeSet)}，开启数据权限时不再查找和分配对象
+ *
+ * @author yannji
+ */
+@Getter
+public final class DataScopeSet {
+
+	/**
+	 * 不包含任何 DataScope 的集合
+	 */
+	public static final DataScopeSet EMPTY = new DataScopeSet(Collections.emptyList());
+
+	private final List<DataScope> dataScopes;
+
+	private final List<String> dataScopeKeys;
+
+	private final DataScopeTableIndex tableIndex;
+
+	DataScopeSet(List<DataScope> dataScopes) {
+		List<String> keys = new ArrayList<>(dataScopes.size());
+		for (DataScope dataScope : dataScopes) {
+			keys.add(dataScope.getDataScopeKey());
+		}
+		this.dataScopes = Collections.unmodifiableList(new ArrayList<>(dataScopes));
+		this.dataScopeKeys = Collections.unmodifiableList(keys);
+		this.tableIndex = DataScopeTableIndex.of(this.dataScopes);
+	}
+
+	public boolean isEmpty() {
+		return this.dataScopes.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "DataScopeSet" + this.dataScopeKeys;
+	}
+
+}
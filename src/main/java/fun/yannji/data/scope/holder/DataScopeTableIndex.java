@@ -0,0 +1,260 @@
+package fun.yannji.data.scope.holder;
+
+import fun.yannji.data.scope.ColumnScope;
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.cache.DataScopeCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 表名 → DataScope 的不可变路由索引
+ * <p>
+ * 声明了表名的 DataScope 通过一次哈希查找命中；声明了通配模式的 DataScope 按表名缓存匹配结果；
+ * 未声明表集合的 DataScope 仍逐个调用 {@link DataScope#includes} 判断。返回结果保持 DataScope 的原始顺序。
+ *
+ * @author yannji
+ */
+public final class DataScopeTableIndex {
+
+	private static final int PATTERN_CACHE_SIZE = 1024;
+
+	private static final int NEGATIVE_CACHE_SIZE = 1024;
+
+	private final List<DataScope> dataScopes;
+
+	/**
+	 * DataScope 在 dataScopes 中的位置，用于合并结果时保持顺序
+	 */
+	private final Map<DataScope, Integer> positions;
+
+	/**
+	 * 小写表名 → 声明了该表名的 DataScope
+	 */
+	private final Map<String, List<DataScope>> tableIndex;
+
+	private final List<PatternEntry> patternEntries;
+
+	/**
+	 * 小写表名 → 通配模式匹配到的 DataScope
+	 */
+	private final DataScopeCache<String, List<DataScope>> patternMatches;
+
+	/**
+	 * 未声明表集合的 DataScope
+	 */
+	private final List<DataScope> undeclaredScopes;
+
+	/**
+	 * 所有声明表名的多模式匹配器，存在未声明表名或使用通配模式的 DataScope 时为 null
+	 */
+	private final TableNameMatcher tableNameMatcher;
+
+	/**
+	 * 确认不含任何已声明表名的 SQL
+	 */
+	private final DataScopeCache<String, Boolean> negativeCache;
+
+	/**
+	 * 是否包含字段级数据权限 {@link ColumnScope}
+	 */
+	private final boolean columnScoped;
+
+	private DataScopeTableIndex(List<DataScope> dataScopes) {
+		this.dataScopes = Collections.unmodifiableList(new ArrayList<>(dataScopes));
+		this.positions = new IdentityHashMap<>(dataScopes.size());
+		Map<String, List<DataScope>> tableIndex = new HashMap<>();
+		List<PatternEntry> patternEntries = new ArrayList<>();
+		List<DataScope> undeclaredScopes = new ArrayList<>();
+		boolean columnScoped = false;
+		for (DataScope dataScope : this.dataScopes) {
+			this.positions.put(dataScope, this.positions.size());
+			columnScoped |= dataScope instanceof ColumnScope;
+			Set<String> tableNames = dataScope.getTableNames();
+			Set<String> tablePatterns = dataScope.getTablePatterns();
+			if (tableNames == null && tablePatterns == null) {
+				undeclaredScopes.add(dataScope);
+				continue;
+			}
+			if (tableNames != null) {
+				for (String tableName : tableNames) {
+					List<DataScope> scopes = tableIndex.computeIfAbsent(normalize(tableName), k -> new ArrayList<>());
+					if (!scopes.contains(dataScope)) {
+						scopes.add(dataScope);
+					}
+				}
+			}
+			if (tablePatterns != null) {
+				for (String tablePattern : tablePatterns) {
+					patternEntries.add(new PatternEntry(toRegex(tablePattern), dataScope));
+				}
+			}
+		}
+		tableIndex.replaceAll((k, v) -> Collections.unmodifiableList(v));
+		this.tableIndex = tableIndex;
+		this.patternEntries = patternEntries;
+		this.patternMatches = patternEntries.isEmpty() ? null : new DataScopeCache<>(PATTERN_CACHE_SIZE);
+		this.undeclaredScopes = undeclaredScopes;
+		this.tableNameMatcher = undeclaredScopes.isEmpty() && patternEntries.isEmpty()
+				? TableNameMatcher.of(tableIndex.keySet()) : null;
+		this.negativeCache = this.tableNameMatcher == null ? null : new DataScopeCache<>(NEGATIVE_CACHE_SIZE);
+		this.columnScoped = columnScoped;
+	}
+
+	/**
+	 * 为一组 DataScope 构建索引
+	 * @param dataScopes DataScope，顺序即注入顺序
+	 * @return DataScopeTableIndex
+	 */
+	public static DataScopeTableIndex of(List<DataScope> dataScopes) {
+		return new DataScopeTableIndex(dataScopes);
+	}
+
+	/**
+	 * 获取需要过滤指定表的 DataScope
+	 * @param tableName 表名（已去除转义字符）
+	 * @return 匹配的 DataScope，按原始顺序排列，不可修改
+	 */
+	public List<DataScope> match(String tableName) {
+		String key = normalize(tableName);
+		List<DataScope> declared = this.tableIndex.getOrDefault(key, Collections.emptyList());
+		if (this.patternMatches == null && this.undeclaredScopes.isEmpty()) {
+			return declared;
+		}
+		List<DataScope> result = declared;
+		if (this.patternMatches != null) {
+			result = merge(result, matchPatterns(key));
+		}
+		if (!this.undeclaredScopes.isEmpty()) {
+			List<DataScope> included = null;
+			for (DataScope dataScope : this.undeclaredScopes) {
+				if (dataScope.includes(tableName)) {
+					if (included == null) {
+						included = new ArrayList<>(this.undeclaredScopes.size());
+					}
+					included.add(dataScope);
+				}
+			}
+			if (included != null) {
+				result = merge(result, included);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 解析前的词法预判：SQL 中是否可能出现了需要过滤的表。返回 false 时 SQL 无需解析，可以原样放行
+	 * @param sql 原始 SQL
+	 * @return 存在未声明表名或通配模式的 DataScope 时总是返回 true
+	 */
+	public boolean mayContainTable(String sql) {
+		if (this.tableNameMatcher == null) {
+			return true;
+		}
+		if (this.negativeCache.get(sql) != null) {
+			return false;
+		}
+		if (this.tableNameMatcher.matches(sql)) {
+			return true;
+		}
+		this.negativeCache.put(sql, Boolean.TRUE);
+		return false;
+	}
+
+	public List<DataScope> getDataScopes() {
+		return this.dataScopes;
+	}
+
+	/**
+	 * 是否包含字段级数据权限，包含时需要改写查询列表
+	 * @return boolean
+	 */
+	public boolean hasColumnScopes() {
+		return this.columnScoped;
+	}
+
+	private List<DataScope> matchPatterns(String key) {
+		List<DataScope> matches = this.patternMatches.get(key);
+		if (matches == null) {
+			List<DataScope> scopes = new ArrayList<>();
+			for (PatternEntry entry : this.patternEntries) {
+				if (!scopes.contains(entry.dataScope) && entry.pattern.matcher(key).matches()) {
+					scopes.add(entry.dataScope);
+				}
+			}
+			matches = scopes.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(scopes);
+			this.patternMatches.put(key, matches);
+		}
+		return matches;
+	}
+
+	/**
+	 * 按 DataScope 原始顺序合并两个有序列表并去重
+	 */
+	private List<DataScope> merge(List<DataScope> first, List<DataScope> second) {
+		if (second.isEmpty()) {
+			return first;
+		}
+		if (first.isEmpty()) {
+			return second;
+		}
+		List<DataScope> merged = new ArrayList<>(first.size() + second.size());
+		int i = 0;
+		int j = 0;
+		while (i < first.size() || j < second.size()) {
+			DataScope next;
+			if (j >= second.size()) {
+				next = first.get(i++);
+			}
+			else if (i >= first.size()) {
+				next = second.get(j++);
+			}
+			else if (this.positions.get(first.get(i)) <= this.positions.get(second.get(j))) {
+				next = first.get(i++);
+			}
+			else {
+				next = second.get(j++);
+			}
+			if (merged.isEmpty() || merged.get(merged.size() - 1) != next) {
+				merged.add(next);
+			}
+		}
+		return merged;
+	}
+
+	private static String normalize(String tableName) {
+		return tableName.toLowerCase(Locale.ROOT);
+	}
+
+	private static Pattern toRegex(String tablePattern) {
+		StringBuilder regex = new StringBuilder();
+		for (String part : normalize(tablePattern).split("\\*", -1)) {
+			if (regex.length() > 0) {
+				regex.append(".*");
+			}
+			regex.append(Pattern.quote(part));
+		}
+		return Pattern.compile(regex.toString());
+	}
+
+	private static final class PatternEntry {
+
+		private final Pattern pattern;
+
+		private final DataScope dataScope;
+
+		private PatternEntry(Pattern pattern, DataScope dataScope) {
+			this.pattern = pattern;
+			this.dataScope = dataScope;
+		}
+
+	}
+
+}
@@ -0,0 +1,169 @@
+package fun.yannji.data.scope.holder;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 基于 Aho-Corasick 自动机的表名多模式匹配器，用于在解析 SQL 前快速判断 SQL 中是否可能出现了某个表名
+ * <p>
+ * 匹配忽略大小写，且要求表名前后不是标识符字符，因此 `t_xxx`、"t_xxx"、schema.t_xxx 等写法都能被识别。
+ * 只会多判不会漏判：出现在字符串常量或列名中的同名文本同样会被视为命中。
+ *
+ * @author yannji
+ */
+final class TableNameMatcher {
+
+	private static final int ASCII_SIZE = 128;
+
+	/**
+	 * ASCII 字符 → 字符类别，0 表示该字符未出现在任何表名中
+	 */
+	private final int[] charClasses = new int[ASCII_SIZE];
+
+	private final int width;
+
+	/**
+	 * 完整的状态转移表：state * width + charClass → next state
+	 */
+	private final int[] transitions;
+
+	/**
+	 * 每个状态上结束的表名长度，包括通过失配指针继承的结果
+	 */
+	private final int[][] outputs;
+
+	private TableNameMatcher(List<String> tableNames) {
+		int classCount = 0;
+		for (String tableName : tableNames) {
+			for (int i = 0; i < tableName.length(); i++) {
+				char c = tableName.charAt(i);
+				if (this.charClasses[c] == 0) {
+					this.charClasses[c] = ++classCount;
+				}
+			}
+		}
+		this.width = classCount + 1;
+
+		// 构建字典树
+		List<int[]> trie = new ArrayList<>();
+		List<int[]> terminals = new ArrayList<>();
+		trie.add(new int[this.width]);
+		terminals.add(null);
+		for (String tableName : tableNames) {
+			int state = 0;
+			for (int i = 0; i < tableName.length(); i++) {
+				int charClass = this.charClasses[tableName.charAt(i)];
+				if (trie.get(state)[charClass] == 0) {
+					trie.get(state)[charClass] = trie.size();
+					trie.add(new int[this.width]);
+					terminals.add(null);
+				}
+				state = trie.get(state)[charClass];
+			}
+			terminals.set(state, new int[] { tableName.length() });
+		}
+
+		// 按层计算失配指针，并补全状态转移表
+		int size = trie.size();
+		this.transitions = new int[size * this.width];
+		this.outputs = new int[size][];
+		int[] failures = new int[size];
+		Deque<Integer> queue = new ArrayDeque<>();
+		for (int charClass = 1; charClass < this.width; charClass++) {
+			int next = trie.get(0)[charClass];
+			this.transitions[charClass] = next;
+			if (next != 0) {
+				queue.add(next);
+			}
+		}
+		this.outputs[0] = terminals.get(0);
+		while (!queue.isEmpty()) {
+			int state = queue.poll();
+			this.outputs[state] = concat(terminals.get(state), this.outputs[failures[state]]);
+			for (int charClass = 1; charClass < this.width; charClass++) {
+				int next = trie.get(state)[charClass];
+				int fallback = this.transitions[failures[state] * this.width + charClass];
+				if (next == 0) {
+					this.transitions[state * this.width + charClass] = fallback;
+				}
+				else {
+					failures[next] = fallback;
+					this.transitions[state * this.width + charClass] = next;
+					queue.add(next);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 构建匹配器
+	 * @param tableNames 小写表名
+	 * @return 匹配器，表名中含有非 ASCII 字符时返回 null，表示无法预判
+	 */
+	static TableNameMatcher of(Collection<String> tableNames) {
+		List<String> names = new ArrayList<>(tableNames.size());
+		for (String tableName : tableNames) {
+			if (tableName.isEmpty()) {
+				continue;
+			}
+			for (int i = 0; i < tableName.length(); i++) {
+				if (tableName.charAt(i) >= ASCII_SIZE) {
+					return null;
+				}
+			}
+			names.add(tableName);
+		}
+		return new TableNameMatcher(names);
+	}
+
+	/**
+	 * SQL 中是否出现了任一表名
+	 * @param sql sql
+	 * @return boolean
+	 */
+	boolean matches(String sql) {
+		int state = 0;
+		int length = sql.length();
+		for (int i = 0; i < length; i++) {
+			char c = sql.charAt(i);
+			if (c >= 'A' && c <= 'Z') {
+				c = (char) (c + ('a' - 'A'));
+			}
+			int charClass = c < ASCII_SIZE ? this.charClasses[c] : 0;
+			state = charClass == 0 ? 0 : this.transitions[state * this.width + charClass];
+			int[] lengths = this.outputs[state];
+			if (lengths == null) {
+				continue;
+			}
+			for (int tableNameLength : lengths) {
+				int start = i - tableNameLength + 1;
+				if ((start == 0 || !isIdentifierChar(sql.charAt(start - 1)))
+						&& (i + 1 == length || !isIdentifierChar(sql.charAt(i + 1)))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean isIdentifierChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '$';
+	}
+
+	private static int[] concat(int[] first, int[] second) {
+		if (first == null) {
+			return second;
+		}
+		if (second == null) {
+			return first;
+		}
+		int[] result = new int[first.length + second.length];
+		System.arraycopy(first, 0, result, 0, first.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+
+}
@@ -1,33 +1,435 @@
 package fun.yannji.data.scope.interceptor;
 
+import com.baomidou.mybatisplus.annotation.DbType;
+import com.baomidou.mybatisplus.core.toolkit.ExceptionUtils;
 import com.baomidou.mybatisplus.core.toolkit.PluginUtils;
 import com.baomidou.mybatisplus.extension.plugins.inner.InnerInterceptor;
-import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.annotation.DataScopedStatementRegistry;
+import fun.yannji.data.scope.cache.DataScopeCache;
+import fun.yannji.data.scope.cache.DataScopeCacheKey;
 import fun.yannji.data.scope.helper.DataScopeHelper;
+import fun.yannji.data.scope.holder.DataScopeHolder;
+import fun.yannji.data.scope.holder.DataScopeSet;
+import fun.yannji.data.scope.holder.DataScopeTableIndex;
+import fun.yannji.data.scope.metrics.DataScopeMetrics;
+import fun.yannji.data.scope.processor.DataScopeExpressionMemo;
+import fun.yannji.data.scope.processor.DataScopeRewritePlan;
+import fun.yannji.data.scope.processor.DataScopeSql;
 import fun.yannji.data.scope.processor.DataScopeSqlProcessor;
-import fun.yannji.data.scope.util.CollectionUtil;
+import fun.yannji.data.scope.processor.DataScopeValueSetStrategy;
+import fun.yannji.data.scope.processor.ParameterSource;
+import fun.yannji.data.scope.util.SqlLiteralSyntax;
+import org.apache.ibatis.executor.BatchExecutor;
+import org.apache.ibatis.executor.CachingExecutor;
 import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.type.ArrayTypeHandler;
+import org.apache.ibatis.type.JdbcType;
 
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class DataPermissionInterceptor implements InnerInterceptor {
 
+    /**
+     * 参数化 DataScope 注入参数的参数名前缀
+     */
+    public static final String PARAMETER_PREFIX = "__dataScope_";
+
+    /**
+     * 标记 BoundSql 已经过数据权限改写，避免同一条语句被重复处理，值为本次生效的 DataScopeSet
+     */
+    private static final String REWRITTEN_MARKER = PARAMETER_PREFIX + "rewritten";
+
+    private static final ArrayTypeHandler ARRAY_TYPE_HANDLER = new ArrayTypeHandler();
+
     private final DataScopeSqlProcessor dataScopeSqlProcessor = new DataScopeSqlProcessor();
 
+    /**
+     * 改写后 SQL 的缓存，key 为原始 SQL + DataScope 标识及指纹
+     */
+    private final DataScopeCache<DataScopeCacheKey, DataScopeSql> sqlCache;
+
+    /**
+     * 改写计划的缓存，key 为 MappedStatement id + 原始 SQL + DataScope 标识，用于表达式是动态的 DataScope
+     */
+    private final DataScopeCache<DataScopeCacheKey, DataScopeRewritePlan> planCache;
+
+    /**
+     * 监控指标，没有设置时为 {@link DataScopeMetrics#NOOP}
+     */
+    private volatile DataScopeMetrics metrics;
+
+    /**
+     * Mapper 方法注解声明的数据权限，没有设置时只使用 {@link DataScopeHelper} 开启的数据权限
+     */
+    private volatile DataScopedStatementRegistry statementRegistry;
+
+    /**
+     * 提供 {@link fun.yannji.data.scope.GlobalDataScope}，没有设置时不注入
+     */
+    private volatile DataScopeHolder dataScopeHolder;
+
+    public DataPermissionInterceptor() {
+        this(DataScopeCache.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param sqlCacheMaximumSize 改写 SQL 缓存及改写计划缓存的最大条目数，小于等于 0 时关闭缓存
+     */
+    public DataPermissionInterceptor(int sqlCacheMaximumSize) {
+        this.sqlCache = new DataScopeCache<>(sqlCacheMaximumSize);
+        this.planCache = new DataScopeCache<>(sqlCacheMaximumSize);
+    }
+
+    /**
+     * @param dbType 数据库类型，用于选择 DataScope 中大 IN 列表的改写策略（见 {@link DataScopeValueSetStrategy#of(DbType)}）
+     * 及字符串常量的转义规则（见 {@link SqlLiteralSyntax#of(DbType)}）
+     */
+    public DataPermissionInterceptor(DbType dbType) {
+        this(DataScopeCache.DEFAULT_MAXIMUM_SIZE, dbType);
+    }
+
+    /**
+     * @param sqlCacheMaximumSize 改写 SQL 缓存及改写计划缓存的最大条目数，小于等于 0 时关闭缓存
+     * @param dbType 数据库类型，用于选择 DataScope 中大 IN 列表的改写策略（见 {@link DataScopeValueSetStrategy#of(DbType)}）
+     * 及字符串常量的转义规则（见 {@link SqlLiteralSyntax#of(DbType)}）
+     */
+    public DataPermissionInterceptor(int sqlCacheMaximumSize, DbType dbType) {
+        this(sqlCacheMaximumSize);
+        this.dataScopeSqlProcessor.setValueSetStrategy(DataScopeValueSetStrategy.of(dbType));
+        this.dataScopeSqlProcessor.setLiteralSyntax(SqlLiteralSyntax.of(dbType));
+    }
+
+    /**
+     * 自定义大 IN 列表的改写策略，需要在执行语句前设置
+     * @param valueSetStrategy 策略，为 null 时不改写
+     */
+    public void setValueSetStrategy(DataScopeValueSetStrategy valueSetStrategy) {
+        this.dataScopeSqlProcessor.setValueSetStrategy(valueSetStrategy);
+    }
+
+    /**
+     * 自定义字符串常量的转义规则，需要在执行语句前设置；没有通过 DbType 构造时规则未知，
+     * 参数化 DataScope 所在 SQL 的字符串常量中含有反斜杠且两种规则的结果不一致时改写失败
+     * @param literalSyntax 转义规则
+     */
+    public void setLiteralSyntax(SqlLiteralSyntax literalSyntax) {
+        this.dataScopeSqlProcessor.setLiteralSyntax(literalSyntax);
+    }
+
+    /**
+     * 设置是否对简单单表查询跳过 AST 解析、直接拼接过滤条件，需要在执行语句前设置
+     * @param fastPathEnabled 默认为 true
+     */
+    public void setFastPathEnabled(boolean fastPathEnabled) {
+        this.dataScopeSqlProcessor.setFastPathEnabled(fastPathEnabled);
+    }
+
+    /**
+     * 查询语句在执行前注入数据权限，已经改写过的语句（如 {@link DataScopePaginationInnerInterceptor} 提前改写的分页查询）不再处理
+     */
     @Override
     public void beforeQuery(Executor executor, MappedStatement ms, Object parameter, RowBounds rowBounds, ResultHandler resultHandler, BoundSql boundSql) throws SQLException {
-        List<DataScope> dataScopeList = DataScopeHelper.getDataScope();
-        if (CollectionUtil.isEmpty(dataScopeList)) {
+        if (boundSql.hasAdditionalParameter(REWRITTEN_MARKER)) {
             return;
         }
-        DataScopeHelper.clearDataScope();
-        String newSql = this.dataScopeSqlProcessor.parserSingle(boundSql.getSql(), dataScopeList);
+        DataScopeExpressionMemo memo = DataScopeHelper.getExpressionMemo();
+        DataScopeSet dataScopeSet = DataScopeHelper.consumeDataScope();
+        if (dataScopeSet == null) {
+            dataScopeSet = this.getStatementDataScopeSet(ms);
+        }
+        dataScopeSet = this.withGlobalDataScopes(dataScopeSet);
+        if (dataScopeSet.isEmpty()) {
+            return;
+        }
+        this.applyDataScope(ms, boundSql, dataScopeSet, memo);
+    }
+
+    /**
+     * insert/update/delete 语句，以及没有经过 {@link #beforeQuery} 的查询在 prepare 前注入数据权限
+     */
+    @Override
+    public void beforePrepare(StatementHandler sh, Connection connection, Integer transactionTimeout) {
+        this.processStatement(sh);
+    }
+
+    /**
+     * BatchExecutor/ReuseExecutor 会在 prepare 前先获取 BoundSql 与上一条 SQL 比较，
+     * 在此处改写可以让同一批次中相同的语句继续复用同一个 PreparedStatement
+     */
+    @Override
+    public void beforeGetBoundSql(StatementHandler sh) {
+        this.processStatement(sh);
+    }
+
+    /**
+     * 处理 insert/update/delete 语句。批量执行时数据权限对整个批次生效，不会被第一条语句消费，
+     * 需要在批次结束后关闭作用域或调用 {@link DataScopeHelper#clearDataScope()}。
+     * <p>
+     * 同时处理没有经过 {@link #beforeQuery} 的查询：游标查询、association/collection 的嵌套查询（select 属性），
+     * 以及其它插件直接通过 Executor 执行的查询。它们从属于当前正在执行的语句，只读取当前生效的数据权限，不会消费；
+     * 游标查询的一次性设置由 {@link DataScopeStreamingInterceptor} 在执行前转为作用域
+     * @param sh StatementHandler
+     */
+    private void processStatement(StatementHandler sh) {
+        PluginUtils.MPStatementHandler mpSh = PluginUtils.mpStatementHandler(sh);
+        MappedStatement ms = mpSh.mappedStatement();
+        SqlCommandType sct = ms.getSqlCommandType();
+        if (sct != SqlCommandType.INSERT && sct != SqlCommandType.UPDATE && sct != SqlCommandType.DELETE
+                && sct != SqlCommandType.SELECT) {
+            return;
+        }
+        BoundSql boundSql = mpSh.boundSql();
+        if (boundSql.hasAdditionalParameter(REWRITTEN_MARKER)) {
+            return;
+        }
+        DataScopeExpressionMemo memo = DataScopeHelper.getExpressionMemo();
+        DataScopeSet dataScopeSet = sct == SqlCommandType.SELECT || isBatch(mpSh.executor())
+                ? DataScopeHelper.getDataScopeSet()
+                : DataScopeHelper.consumeDataScope();
+        if (dataScopeSet == null) {
+            dataScopeSet = this.getStatementDataScopeSet(ms);
+        }
+        dataScopeSet = this.withGlobalDataScopes(dataScopeSet);
+        if (dataScopeSet.isEmpty()) {
+            return;
+        }
+        this.applyDataScope(ms, boundSql, dataScopeSet, memo);
+    }
+
+    /**
+     * 改写 BoundSql 的 SQL 并绑定参数化 DataScope 的参数
+     * @param ms MappedStatement
+     * @param boundSql BoundSql
+     * @param dataScopeSet 当前生效的 DataScope
+     * @param memo 当前作用域的表达式缓存，可能为 null
+     */
+    private void applyDataScope(MappedStatement ms, BoundSql boundSql, DataScopeSet dataScopeSet,
+            DataScopeExpressionMemo memo) {
+        DataScopeMetrics metrics = this.getMetrics();
+        DataScopeSql dataScopeSql = this.rewrite(ms, boundSql.getSql(), dataScopeSet, metrics, memo);
+        if (metrics.isEnabled()) {
+            dataScopeSql.recordMetrics(metrics, ms.getId());
+        }
         PluginUtils.MPBoundSql mpBoundSql = PluginUtils.mpBoundSql(boundSql);
-        mpBoundSql.sql(newSql);
+        mpBoundSql.sql(dataScopeSql.getSql());
+        if (dataScopeSql.isParameterized()) {
+            this.bindParameters(ms, boundSql, dataScopeSql, memo);
+        }
+        boundSql.setAdditionalParameter(REWRITTEN_MARKER, dataScopeSet);
+    }
+
+    /**
+     * 获取语句改写时生效的 DataScope
+     * @param boundSql BoundSql
+     * @return DataScopeSet，语句没有经过数据权限改写时返回 null
+     */
+    public static DataScopeSet getAppliedDataScopeSet(BoundSql boundSql) {
+        return boundSql.hasAdditionalParameter(REWRITTEN_MARKER)
+                ? (DataScopeSet) boundSql.getAdditionalParameter(REWRITTEN_MARKER)
+                : null;
+    }
+
+    private static boolean isBatch(Executor executor) {
+        if (executor instanceof CachingExecutor) {
+            executor = (Executor) PluginUtils.getMetaObject(executor).getValue("delegate");
+        }
+        return executor instanceof BatchExecutor;
+    }
+
+    /**
+     * 改写 SQL，所有 DataScope 都提供了指纹时优先读取缓存，命中时完全跳过 SQL 解析；
+     * 存在动态表达式的 DataScope 时使用按 MappedStatement 缓存的改写计划，只需生成表达式并拼接。
+     * 未命中缓存时先做词法预判，SQL 中没有出现任何需要过滤的表时同样不解析
+     * @param ms MappedStatement
+     * @param sql 原始 SQL
+     * @param dataScopeSet 当前生效的 DataScope
+     * @param metrics 监控指标
+     * @param memo 当前作用域的表达式缓存，只用于改写计划，缓存的改写结果本身与作用域无关
+     * @return 注入数据权限后的 SQL
+     */
+    private DataScopeSql rewrite(MappedStatement ms, String sql, DataScopeSet dataScopeSet, DataScopeMetrics metrics,
+            DataScopeExpressionMemo memo) {
+        DataScopeCacheKey cacheKey = DataScopeCacheKey.of(sql, dataScopeSet.getDataScopes());
+        if (cacheKey == null) {
+            return this.getRewritePlan(ms, sql, dataScopeSet).resolve(metrics, memo);
+        }
+        DataScopeSql dataScopeSql = this.sqlCache.get(cacheKey);
+        if (dataScopeSql == null) {
+            DataScopeTableIndex tableIndex = dataScopeSet.getTableIndex();
+            dataScopeSql = tableIndex.mayContainTable(sql)
+                    ? this.dataScopeSqlProcessor.rewrite(sql, tableIndex)
+                    : DataScopeSql.of(sql);
+            this.sqlCache.put(cacheKey, dataScopeSql);
+        }
+        return dataScopeSql;
+    }
+
+    /**
+     * 获取改写计划，同一 MappedStatement 的同一条 SQL 只编译一次
+     * @param ms MappedStatement
+     * @param sql 原始 SQL
+     * @param dataScopeSet 当前生效的 DataScope
+     * @return 改写计划
+     */
+    private DataScopeRewritePlan getRewritePlan(MappedStatement ms, String sql, DataScopeSet dataScopeSet) {
+        DataScopeCacheKey planKey = DataScopeCacheKey.forPlan(ms.getId(), sql, dataScopeSet.getDataScopes());
+        DataScopeRewritePlan plan = this.planCache.get(planKey);
+        if (plan == null) {
+            DataScopeTableIndex tableIndex = dataScopeSet.getTableIndex();
+            plan = tableIndex.mayContainTable(sql)
+                    ? this.dataScopeSqlProcessor.compile(sql, tableIndex)
+                    : DataScopeRewritePlan.passThrough(sql);
+            this.planCache.put(planKey, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * 预先改写一条语句并放入缓存：DataScope 都提供了指纹时缓存改写结果，否则只编译改写计划，不会调用 DataScope 生成表达式
+     * @param ms MappedStatement
+     * @param sql 原始 SQL
+     * @param dataScopeSet 生效的 DataScope
+     */
+    public void warmUp(MappedStatement ms, String sql, DataScopeSet dataScopeSet) {
+        if (dataScopeSet.isEmpty()) {
+            return;
+        }
+        if (DataScopeCacheKey.of(sql, dataScopeSet.getDataScopes()) == null) {
+            this.getRewritePlan(ms, sql, dataScopeSet);
+        }
+        else {
+            this.rewrite(ms, sql, dataScopeSet, this.getMetrics(), null);
+        }
+    }
+
+    /**
+     * 当前线程没有开启数据权限时，获取 Mapper 方法上 {@link fun.yannji.data.scope.annotation.DataScoped} 声明的数据权限
+     * @param ms MappedStatement
+     * @return DataScopeSet
+     */
+    private DataScopeSet getStatementDataScopeSet(MappedStatement ms) {
+        DataScopedStatementRegistry registry = this.statementRegistry;
+        return registry == null ? DataScopeSet.EMPTY : registry.getDataScopeSet(ms);
+    }
+
+    /**
+     * 将始终生效的 {@link fun.yannji.data.scope.GlobalDataScope} 并入语句生效的 DataScope，在同一次改写中注入
+     * @param dataScopeSet 语句生效的 DataScope
+     * @return DataScopeSet，没有任何 DataScope 时返回 {@link DataScopeSet#EMPTY}
+     */
+    private DataScopeSet withGlobalDataScopes(DataScopeSet dataScopeSet) {
+        DataScopeHolder holder = this.dataScopeHolder;
+        DataScopeSet merged = holder == null ? dataScopeSet : holder.withGlobalDataScopes(dataScopeSet);
+        return merged == null ? DataScopeSet.EMPTY : merged;
+    }
+
+    /**
+     * 获取监控指标
+     * @return DataScopeMetrics，没有设置时为 {@link DataScopeMetrics#NOOP}
+     */
+    private DataScopeMetrics getMetrics() {
+        DataScopeMetrics current = this.metrics;
+        return current == null ? DataScopeMetrics.NOOP : current;
+    }
+
+    boolean hasMetrics() {
+        return this.metrics != null;
+    }
+
+    /**
+     * 设置监控指标，Spring 容器中由 {@link DataPermissionInterceptorConfigurer} 设置
+     * @param metrics 监控指标，为 null 时不记录
+     */
+    public void setMetrics(DataScopeMetrics metrics) {
+        this.dataScopeSqlProcessor.setMetrics(metrics);
+        this.metrics = metrics;
+    }
+
+    /**
+     * 设置 Mapper 方法注解声明的数据权限，Spring 容器中由 {@link DataPermissionInterceptorConfigurer} 设置
+     * @param statementRegistry 为 null 时不读取注解声明的数据权限
+     */
+    public void setStatementRegistry(DataScopedStatementRegistry statementRegistry) {
+        this.statementRegistry = statementRegistry;
+    }
+
+    /**
+     * 设置提供 {@link fun.yannji.data.scope.GlobalDataScope} 的 DataScopeHolder，
+     * Spring 容器中由 {@link DataPermissionInterceptorConfigurer} 设置
+     * @param dataScopeHolder 为 null 时不注入 GlobalDataScope
+     */
+    public void setDataScopeHolder(DataScopeHolder dataScopeHolder) {
+        this.dataScopeHolder = dataScopeHolder;
+    }
+
+    /**
+     * 将参数化 DataScope 的参数值作为额外参数追加到 BoundSql，并在对应的占位符位置插入 ParameterMapping
+     * @param ms MappedStatement
+     * @param boundSql BoundSql
+     * @param dataScopeSql 改写结果
+     * @param memo 当前作用域的表达式缓存，可能为 null
+     */
+    private void bindParameters(MappedStatement ms, BoundSql boundSql, DataScopeSql dataScopeSql,
+            DataScopeExpressionMemo memo) {
+        List<ParameterMapping> originMappings = boundSql.getParameterMappings();
+        int total = originMappings.size();
+        for (ParameterSource source : dataScopeSql.getParameterSources()) {
+            total += source.getPositions().length;
+        }
+        ParameterMapping[] mappings = new ParameterMapping[total];
+        int parameterIndex = 0;
+        for (ParameterSource source : dataScopeSql.getParameterSources()) {
+            int[] positions = source.getPositions();
+            List<Object> values = source.getParameterValues(memo);
+            if (values == null || values.size() != positions.length) {
+                throw ExceptionUtils.mpe("DataScope [%s] expects %s parameter values for table %s, but got %s",
+                        source.getDataScope().getDataScopeKey(), positions.length, source.getTableName(),
+                        values == null ? 0 : values.size());
+            }
+            for (int i = 0; i < positions.length; i++) {
+                String property = PARAMETER_PREFIX + parameterIndex++;
+                Object value = values.get(i);
+                boundSql.setAdditionalParameter(property, value);
+                ParameterMapping.Builder builder = new ParameterMapping.Builder(ms.getConfiguration(), property, Object.class);
+                if (value instanceof Object[]) {
+                    builder.typeHandler(ARRAY_TYPE_HANDLER).jdbcType(JdbcType.ARRAY);
+                }
+                mappings[positions[i]] = builder.build();
+            }
+        }
+        int originIndex = 0;
+        for (int i = 0; i < total; i++) {
+            if (mappings[i] == null) {
+                mappings[i] = originMappings.get(originIndex++);
+            }
+        }
+        PluginUtils.mpBoundSql(boundSql).parameterMappings(new ArrayList<>(Arrays.asList(mappings)));
+    }
+
+    /**
+     * 改写 SQL 缓存，可用于查看命中、未命中及淘汰次数
+     * @return 改写 SQL 缓存
+     */
+    public DataScopeCache<DataScopeCacheKey, DataScopeSql> getSqlCache() {
+        return this.sqlCache;
+    }
+
+    /**
+     * 改写计划缓存，可用于查看命中、未命中及淘汰次数
+     * @return 改写计划缓存
+     */
+    public DataScopeCache<DataScopeCacheKey, DataScopeRewritePlan> getPlanCache() {
+        return this.planCache;
     }
 }
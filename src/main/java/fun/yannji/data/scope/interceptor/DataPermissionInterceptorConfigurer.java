@@ -0,0 +1,75 @@
+package fun.yannji.data.scope.interceptor;
+
+import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.inner.InnerInterceptor;
+import fun.yannji.data.scope.annotation.DataScopedStatementRegistry;
+import fun.yannji.data.scope.holder.DataScopeHolder;
+import fun.yannji.data.scope.metrics.DataScopeMetrics;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+/**
+ * 为 SqlSessionFactory 中注册的 {@link DataPermissionInterceptor} 注入 DataScopeHolder、
+ * DataScopedStatementRegistry 及监控指标。
+ * <p>
+ * 拦截器通常在 MybatisPlusInterceptor 的 Bean 方法中手动创建，不是容器管理的 Bean。所有单例初始化完成后再注入，
+ * 避免 DataScopeHolder 在创建 SqlSessionFactory 的过程中提前初始化 DataScope 及其依赖的 Mapper
+ *
+ * @author yannji
+ */
+public class DataPermissionInterceptorConfigurer implements SmartInitializingSingleton {
+
+	private final ObjectProvider<SqlSessionFactory> sqlSessionFactories;
+
+	private final ObjectProvider<DataScopeHolder> dataScopeHolder;
+
+	private final ObjectProvider<DataScopedStatementRegistry> statementRegistry;
+
+	private final ObjectProvider<DataScopeMetrics> metrics;
+
+	public DataPermissionInterceptorConfigurer(ObjectProvider<SqlSessionFactory> sqlSessionFactories,
+			ObjectProvider<DataScopeHolder> dataScopeHolder, ObjectProvider<DataScopedStatementRegistry> statementRegistry,
+			ObjectProvider<DataScopeMetrics> metrics) {
+		this.sqlSessionFactories = sqlSessionFactories;
+		this.dataScopeHolder = dataScopeHolder;
+		this.statementRegistry = statementRegistry;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		this.sqlSessionFactories.orderedStream().forEach(factory -> {
+			for (Interceptor interceptor : factory.getConfiguration().getInterceptors()) {
+				if (interceptor instanceof MybatisPlusInterceptor) {
+					for (InnerInterceptor inner : ((MybatisPlusInterceptor) interceptor).getInterceptors()) {
+						configure(inner);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * 注入 DataPermissionInterceptor，已经手动设置的监控指标不会被覆盖
+	 * @param inner InnerInterceptor
+	 */
+	public void configure(InnerInterceptor inner) {
+		DataPermissionInterceptor interceptor = inner instanceof DataScopePaginationInnerInterceptor
+				? ((DataScopePaginationInnerInterceptor) inner).getDataPermissionInterceptor()
+				: inner instanceof DataPermissionInterceptor ? (DataPermissionInterceptor) inner : null;
+		if (interceptor == null) {
+			return;
+		}
+		interceptor.setDataScopeHolder(this.dataScopeHolder.getIfAvailable());
+		interceptor.setStatementRegistry(this.statementRegistry.getIfAvailable());
+		if (!interceptor.hasMetrics()) {
+			DataScopeMetrics current = this.metrics.getIfAvailable();
+			if (current != null) {
+				interceptor.setMetrics(current);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,86 @@
+package fun.yannji.data.scope.interceptor;
+
+import fun.yannji.data.scope.helper.DataScopeHelper;
+import fun.yannji.data.scope.helper.DataScopeSnapshot;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * 获取数据时恢复查询时数据权限的游标，游标获取下一行时执行的嵌套查询使用与游标查询相同的数据权限
+ *
+ * @author yannji
+ */
+final class DataScopeCursor<T> implements Cursor<T> {
+
+	private final Cursor<T> delegate;
+
+	private final DataScopeSnapshot snapshot;
+
+	DataScopeCursor(Cursor<T> delegate, DataScopeSnapshot snapshot) {
+		this.delegate = delegate;
+		this.snapshot = snapshot;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return this.delegate.isOpen();
+	}
+
+	@Override
+	public boolean isConsumed() {
+		return this.delegate.isConsumed();
+	}
+
+	@Override
+	public int getCurrentIndex() {
+		return this.delegate.getCurrentIndex();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.delegate.close();
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return new ScopedIterator(this.delegate.iterator());
+	}
+
+	private final class ScopedIterator implements Iterator<T> {
+
+		private final Iterator<T> iterator;
+
+		private ScopedIterator(Iterator<T> iterator) {
+			this.iterator = iterator;
+		}
+
+		/**
+		 * DefaultCursor 在 hasNext 中读取下一行，嵌套查询在此时执行
+		 */
+		@Override
+		public boolean hasNext() {
+			DataScopeSnapshot previous = DataScopeHelper.restore(DataScopeCursor.this.snapshot);
+			try {
+				return this.iterator.hasNext();
+			}
+			finally {
+				DataScopeHelper.restore(previous);
+			}
+		}
+
+		@Override
+		public T next() {
+			DataScopeSnapshot previous = DataScopeHelper.restore(DataScopeCursor.this.snapshot);
+			try {
+				return this.iterator.next();
+			}
+			finally {
+				DataScopeHelper.restore(previous);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,92 @@
+package fun.yannji.data.scope.interceptor;
+
+import com.baomidou.mybatisplus.annotation.DbType;
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.core.toolkit.ParameterUtils;
+import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.pagination.dialects.IDialect;
+import fun.yannji.data.scope.cache.DataScopeCache;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import java.sql.SQLException;
+
+/**
+ * 支持数据权限的分页插件，用于替换 {@link PaginationInnerInterceptor}
+ * <p>
+ * 分页插件在 willDoQuery 阶段就会执行 count 语句，早于 {@link DataPermissionInterceptor#beforeQuery}。
+ * 本插件在生成 count 语句前先为原始查询注入数据权限，count 语句由改写后的 SQL 生成，并带上数据权限的参数及改写标记，
+ * 不会被再次改写；之后的分页查询同样直接使用这次改写的结果，整个分页查询只注入一次数据权限。
+ * <p>
+ * 原始 SQL 在各页之间不变，改写结果来自 {@link DataPermissionInterceptor} 的改写缓存；
+ * 由改写后的 SQL 生成 count 语句需要再解析一次，结果按 SQL 缓存，翻页时不再解析。
+ * <pre>
+ * DataPermissionInterceptor dataPermissionInterceptor = new DataPermissionInterceptor();
+ * interceptor.addInnerInterceptor(dataPermissionInterceptor);
+ * interceptor.addInnerInterceptor(new DataScopePaginationInnerInterceptor(dataPermissionInterceptor, DbType.MYSQL));
+ * </pre>
+ *
+ * @author yannji
+ */
+public class DataScopePaginationInnerInterceptor extends PaginationInnerInterceptor {
+
+	private final DataPermissionInterceptor dataPermissionInterceptor;
+
+	/**
+	 * 改写后的 SQL → count SQL，key 带有 count 优化选项
+	 */
+	private final DataScopeCache<String, String> countSqlCache;
+
+	public DataScopePaginationInnerInterceptor(DataPermissionInterceptor dataPermissionInterceptor) {
+		this.dataPermissionInterceptor = dataPermissionInterceptor;
+		this.countSqlCache = new DataScopeCache<>(DataScopeCache.DEFAULT_MAXIMUM_SIZE);
+	}
+
+	public DataScopePaginationInnerInterceptor(DataPermissionInterceptor dataPermissionInterceptor, DbType dbType) {
+		this(dataPermissionInterceptor);
+		setDbType(dbType);
+	}
+
+	public DataScopePaginationInnerInterceptor(DataPermissionInterceptor dataPermissionInterceptor,
+			IDialect dialect) {
+		this(dataPermissionInterceptor);
+		setDialect(dialect);
+	}
+
+	@Override
+	public boolean willDoQuery(Executor executor, MappedStatement ms, Object parameter, RowBounds rowBounds,
+			ResultHandler resultHandler, BoundSql boundSql) throws SQLException {
+		if (ParameterUtils.findPage(parameter).isPresent()) {
+			// 先注入数据权限，count 语句基于改写后的 SQL 生成
+			this.dataPermissionInterceptor.beforeQuery(executor, ms, parameter, rowBounds, resultHandler, boundSql);
+		}
+		return super.willDoQuery(executor, ms, parameter, rowBounds, resultHandler, boundSql);
+	}
+
+	@Override
+	protected String autoCountSql(IPage<?> page, String sql) {
+		String key = (page.optimizeCountSql() ? "1" : "0") + (page.optimizeJoinOfCountSql() ? "1" : "0") + sql;
+		String countSql = this.countSqlCache.get(key);
+		if (countSql == null) {
+			countSql = super.autoCountSql(page, sql);
+			this.countSqlCache.put(key, countSql);
+		}
+		return countSql;
+	}
+
+	DataPermissionInterceptor getDataPermissionInterceptor() {
+		return this.dataPermissionInterceptor;
+	}
+
+	/**
+	 * count SQL 缓存，可用于查看命中、未命中及淘汰次数
+	 * @return count SQL 缓存
+	 */
+	public DataScopeCache<String, String> getCountSqlCache() {
+		return this.countSqlCache;
+	}
+
+}
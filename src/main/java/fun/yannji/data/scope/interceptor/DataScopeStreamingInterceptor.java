@@ -0,0 +1,178 @@
+package fun.yannji.data.scope.interceptor;
+
+import fun.yannji.data.scope.annotation.DataScopedStatementRegistry;
+import fun.yannji.data.scope.helper.DataScopeHandle;
+import fun.yannji.data.scope.helper.DataScopeHelper;
+import fun.yannji.data.scope.helper.DataScopeSnapshot;
+import fun.yannji.data.scope.holder.DataScopeSet;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.Discriminator;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.ResultMapping;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 流式查询的数据权限插件
+ * <p>
+ * startDataScope 设置的一次性数据权限会被第一条语句消费，而游标查询、ResultHandler 流式查询在执行期间
+ * （游标则是在整个遍历期间）还会执行 association/collection 的嵌套查询，这些嵌套查询不经过 {@link DataPermissionInterceptor#beforeQuery}。
+ * 本插件在这类语句执行期间把生效的数据权限绑定为一个作用域，嵌套查询在 prepare 前读取该作用域注入数据权限，
+ * 改写结果来自改写缓存，同一作用域内的表达式缓存也在所有行之间共享，不会逐行解析 SQL。
+ * <p>
+ * 游标返回后作用域随即关闭，只在游标获取数据时临时恢复，不会影响遍历过程中执行的其它语句。
+ * 与 {@link com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor} 的注册顺序无关。
+ *
+ * @author yannji
+ */
+@Intercepts({
+		@Signature(type = Executor.class, method = "query",
+				args = { MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class }),
+		@Signature(type = Executor.class, method = "query",
+				args = { MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class,
+						BoundSql.class }),
+		@Signature(type = Executor.class, method = "queryCursor",
+				args = { MappedStatement.class, Object.class, RowBounds.class }) })
+public class DataScopeStreamingInterceptor implements Interceptor {
+
+	private static final String QUERY_CURSOR = "queryCursor";
+
+	private final DataScopedStatementRegistry statementRegistry;
+
+	/**
+	 * MappedStatement id → 结果映射中是否含有嵌套查询
+	 */
+	private final Map<String, Boolean> nestedQueryCache = new ConcurrentHashMap<>();
+
+	/**
+	 * @param statementRegistry Mapper 方法注解声明的数据权限，可以为 null
+	 */
+	public DataScopeStreamingInterceptor(DataScopedStatementRegistry statementRegistry) {
+		this.statementRegistry = statementRegistry;
+	}
+
+	@Override
+	public Object intercept(Invocation invocation) throws Throwable {
+		Object[] args = invocation.getArgs();
+		MappedStatement ms = (MappedStatement) args[0];
+		boolean cursor = QUERY_CURSOR.equals(invocation.getMethod().getName());
+		boolean nested = hasNestedQuery(ms);
+		if (!cursor && !nested && args[3] == null) {
+			// 普通的列表查询执行期间不会再执行其它语句
+			return invocation.proceed();
+		}
+		DataScopeHandle handle = bind(ms, args.length == 6 ? (BoundSql) args[5] : null);
+		if (!cursor) {
+			try {
+				return invocation.proceed();
+			}
+			finally {
+				close(handle);
+			}
+		}
+		Cursor<?> result;
+		DataScopeSnapshot snapshot;
+		try {
+			result = (Cursor<?>) invocation.proceed();
+			snapshot = nested ? DataScopeHelper.snapshot() : null;
+		}
+		finally {
+			close(handle);
+		}
+		// 没有嵌套查询时，遍历游标不会再执行语句，无需恢复数据权限
+		return snapshot == null || snapshot.isEmpty() ? result : new DataScopeCursor<>(result, snapshot);
+	}
+
+	/**
+	 * 将语句生效的数据权限绑定为作用域：一次性数据权限转为作用域；
+	 * 已经由 {@link DataPermissionInterceptor} 改写过的语句使用改写时生效的数据权限；
+	 * 当前已有作用域时直接沿用；否则使用 Mapper 方法注解声明的数据权限
+	 * @param ms MappedStatement
+	 * @param boundSql BoundSql，可能为 null
+	 * @return DataScopeHandle，不需要绑定时返回 null
+	 */
+	private DataScopeHandle bind(MappedStatement ms, BoundSql boundSql) {
+		DataScopeHandle handle = DataScopeHelper.openPendingDataScope();
+		if (handle != null) {
+			return handle;
+		}
+		DataScopeSet current = DataScopeHelper.getDataScopeSet();
+		DataScopeSet applied = boundSql == null ? null : DataPermissionInterceptor.getAppliedDataScopeSet(boundSql);
+		if (applied != null) {
+			return applied == current ? null : DataScopeHelper.openDataScope(applied);
+		}
+		if (current != null || this.statementRegistry == null) {
+			return null;
+		}
+		DataScopeSet declared = this.statementRegistry.getDataScopeSet(ms);
+		return declared.isEmpty() ? null : DataScopeHelper.openDataScope(declared);
+	}
+
+	private static void close(DataScopeHandle handle) {
+		if (handle != null) {
+			handle.close();
+		}
+	}
+
+	/**
+	 * 结果映射中是否含有嵌套查询，包括嵌套结果映射及鉴别器中的嵌套查询
+	 * @param ms MappedStatement
+	 * @return boolean
+	 */
+	private boolean hasNestedQuery(MappedStatement ms) {
+		Boolean nested = this.nestedQueryCache.get(ms.getId());
+		if (nested == null) {
+			nested = hasNestedQuery(ms.getConfiguration(), ms.getResultMaps(), new HashSet<>());
+			this.nestedQueryCache.put(ms.getId(), nested);
+		}
+		return nested;
+	}
+
+	private static boolean hasNestedQuery(Configuration configuration, Iterable<ResultMap> resultMaps,
+			Set<String> visited) {
+		for (ResultMap resultMap : resultMaps) {
+			if (!visited.add(resultMap.getId())) {
+				continue;
+			}
+			if (resultMap.hasNestedQueries()) {
+				return true;
+			}
+			Set<ResultMap> children = new HashSet<>();
+			List<ResultMapping> resultMappings = resultMap.getResultMappings();
+			for (ResultMapping resultMapping : resultMappings) {
+				if (resultMapping.getNestedResultMapId() != null
+						&& configuration.hasResultMap(resultMapping.getNestedResultMapId())) {
+					children.add(configuration.getResultMap(resultMapping.getNestedResultMapId()));
+				}
+			}
+			Discriminator discriminator = resultMap.getDiscriminator();
+			if (discriminator != null) {
+				for (String resultMapId : discriminator.getDiscriminatorMap().values()) {
+					if (configuration.hasResultMap(resultMapId)) {
+						children.add(configuration.getResultMap(resultMapId));
+					}
+				}
+			}
+			if (hasNestedQuery(configuration, children, visited)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
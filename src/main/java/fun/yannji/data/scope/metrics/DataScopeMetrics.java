@@ -0,0 +1,70 @@
+package fun.yannji.data.scope.metrics;
+
+import fun.yannji.data.scope.DataScope;
+
+/**
+ * 数据权限改写的监控指标
+ * <p>
+ * 默认实现 {@link #NOOP} 不做任何事情，{@link #isEnabled()} 为 false 时改写链路不会计时、不会统计，热点路径上没有额外开销
+ *
+ * @author yannji
+ */
+public interface DataScopeMetrics {
+
+	/**
+	 * 不记录任何指标的实现
+	 */
+	DataScopeMetrics NOOP = new DataScopeMetrics() {
+	};
+
+	/**
+	 * 是否启用
+	 * @return boolean
+	 */
+	default boolean isEnabled() {
+		return false;
+	}
+
+	/**
+	 * 记录 SQL 解析耗时
+	 * @param nanos 耗时（纳秒）
+	 */
+	default void recordParse(long nanos) {
+	}
+
+	/**
+	 * 记录数据权限条件注入耗时
+	 * @param nanos 耗时（纳秒）
+	 */
+	default void recordRewrite(long nanos) {
+	}
+
+	/**
+	 * 记录 SQL 序列化耗时
+	 * @param nanos 耗时（纳秒）
+	 */
+	default void recordSerialize(long nanos) {
+	}
+
+	/**
+	 * 记录一次 DataScope 匹配到表
+	 * @param dataScope DataScope
+	 */
+	default void recordTableMatched(DataScope dataScope) {
+	}
+
+	/**
+	 * 记录一次 DataScope 注入了过滤表达式
+	 * @param dataScope DataScope
+	 */
+	default void recordExpressionInjected(DataScope dataScope) {
+	}
+
+	/**
+	 * 记录一条开启了数据权限但没有注入任何条件的语句
+	 * @param statementId MappedStatement id
+	 */
+	default void recordPassThrough(String statementId) {
+	}
+
+}
@@ -0,0 +1,115 @@
+package fun.yannji.data.scope.metrics;
+
+import fun.yannji.data.scope.DataScope;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Micrometer 的监控指标
+ * <ul>
+ * <li>data.scope.sql.parse / data.scope.sql.rewrite / data.scope.sql.serialize：解析、注入、序列化耗时</li>
+ * <li>data.scope.table.matched / data.scope.expression.injected：按 DataScope key 统计的表匹配及表达式注入次数</li>
+ * <li>data.scope.statement.pass.through：开启数据权限但未注入任何条件的语句数，按 MappedStatement id 统计</li>
+ * </ul>
+ * 计数器按 tag 值缓存，首次之后不再分配对象；MappedStatement id 超过上限后统一记为 {@link #OTHER_STATEMENT}，避免 tag 基数无限增长
+ *
+ * @author yannji
+ */
+public class MicrometerDataScopeMetrics implements DataScopeMetrics {
+
+	/**
+	 * 默认最多记录的 MappedStatement id 数量
+	 */
+	public static final int DEFAULT_MAX_STATEMENT_TAGS = 200;
+
+	public static final String OTHER_STATEMENT = "OTHER";
+
+	private final MeterRegistry registry;
+
+	private final int maxStatementTags;
+
+	private final Timer parseTimer;
+
+	private final Timer rewriteTimer;
+
+	private final Timer serializeTimer;
+
+	private final Map<String, Counter> matchedCounters = new ConcurrentHashMap<>();
+
+	private final Map<String, Counter> injectedCounters = new ConcurrentHashMap<>();
+
+	private final Map<String, Counter> passThroughCounters = new ConcurrentHashMap<>();
+
+	public MicrometerDataScopeMetrics(MeterRegistry registry) {
+		this(registry, DEFAULT_MAX_STATEMENT_TAGS);
+	}
+
+	public MicrometerDataScopeMetrics(MeterRegistry registry, int maxStatementTags) {
+		this.registry = registry;
+		this.maxStatementTags = maxStatementTags;
+		this.parseTimer = Timer.builder("data.scope.sql.parse")
+			.description("Time spent parsing SQL before data scope injection")
+			.register(registry);
+		this.rewriteTimer = Timer.builder("data.scope.sql.rewrite")
+			.description("Time spent injecting data scope conditions into the parsed SQL")
+			.register(registry);
+		this.serializeTimer = Timer.builder("data.scope.sql.serialize")
+			.description("Time spent serializing the rewritten SQL")
+			.register(registry);
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return true;
+	}
+
+	@Override
+	public void recordParse(long nanos) {
+		this.parseTimer.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void recordRewrite(long nanos) {
+		this.rewriteTimer.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void recordSerialize(long nanos) {
+		this.serializeTimer.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void recordTableMatched(DataScope dataScope) {
+		counter(this.matchedCounters, "data.scope.table.matched", "scope", dataScope.getDataScopeKey()).increment();
+	}
+
+	@Override
+	public void recordExpressionInjected(DataScope dataScope) {
+		counter(this.injectedCounters, "data.scope.expression.injected", "scope", dataScope.getDataScopeKey())
+			.increment();
+	}
+
+	@Override
+	public void recordPassThrough(String statementId) {
+		String tag = statementId;
+		if (!this.passThroughCounters.containsKey(tag) && this.passThroughCounters.size() >= this.maxStatementTags) {
+			tag = OTHER_STATEMENT;
+		}
+		counter(this.passThroughCounters, "data.scope.statement.pass.through", "statement", tag).increment();
+	}
+
+	private Counter counter(Map<String, Counter> counters, String name, String tagKey, String tagValue) {
+		Counter counter = counters.get(tagValue);
+		if (counter == null) {
+			counter = counters.computeIfAbsent(tagValue,
+					k -> Counter.builder(name).tag(tagKey, k).register(this.registry));
+		}
+		return counter;
+	}
+
+}
@@ -0,0 +1,44 @@
+package fun.yannji.data.scope.processor;
+
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.Function;
+import net.sf.jsqlparser.expression.JdbcParameter;
+import net.sf.jsqlparser.expression.NotExpression;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.expression.operators.relational.InExpression;
+
+import java.util.List;
+
+/**
+ * 将 col in (...) 改写为 col = ANY(?)，not in 改写为 NOT col = ANY(?)，值以一个数组参数绑定，适用于 PostgreSQL、H2。
+ * not in 不使用 col &lt;&gt; ALL(?)，H2 的 ALL 只接受子查询
+ *
+ * @author yannji
+ */
+public class ArrayValueSetStrategy implements DataScopeValueSetStrategy {
+
+	private final int threshold;
+
+	public ArrayValueSetStrategy() {
+		this(DEFAULT_THRESHOLD);
+	}
+
+	public ArrayValueSetStrategy(int threshold) {
+		this.threshold = threshold;
+	}
+
+	@Override
+	public int getThreshold() {
+		return this.threshold;
+	}
+
+	@Override
+	public Expression rewrite(InExpression inExpression, List<Object> values, List<Object> parameterValues) {
+		Object[] array = values.get(0) instanceof Long ? values.toArray(new Long[0]) : values.toArray(new String[0]);
+		parameterValues.add(array);
+		EqualsTo equalsTo = new EqualsTo(inExpression.getLeftExpression(),
+				new Function().withName("ANY").withParameters(new JdbcParameter()));
+		return inExpression.isNot() ? new NotExpression(equalsTo) : equalsTo;
+	}
+
+}
@@ -0,0 +1,319 @@
+package fun.yannji.data.scope.processor;
+
+import com.baomidou.mybatisplus.core.metadata.TableFieldInfo;
+import com.baomidou.mybatisplus.core.metadata.TableInfo;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import com.baomidou.mybatisplus.core.toolkit.ExceptionUtils;
+import fun.yannji.data.scope.ColumnScope;
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.holder.DataScopeTableIndex;
+import fun.yannji.data.scope.util.CollectionUtil;
+import fun.yannji.data.scope.util.SqlParseUtil;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.ExpressionVisitorAdapter;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.select.AllColumns;
+import net.sf.jsqlparser.statement.select.AllTableColumns;
+import net.sf.jsqlparser.statement.select.FromItem;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.ParenthesedFromItem;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.SelectItem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按 {@link ColumnScope} 改写 PlainSelect 的查询列表
+ * <p>
+ * 只处理当前 PlainSelect 的 from 及 join 中直接出现的表，子查询由 {@link DataScopeSqlProcessor} 遍历时各自处理，
+ * 并且只对查询列表会出现在语句结果中的查询调用。
+ * 直接引用的字段替换为脱敏表达式并保留原列名；涉及需要脱敏的表时，select * 及 t.* 按 TableInfoHelper 中的表信息展开。
+ * 无法确定脱敏结果的查询直接抛出异常，不会返回未脱敏的数据：
+ * <ul>
+ * <li>需要展开的表没有表信息</li>
+ * <li>函数、运算、CASE 等查询项中引用了需要脱敏的字段</li>
+ * <li>多表查询中需要脱敏的字段没有表限定名，且无法按表信息确定字段所属的表</li>
+ * </ul>
+ *
+ * @author yannji
+ */
+final class ColumnScopeProcessor {
+
+	private ColumnScopeProcessor() {
+	}
+
+	/**
+	 * 改写查询列表
+	 * @param plainSelect PlainSelect
+	 * @param tableIndex 生效 DataScope 的表名索引
+	 */
+	static void process(PlainSelect plainSelect, DataScopeTableIndex tableIndex) {
+		List<SelectItem<?>> selectItems = plainSelect.getSelectItems();
+		if (CollectionUtil.isEmpty(selectItems)) {
+			return;
+		}
+		List<FromItem> fromItems = new ArrayList<>();
+		collectFromItems(plainSelect.getFromItem(), plainSelect.getJoins(), fromItems);
+		Map<FromItem, List<ColumnScope>> columnScopes = new IdentityHashMap<>();
+		for (FromItem fromItem : fromItems) {
+			if (fromItem instanceof Table) {
+				List<ColumnScope> scopes = match(tableIndex, (Table) fromItem);
+				if (!scopes.isEmpty()) {
+					columnScopes.put(fromItem, scopes);
+				}
+			}
+		}
+		if (columnScopes.isEmpty()) {
+			return;
+		}
+		List<SelectItem<?>> rewritten = new ArrayList<>(selectItems.size());
+		boolean changed = false;
+		for (SelectItem<?> selectItem : selectItems) {
+			Expression expression = selectItem.getExpression();
+			if (expression instanceof AllTableColumns) {
+				FromItem fromItem = findFromItem(fromItems, ((AllTableColumns) expression).getTable());
+				if (fromItem != null && columnScopes.containsKey(fromItem)) {
+					expand((Table) fromItem, columnScopes.get(fromItem), rewritten);
+					changed = true;
+					continue;
+				}
+			}
+			else if (expression instanceof AllColumns) {
+				expandAll(fromItems, columnScopes, rewritten);
+				changed = true;
+				continue;
+			}
+			else if (expression instanceof Column) {
+				SelectItem<?> masked = mask(selectItem, (Column) expression, fromItems, columnScopes);
+				if (masked != null) {
+					rewritten.add(masked);
+					changed = true;
+					continue;
+				}
+			}
+			else if (expression != null) {
+				checkExpression(expression, fromItems, columnScopes);
+			}
+			rewritten.add(selectItem);
+		}
+		if (changed) {
+			plainSelect.setSelectItems(rewritten);
+		}
+	}
+
+	private static void collectFromItems(FromItem fromItem, List<Join> joins, List<FromItem> fromItems) {
+		if (fromItem instanceof ParenthesedFromItem && fromItem.getAlias() == null) {
+			ParenthesedFromItem parenthesedFromItem = (ParenthesedFromItem) fromItem;
+			collectFromItems(parenthesedFromItem.getFromItem(), parenthesedFromItem.getJoins(), fromItems);
+		}
+		else if (fromItem != null) {
+			fromItems.add(fromItem);
+		}
+		if (joins != null) {
+			for (Join join : joins) {
+				collectFromItems(join.getRightItem(), null, fromItems);
+			}
+		}
+	}
+
+	private static List<ColumnScope> match(DataScopeTableIndex tableIndex, Table table) {
+		List<DataScope> dataScopes = tableIndex.match(SqlParseUtil.getTableName(table.getName()));
+		List<ColumnScope> columnScopes = null;
+		for (DataScope dataScope : dataScopes) {
+			if (dataScope instanceof ColumnScope) {
+				if (columnScopes == null) {
+					columnScopes = new ArrayList<>(dataScopes.size());
+				}
+				columnScopes.add((ColumnScope) dataScope);
+			}
+		}
+		return columnScopes == null ? Collections.emptyList() : columnScopes;
+	}
+
+	/**
+	 * 按字段的表限定名查找 from 中的表或子查询，有别名时按别名匹配
+	 */
+	private static FromItem findFromItem(List<FromItem> fromItems, Table qualifier) {
+		String name = SqlParseUtil.getTableName(qualifier.getName());
+		for (FromItem fromItem : fromItems) {
+			Alias alias = fromItem.getAlias();
+			if (alias != null) {
+				if (SqlParseUtil.getTableName(alias.getName()).equalsIgnoreCase(name)) {
+					return fromItem;
+				}
+			}
+			else if (fromItem instanceof Table
+					&& SqlParseUtil.getTableName(((Table) fromItem).getName()).equalsIgnoreCase(name)) {
+				return fromItem;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 替换直接引用的字段
+	 * @return 替换后的查询项，不需要替换时返回 null
+	 */
+	private static SelectItem<?> mask(SelectItem<?> selectItem, Column column, List<FromItem> fromItems,
+			Map<FromItem, List<ColumnScope>> columnScopes) {
+		Expression expression = resolve(column, fromItems, columnScopes);
+		if (expression == null) {
+			return null;
+		}
+		Alias alias = selectItem.getAlias() != null ? selectItem.getAlias() : new Alias(column.getColumnName());
+		return new SelectItem<>(expression, alias);
+	}
+
+	/**
+	 * 获取字段的脱敏表达式。没有表限定名的字段按 from 的顺序交给需要脱敏的表处理，
+	 * 多表查询中其它表按表信息不包含该字段时才能确定字段所属的表
+	 * @return 脱敏表达式，字段不需要脱敏时返回 null
+	 */
+	private static Expression resolve(Column column, List<FromItem> fromItems,
+			Map<FromItem, List<ColumnScope>> columnScopes) {
+		Table qualifier = column.getTable();
+		if (qualifier != null && qualifier.getName() != null) {
+			FromItem fromItem = findFromItem(fromItems, qualifier);
+			if (fromItem != null && columnScopes.containsKey(fromItem)) {
+				return getColumnExpression((Table) fromItem, columnScopes.get(fromItem), column);
+			}
+			return null;
+		}
+		String columnName = SqlParseUtil.getTableName(column.getColumnName());
+		FromItem owner = null;
+		Expression expression = null;
+		for (FromItem fromItem : fromItems) {
+			List<ColumnScope> scopes = columnScopes.get(fromItem);
+			if (scopes != null && !Boolean.FALSE.equals(hasColumn(fromItem, columnName))) {
+				expression = getColumnExpression((Table) fromItem, scopes, column);
+				if (expression != null) {
+					owner = fromItem;
+					break;
+				}
+			}
+		}
+		if (expression != null) {
+			for (FromItem fromItem : fromItems) {
+				if (fromItem != owner && !Boolean.FALSE.equals(hasColumn(fromItem, columnName))) {
+					throw ExceptionUtils.mpe("Failed to mask column %s for column scope, "
+							+ "the column needs a table qualifier in a multi-table query", column);
+				}
+			}
+		}
+		return expression;
+	}
+
+	/**
+	 * 按表信息判断 from 中的表是否包含字段
+	 * @return 是否包含，没有表信息或是子查询时无法确定，返回 null
+	 */
+	private static Boolean hasColumn(FromItem fromItem, String columnName) {
+		if (!(fromItem instanceof Table)) {
+			return null;
+		}
+		TableInfo tableInfo = TableInfoHelper.getTableInfo(SqlParseUtil.getTableName(((Table) fromItem).getName()));
+		if (tableInfo == null) {
+			return null;
+		}
+		if (tableInfo.havePK() && columnName.equalsIgnoreCase(tableInfo.getKeyColumn())) {
+			return true;
+		}
+		for (TableFieldInfo fieldInfo : tableInfo.getFieldList()) {
+			if (columnName.equalsIgnoreCase(SqlParseUtil.getTableName(fieldInfo.getColumn()))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 函数、运算、CASE 等查询项中引用了需要脱敏的字段时抛出异常。表达式中的子查询由 {@link DataScopeSqlProcessor} 各自处理
+	 */
+	private static void checkExpression(Expression expression, List<FromItem> fromItems,
+			Map<FromItem, List<ColumnScope>> columnScopes) {
+		expression.accept(new ExpressionVisitorAdapter() {
+
+			@Override
+			public void visit(Column column) {
+				if (resolve(column, fromItems, columnScopes) != null) {
+					throw ExceptionUtils.mpe("Failed to mask column %s for column scope, "
+							+ "the column is referenced in select item %s", column, expression);
+				}
+			}
+
+		});
+	}
+
+	private static Expression getColumnExpression(Table table, List<ColumnScope> scopes, Column column) {
+		return getColumnExpression(table, scopes, column.getColumnName(), column);
+	}
+
+	private static Expression getColumnExpression(Table table, List<ColumnScope> scopes, String columnName,
+			Column column) {
+		String tableName = SqlParseUtil.getTableName(table.getName());
+		columnName = SqlParseUtil.getTableName(columnName);
+		for (ColumnScope scope : scopes) {
+			Expression expression = scope.getColumnExpression(tableName, columnName, column);
+			if (expression != null) {
+				return expression;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 展开 select *：需要脱敏的表按表信息展开，其它表或子查询替换为 alias.*
+	 */
+	private static void expandAll(List<FromItem> fromItems, Map<FromItem, List<ColumnScope>> columnScopes,
+			List<SelectItem<?>> rewritten) {
+		for (FromItem fromItem : fromItems) {
+			List<ColumnScope> scopes = columnScopes.get(fromItem);
+			if (scopes != null) {
+				expand((Table) fromItem, scopes, rewritten);
+			}
+			else if (fromItem.getAlias() != null) {
+				rewritten.add(new SelectItem<>(new AllTableColumns(new Table(fromItem.getAlias().getName()))));
+			}
+			else if (fromItem instanceof Table) {
+				Table table = (Table) fromItem;
+				rewritten.add(new SelectItem<>(new AllTableColumns(new Table(table.getFullyQualifiedName()))));
+			}
+			else {
+				throw ExceptionUtils.mpe("Failed to expand select * for column scope, from item without alias: %s",
+						fromItem);
+			}
+		}
+	}
+
+	/**
+	 * 按 TableInfoHelper 中的表信息展开一张需要脱敏的表的全部字段
+	 */
+	private static void expand(Table table, List<ColumnScope> scopes, List<SelectItem<?>> rewritten) {
+		String tableName = SqlParseUtil.getTableName(table.getName());
+		TableInfo tableInfo = TableInfoHelper.getTableInfo(tableName);
+		if (tableInfo == null) {
+			throw ExceptionUtils.mpe("Failed to expand select * for column scope, no TableInfo found for table %s",
+					tableName);
+		}
+		List<String> columnNames = new ArrayList<>(tableInfo.getFieldList().size() + 1);
+		if (tableInfo.havePK()) {
+			columnNames.add(tableInfo.getKeyColumn());
+		}
+		for (TableFieldInfo fieldInfo : tableInfo.getFieldList()) {
+			columnNames.add(fieldInfo.getColumn());
+		}
+		for (String columnName : columnNames) {
+			Column column = SqlParseUtil.getAliasColumn(table, columnName);
+			Expression expression = getColumnExpression(table, scopes, columnName, column);
+			rewritten.add(expression == null ? new SelectItem<>(column)
+					: new SelectItem<>(expression, new Alias(columnName)));
+		}
+	}
+
+}
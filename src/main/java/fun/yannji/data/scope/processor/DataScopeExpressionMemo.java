@@ -0,0 +1,117 @@
+package fun.yannji.data.scope.processor;
+
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.ParameterizedDataScope;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.NullValue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 数据权限作用域内 {@link DataScope#isMemoizable()} 为 true 的 DataScope 的表达式及参数值缓存，
+ * key 为 DataScope key + 表名 + 别名，随作用域创建和销毁。
+ * <p>
+ * 缓存的表达式会被多条语句的 AST 共享，改写过程中不会修改注入的表达式；参数化表达式的标记在每次使用时单独包装
+ *
+ * @author yannji
+ */
+public final class DataScopeExpressionMemo {
+
+	/**
+	 * DataScope 对该表返回 null 时的占位
+	 */
+	private static final Expression NO_EXPRESSION = new NullValue();
+
+	private final Map<Key, Expression> expressions = new ConcurrentHashMap<>();
+
+	private final Map<Key, List<Object>> parameterValues = new ConcurrentHashMap<>();
+
+	/**
+	 * 获取过滤表达式，可缓存的 DataScope 在作用域内只调用一次 {@link DataScope#getExpression}
+	 * @param dataScope DataScope
+	 * @param tableName 表名
+	 * @param tableAlias 表别名
+	 * @return 过滤表达式，可能为 null
+	 */
+	Expression getExpression(DataScope dataScope, String tableName, Alias tableAlias) {
+		if (!dataScope.isMemoizable()) {
+			return dataScope.getExpression(tableName, tableAlias);
+		}
+		Key key = new Key(dataScope.getDataScopeKey(), tableName, tableAlias);
+		Expression expression = this.expressions.get(key);
+		if (expression == null) {
+			expression = dataScope.getExpression(tableName, tableAlias);
+			this.expressions.putIfAbsent(key, expression == null ? NO_EXPRESSION : expression);
+			return expression;
+		}
+		return expression == NO_EXPRESSION ? null : expression;
+	}
+
+	/**
+	 * 获取参数化 DataScope 的参数值，可缓存的 DataScope 在作用域内只调用一次 {@link ParameterizedDataScope#getParameterValues}
+	 * @param dataScope DataScope
+	 * @param tableName 表名
+	 * @param tableAlias 表别名
+	 * @return 参数值
+	 */
+	List<Object> getParameterValues(ParameterizedDataScope dataScope, String tableName, Alias tableAlias) {
+		if (!dataScope.isMemoizable()) {
+			return dataScope.getParameterValues(tableName, tableAlias);
+		}
+		Key key = new Key(dataScope.getDataScopeKey(), tableName, tableAlias);
+		List<Object> values = this.parameterValues.get(key);
+		if (values == null) {
+			values = dataScope.getParameterValues(tableName, tableAlias);
+			if (values != null) {
+				this.parameterValues.putIfAbsent(key, values);
+			}
+		}
+		return values;
+	}
+
+	public int size() {
+		return this.expressions.size() + this.parameterValues.size();
+	}
+
+	private static final class Key {
+
+		private final String dataScopeKey;
+
+		private final String tableName;
+
+		private final String alias;
+
+		private final int hash;
+
+		Key(String dataScopeKey, String tableName, Alias tableAlias) {
+			this.dataScopeKey = dataScopeKey;
+			this.tableName = tableName;
+			this.alias = tableAlias == null ? null : tableAlias.getName();
+			this.hash = Objects.hash(dataScopeKey, tableName, this.alias);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) o;
+			return this.dataScopeKey.equals(key.dataScopeKey) && this.tableName.equals(key.tableName)
+					&& Objects.equals(this.alias, key.alias);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+	}
+
+}
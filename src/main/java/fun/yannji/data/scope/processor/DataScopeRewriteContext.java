@@ -0,0 +1,340 @@
+package fun.yannji.data.scope.processor;
+
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.ParameterizedDataScope;
+import fun.yannji.data.scope.holder.DataScopeTableIndex;
+import fun.yannji.data.scope.metrics.DataScopeMetrics;
+import fun.yannji.data.scope.util.SqlLiteralSyntax;
+import fun.yannji.data.scope.util.SqlParseUtil;
+import lombok.Getter;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.BinaryExpression;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.Parenthesis;
+import net.sf.jsqlparser.expression.StringValue;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
+import net.sf.jsqlparser.expression.operators.relational.ExpressionList;
+import net.sf.jsqlparser.expression.operators.relational.InExpression;
+import net.sf.jsqlparser.schema.Table;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单次 SQL 改写的上下文，持有本次生效 DataScope 的表名索引、收集到的参数来源，以及编译改写计划时记录的注入槽位。
+ * 启用监控时还会记录匹配到表、注入了表达式的 DataScope，随改写结果一起缓存，每次执行时回放。
+ * <p>
+ * 上下文作为参数在 {@link DataScopeSqlProcessor} 的遍历过程中显式传递，不绑定线程，
+ * 每张表注入时直接读取，虚拟线程下也不会产生 ThreadLocal 的开销
+ *
+ * @author yannji
+ */
+public class DataScopeRewriteContext {
+
+	@Getter
+	private final DataScopeTableIndex tableIndex;
+
+	private final List<ParameterSource> parameterSources = new ArrayList<>();
+
+	/**
+	 * 编译改写计划时记录的注入槽位，非编译模式下为 null
+	 */
+	private final List<DataScopeRewritePlan.Slot> planSlots;
+
+	@Getter
+	private final DataScopeMetrics metrics;
+
+	/**
+	 * 当前作用域的表达式缓存，可能为 null
+	 */
+	private final DataScopeExpressionMemo memo;
+
+	/**
+	 * 大 IN 列表改写策略，可能为 null
+	 */
+	@Getter
+	private DataScopeValueSetStrategy valueSetStrategy;
+
+	/**
+	 * 字符串常量的转义规则，用于定位参数化表达式中的占位符，为 null 时表示未知
+	 */
+	private SqlLiteralSyntax literalSyntax;
+
+	/**
+	 * 匹配到表的 DataScope（每匹配一张表记录一次），未启用监控时为 null
+	 */
+	private final List<DataScope> matchedScopes;
+
+	/**
+	 * 注入了表达式的 DataScope（每注入一次记录一次），未启用监控时为 null
+	 */
+	private final List<DataScope> injectedScopes;
+
+	public DataScopeRewriteContext(List<DataScope> dataScopes) {
+		this(DataScopeTableIndex.of(dataScopes));
+	}
+
+	public DataScopeRewriteContext(DataScopeTableIndex tableIndex) {
+		this(tableIndex, DataScopeMetrics.NOOP);
+	}
+
+	public DataScopeRewriteContext(DataScopeTableIndex tableIndex, DataScopeMetrics metrics) {
+		this(tableIndex, metrics, null);
+	}
+
+	public DataScopeRewriteContext(DataScopeTableIndex tableIndex, DataScopeMetrics metrics,
+			DataScopeExpressionMemo memo) {
+		this(tableIndex, null, metrics, memo);
+	}
+
+	/**
+	 * 执行改写计划时使用，槽位中已记录了匹配的 DataScope
+	 */
+	DataScopeRewriteContext(DataScopeMetrics metrics, DataScopeExpressionMemo memo) {
+		this(null, null, metrics, memo);
+	}
+
+	private DataScopeRewriteContext(DataScopeTableIndex tableIndex, List<DataScopeRewritePlan.Slot> planSlots,
+			DataScopeMetrics metrics, DataScopeExpressionMemo memo) {
+		this.tableIndex = tableIndex;
+		this.planSlots = planSlots;
+		this.metrics = metrics;
+		this.memo = memo;
+		boolean recording = metrics.isEnabled() && planSlots == null;
+		this.matchedScopes = recording ? new ArrayList<>() : null;
+		this.injectedScopes = recording ? new ArrayList<>() : null;
+	}
+
+	/**
+	 * 创建用于编译改写计划的上下文
+	 * @param tableIndex 生效 DataScope 的表名索引
+	 * @param metrics 监控指标
+	 * @return DataScopeRewriteContext
+	 */
+	static DataScopeRewriteContext forPlanning(DataScopeTableIndex tableIndex, DataScopeMetrics metrics) {
+		return new DataScopeRewriteContext(tableIndex, new ArrayList<>(), metrics, null);
+	}
+
+	void setValueSetStrategy(DataScopeValueSetStrategy valueSetStrategy) {
+		this.valueSetStrategy = valueSetStrategy;
+	}
+
+	void setLiteralSyntax(SqlLiteralSyntax literalSyntax) {
+		this.literalSyntax = literalSyntax;
+	}
+
+	/**
+	 * 是否处于编译改写计划模式
+	 * @return boolean
+	 */
+	public boolean isPlanning() {
+		return this.planSlots != null;
+	}
+
+	public List<DataScope> getDataScopes() {
+		return this.tableIndex.getDataScopes();
+	}
+
+	/**
+	 * 兼容直接以 List&lt;DataScope&gt; 作为参数调用 parserSingle 的用法
+	 * @param obj JsqlParserSupport 透传的参数
+	 * @return DataScopeRewriteContext
+	 */
+	@SuppressWarnings("unchecked")
+	static DataScopeRewriteContext of(Object obj) {
+		if (obj instanceof DataScopeRewriteContext) {
+			return (DataScopeRewriteContext) obj;
+		}
+		return new DataScopeRewriteContext((List<DataScope>) obj);
+	}
+
+	/**
+	 * 获取 DataScope 的过滤表达式，参数化 DataScope 的表达式会被标记并登记参数来源
+	 * @param dataScope DataScope
+	 * @param tableName 表名
+	 * @param tableAlias 表别名
+	 * @return 过滤表达式，可能为 null
+	 */
+	Expression getExpression(DataScope dataScope, String tableName, Alias tableAlias) {
+		Expression expression = this.memo == null ? dataScope.getExpression(tableName, tableAlias)
+				: this.memo.getExpression(dataScope, tableName, tableAlias);
+		if (expression != null && this.injectedScopes != null) {
+			this.injectedScopes.add(dataScope);
+		}
+		if (expression == null) {
+			return null;
+		}
+		if (!(dataScope instanceof ParameterizedDataScope)) {
+			return parenthesize(this.valueSetStrategy == null ? expression
+					: rewriteValueSets(expression, dataScope, tableName, tableAlias));
+		}
+		this.parameterSources.add(new ParameterSource((ParameterizedDataScope) dataScope, tableName, tableAlias));
+		return new ParameterizedExpression(this.parameterSources.size() - 1, parenthesize(expression));
+	}
+
+	/**
+	 * or 表达式加上括号，注入的条件会用 and 与其它条件拼接，不加括号时 a AND x OR y 的优先级会出错
+	 * @param expression 过滤表达式
+	 * @return 加上括号的表达式
+	 */
+	private static Expression parenthesize(Expression expression) {
+		return expression instanceof OrExpression ? new Parenthesis(expression) : expression;
+	}
+
+	/**
+	 * 按大 IN 列表改写策略改写表达式中的常量 IN 列表，只处理顶层以及 and/or/括号中的 IN，
+	 * 需要改写时复制外层表达式，不修改 DataScope 返回（可能被缓存）的表达式
+	 * @param expression DataScope 返回的表达式
+	 * @param dataScope DataScope
+	 * @param tableName 表名
+	 * @param tableAlias 表别名
+	 * @return 改写后的表达式，无需改写时返回原表达式
+	 */
+	private Expression rewriteValueSets(Expression expression, DataScope dataScope, String tableName,
+			Alias tableAlias) {
+		if (expression instanceof InExpression) {
+			InExpression inExpression = (InExpression) expression;
+			List<Object> values = getConstantValues(inExpression.getRightExpression());
+			if (values == null || values.size() <= this.valueSetStrategy.getThreshold()) {
+				return expression;
+			}
+			List<Object> parameterValues = new ArrayList<>(1);
+			Expression rewritten = this.valueSetStrategy.rewrite(inExpression, values, parameterValues);
+			if (rewritten == null) {
+				return expression;
+			}
+			this.parameterSources.add(new ParameterSource(dataScope, tableName, tableAlias, parameterValues));
+			return new ParameterizedExpression(this.parameterSources.size() - 1, rewritten);
+		}
+		if (expression instanceof AndExpression || expression instanceof OrExpression) {
+			BinaryExpression binary = (BinaryExpression) expression;
+			Expression left = rewriteValueSets(binary.getLeftExpression(), dataScope, tableName, tableAlias);
+			Expression right = rewriteValueSets(binary.getRightExpression(), dataScope, tableName, tableAlias);
+			if (left == binary.getLeftExpression() && right == binary.getRightExpression()) {
+				return expression;
+			}
+			return expression instanceof AndExpression ? new AndExpression(left, right) : new OrExpression(left, right);
+		}
+		if (expression instanceof Parenthesis) {
+			Expression inner = ((Parenthesis) expression).getExpression();
+			Expression rewritten = rewriteValueSets(inner, dataScope, tableName, tableAlias);
+			return rewritten == inner ? expression : new Parenthesis(rewritten);
+		}
+		return expression;
+	}
+
+	/**
+	 * 获取 IN 列表中的常量值
+	 * @param rightExpression IN 右侧表达式
+	 * @return 均为整数时返回 Long 列表，均为字符串时返回 String 列表，否则返回 null
+	 */
+	private static List<Object> getConstantValues(Expression rightExpression) {
+		if (!(rightExpression instanceof ExpressionList) || ((ExpressionList<?>) rightExpression).isEmpty()) {
+			return null;
+		}
+		ExpressionList<?> list = (ExpressionList<?>) rightExpression;
+		boolean numeric = list.get(0) instanceof LongValue;
+		List<Object> values = new ArrayList<>(list.size());
+		for (Expression item : list) {
+			if (numeric && item instanceof LongValue) {
+				values.add(((LongValue) item).getValue());
+			}
+			else if (!numeric && item instanceof StringValue) {
+				values.add(((StringValue) item).getValue());
+			}
+			else {
+				return null;
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * 获取一张表上所有匹配 DataScope 的过滤表达式，多个表达式使用 and 连接
+	 * @param dataScopes 匹配的 DataScope
+	 * @param tableName 表名
+	 * @param tableAlias 表别名
+	 * @return 过滤表达式，均为空时返回 null
+	 */
+	Expression getExpression(List<DataScope> dataScopes, String tableName, Alias tableAlias) {
+		if (this.matchedScopes != null) {
+			this.matchedScopes.addAll(dataScopes);
+		}
+		Expression result = null;
+		for (DataScope dataScope : dataScopes) {
+			Expression expression = getExpression(dataScope, tableName, tableAlias);
+			if (expression != null) {
+				result = result == null ? expression : new AndExpression(result, expression);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 编译模式下记录一个注入槽位
+	 * @param tables 需要注入条件的表
+	 * @return 槽位占位表达式，所有表都没有匹配的 DataScope 时返回 null
+	 */
+	Expression addPlanSlot(List<Table> tables) {
+		List<DataScopeRewritePlan.Entry> entries = new ArrayList<>(tables.size());
+		for (Table table : tables) {
+			String tableName = SqlParseUtil.getTableName(table.getName());
+			List<DataScope> matchDataScopes = this.tableIndex.match(tableName);
+			if (!matchDataScopes.isEmpty()) {
+				entries.add(new DataScopeRewritePlan.Entry(tableName, table.getAlias(), matchDataScopes));
+			}
+		}
+		if (entries.isEmpty()) {
+			return null;
+		}
+		this.planSlots.add(new DataScopeRewritePlan.Slot(entries));
+		return new DataScopeRewritePlan.SlotExpression(this.planSlots.size() - 1);
+	}
+
+	/**
+	 * 登记 insert 自动填充的参数来源，所有行的填充值使用同一个参数来源
+	 * @param dataScope DataScope
+	 * @param tableName 表名
+	 * @param insertValueIndexes 填充的字段在 {@link DataScope#getInsertValues} 中的下标
+	 * @return 参数来源下标
+	 */
+	int addInsertSource(DataScope dataScope, String tableName, int[] insertValueIndexes) {
+		return addInsertSource(new ParameterSource(dataScope, tableName, insertValueIndexes));
+	}
+
+	/**
+	 * 登记 insert 自动填充的参数来源，执行改写计划时使用
+	 * @param parameterSource 参数来源
+	 * @return 参数来源下标
+	 */
+	int addInsertSource(ParameterSource parameterSource) {
+		if (this.matchedScopes != null) {
+			this.matchedScopes.add(parameterSource.getDataScope());
+			this.injectedScopes.add(parameterSource.getDataScope());
+		}
+		this.parameterSources.add(parameterSource);
+		return this.parameterSources.size() - 1;
+	}
+
+	/**
+	 * 根据编译模式下改写后的 SQL 生成改写计划
+	 * @param sql 带槽位标记的 SQL
+	 * @return DataScopeRewritePlan
+	 */
+	DataScopeRewritePlan toRewritePlan(String sql) {
+		return DataScopeRewritePlan.of(sql, this.planSlots, this.parameterSources);
+	}
+
+	/**
+	 * 根据改写后的 SQL 生成改写结果
+	 * @param sql 改写后的 SQL（可能带有参数标记）
+	 * @return DataScopeSql
+	 */
+	DataScopeSql toDataScopeSql(String sql) {
+		return DataScopeSql.of(sql, this.parameterSources, this.matchedScopes, this.injectedScopes,
+				this.literalSyntax);
+	}
+
+}
@@ -0,0 +1,227 @@
+package fun.yannji.data.scope.processor;
+
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.metrics.DataScopeMetrics;
+import fun.yannji.data.scope.util.SqlLiteralSyntax;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.ExpressionVisitor;
+import net.sf.jsqlparser.parser.ASTNodeAccessImpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 预编译的 SQL 改写计划
+ * <p>
+ * 对同一条 SQL 只做一次解析，记录下所有数据权限条件的注入位置及其对应的表名/别名和匹配的 DataScope，
+ * 得到 “SQL 片段 + 注入槽位” 形式的模板。之后每次执行只需调用 DataScope 生成表达式并拼接到槽位中，无需再遍历 AST，
+ * 适用于表达式依赖当前用户、无法直接缓存改写结果的 DataScope。
+ * <p>
+ * 计划假定 {@link DataScope#includes} 的结果只与表名有关。
+ * insert 自动填充的字段在编译时已经确定，计划中只记录其参数来源，每次执行重新获取参数值。
+ *
+ * @author yannji
+ */
+public class DataScopeRewritePlan {
+
+	static final char SLOT_MARKER = '\u0000';
+
+	/**
+	 * 注入条件全部为空时的占位条件
+	 */
+	private static final String EMPTY_CONDITION = "1 = 1";
+
+	/**
+	 * SQL 片段，数量比槽位多一个
+	 */
+	private final String[] fragments;
+
+	private final Slot[] slots;
+
+	/**
+	 * 编译时登记的参数来源（insert 自动填充），执行时复制后优先登记，下标与 SQL 片段中的参数标记对应
+	 */
+	private final List<ParameterSource> parameterSources;
+
+	private final int estimatedLength;
+
+	/**
+	 * 编译时的大 IN 列表改写策略，执行计划时使用
+	 */
+	private DataScopeValueSetStrategy valueSetStrategy;
+
+	/**
+	 * 编译时的字符串常量转义规则，执行计划时用于定位占位符
+	 */
+	private SqlLiteralSyntax literalSyntax;
+
+	private DataScopeRewritePlan(String[] fragments, Slot[] slots, List<ParameterSource> parameterSources) {
+		this.fragments = fragments;
+		this.slots = slots;
+		this.parameterSources = parameterSources;
+		int length = 0;
+		for (String fragment : fragments) {
+			length += fragment.length();
+		}
+		this.estimatedLength = length + slots.length * 64;
+	}
+
+	/**
+	 * 根据带槽位标记的 SQL 构建改写计划
+	 * @param markedSql 带槽位标记的 SQL
+	 * @param slots 槽位，下标与标记中的序号对应
+	 * @param parameterSources 编译时登记的参数来源
+	 * @return DataScopeRewritePlan
+	 */
+	static DataScopeRewritePlan of(String markedSql, List<Slot> slots, List<ParameterSource> parameterSources) {
+		List<String> fragments = new ArrayList<>(slots.size() + 1);
+		List<Slot> orderedSlots = new ArrayList<>(slots.size());
+		int start = 0;
+		int markerStart;
+		while ((markerStart = markedSql.indexOf(SLOT_MARKER, start)) >= 0) {
+			int markerEnd = markedSql.indexOf(SLOT_MARKER, markerStart + 1);
+			fragments.add(markedSql.substring(start, markerStart));
+			orderedSlots.add(slots.get(Integer.parseInt(markedSql.substring(markerStart + 1, markerEnd))));
+			start = markerEnd + 1;
+		}
+		fragments.add(markedSql.substring(start));
+		return new DataScopeRewritePlan(fragments.toArray(new String[0]), orderedSlots.toArray(new Slot[0]),
+				new ArrayList<>(parameterSources));
+	}
+
+	DataScopeRewritePlan withValueSetStrategy(DataScopeValueSetStrategy valueSetStrategy) {
+		this.valueSetStrategy = valueSetStrategy;
+		return this;
+	}
+
+	DataScopeRewritePlan withLiteralSyntax(SqlLiteralSyntax literalSyntax) {
+		this.literalSyntax = literalSyntax;
+		return this;
+	}
+
+	/**
+	 * 不需要注入任何条件的改写计划
+	 * @param sql 原始 SQL
+	 * @return DataScopeRewritePlan
+	 */
+	public static DataScopeRewritePlan passThrough(String sql) {
+		return new DataScopeRewritePlan(new String[] { sql }, new Slot[0], Collections.emptyList());
+	}
+
+	/**
+	 * 生成本次执行的改写结果
+	 * @return DataScopeSql
+	 */
+	public DataScopeSql resolve() {
+		return resolve(DataScopeMetrics.NOOP);
+	}
+
+	/**
+	 * 生成本次执行的改写结果
+	 * @param metrics 监控指标，启用时改写结果中会记录本次匹配及注入的 DataScope
+	 * @return DataScopeSql
+	 */
+	public DataScopeSql resolve(DataScopeMetrics metrics) {
+		return resolve(metrics, null);
+	}
+
+	/**
+	 * 生成本次执行的改写结果
+	 * @param metrics 监控指标，启用时改写结果中会记录本次匹配及注入的 DataScope
+	 * @param memo 当前作用域的表达式缓存，可以为 null
+	 * @return DataScopeSql
+	 */
+	public DataScopeSql resolve(DataScopeMetrics metrics, DataScopeExpressionMemo memo) {
+		if (this.slots.length == 0 && this.parameterSources.isEmpty()) {
+			return DataScopeSql.of(this.fragments[0]);
+		}
+		DataScopeRewriteContext context = new DataScopeRewriteContext(metrics, memo);
+		context.setValueSetStrategy(this.valueSetStrategy);
+		context.setLiteralSyntax(this.literalSyntax);
+		for (ParameterSource parameterSource : this.parameterSources) {
+			context.addInsertSource(parameterSource.copy());
+		}
+		StringBuilder builder = new StringBuilder(this.estimatedLength);
+		builder.append(this.fragments[0]);
+		for (int i = 0; i < this.slots.length; i++) {
+			this.slots[i].render(context, builder);
+			builder.append(this.fragments[i + 1]);
+		}
+		return context.toDataScopeSql(builder.toString());
+	}
+
+	/**
+	 * 注入槽位，对应一次 injectExpression 调用
+	 */
+	static final class Slot {
+
+		private final List<Entry> entries;
+
+		Slot(List<Entry> entries) {
+			this.entries = entries;
+		}
+
+		void render(DataScopeRewriteContext context, StringBuilder builder) {
+			int start = builder.length();
+			for (Entry entry : this.entries) {
+				Expression expression = context.getExpression(entry.dataScopes, entry.tableName, entry.tableAlias);
+				if (expression == null) {
+					continue;
+				}
+				if (builder.length() > start) {
+					builder.append(" AND ");
+				}
+				builder.append(expression);
+			}
+			if (builder.length() == start) {
+				builder.append(EMPTY_CONDITION);
+			}
+		}
+
+	}
+
+	/**
+	 * 槽位中的一张表及其匹配的 DataScope
+	 */
+	static final class Entry {
+
+		private final String tableName;
+
+		private final Alias tableAlias;
+
+		private final List<DataScope> dataScopes;
+
+		Entry(String tableName, Alias tableAlias, List<DataScope> dataScopes) {
+			this.tableName = tableName;
+			this.tableAlias = tableAlias;
+			this.dataScopes = dataScopes;
+		}
+
+	}
+
+	/**
+	 * 槽位在 AST 中的占位表达式
+	 */
+	static final class SlotExpression extends ASTNodeAccessImpl implements Expression {
+
+		private final int index;
+
+		SlotExpression(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public void accept(ExpressionVisitor expressionVisitor) {
+			// 占位表达式不包含任何子节点
+		}
+
+		@Override
+		public String toString() {
+			return SLOT_MARKER + String.valueOf(this.index) + SLOT_MARKER;
+		}
+
+	}
+
+}
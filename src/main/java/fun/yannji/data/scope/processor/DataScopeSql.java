@@ -0,0 +1,212 @@
+package fun.yannji.data.scope.processor;
+
+import com.baomidou.mybatisplus.core.toolkit.ExceptionUtils;
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.metrics.DataScopeMetrics;
+import fun.yannji.data.scope.util.SqlLiteralSyntax;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 数据权限改写结果：改写后的 SQL，以及参数化 DataScope 注入的参数来源
+ *
+ * @author yannji
+ */
+@Getter
+public class DataScopeSql {
+
+	private final String sql;
+
+	private final List<ParameterSource> parameterSources;
+
+	private static final DataScope[] NO_SCOPES = new DataScope[0];
+
+	/**
+	 * 改写时匹配到表的 DataScope，仅在启用监控时记录
+	 */
+	private final DataScope[] matchedScopes;
+
+	/**
+	 * 改写时注入了表达式的 DataScope，仅在启用监控时记录
+	 */
+	private final DataScope[] injectedScopes;
+
+	private DataScopeSql(String sql, List<ParameterSource> parameterSources, DataScope[] matchedScopes,
+			DataScope[] injectedScopes) {
+		this.sql = sql;
+		this.parameterSources = parameterSources;
+		this.matchedScopes = matchedScopes;
+		this.injectedScopes = injectedScopes;
+	}
+
+	/**
+	 * 是否含有需要额外绑定的参数
+	 * @return boolean
+	 */
+	public boolean isParameterized() {
+		return !this.parameterSources.isEmpty();
+	}
+
+	/**
+	 * 构建不含额外参数的改写结果
+	 * @param sql 改写后的 SQL
+	 * @return DataScopeSql
+	 */
+	public static DataScopeSql of(String sql) {
+		return new DataScopeSql(sql, Collections.emptyList(), NO_SCOPES, NO_SCOPES);
+	}
+
+	/**
+	 * 将本次改写的表匹配、表达式注入情况记录到监控指标，未注入任何表达式时记为透传
+	 * @param metrics 监控指标
+	 * @param statementId MappedStatement id
+	 */
+	public void recordMetrics(DataScopeMetrics metrics, String statementId) {
+		for (DataScope dataScope : this.matchedScopes) {
+			metrics.recordTableMatched(dataScope);
+		}
+		for (DataScope dataScope : this.injectedScopes) {
+			metrics.recordExpressionInjected(dataScope);
+		}
+		if (this.injectedScopes.length == 0) {
+			metrics.recordPassThrough(statementId);
+		}
+	}
+
+	private static DataScope[] toArray(List<DataScope> dataScopes) {
+		return dataScopes == null || dataScopes.isEmpty() ? NO_SCOPES : dataScopes.toArray(NO_SCOPES);
+	}
+
+	/**
+	 * 根据带有 {@link ParameterizedExpression} 标记的 SQL 构建改写结果。
+	 * 扫描 SQL 中所有 ? 占位符（跳过字符串常量与注释），记录标记区域内占位符的全局下标，并移除标记。
+	 * <p>
+	 * 字符串常量按数据库的转义规则跳过；规则未知且 SQL 中含有反斜杠时分别按两种规则扫描，结果不一致时无法确定占位符的位置，抛出异常
+	 * @param markedSql 带标记的 SQL
+	 * @param parameterSources 参数来源，下标与标记中的序号对应
+	 * @param matchedScopes 匹配到表的 DataScope，未启用监控时为 null
+	 * @param injectedScopes 注入了表达式的 DataScope，未启用监控时为 null
+	 * @param literalSyntax 字符串常量的转义规则，为 null 时表示未知
+	 * @return DataScopeSql
+	 */
+	static DataScopeSql of(String markedSql, List<ParameterSource> parameterSources, List<DataScope> matchedScopes,
+			List<DataScope> injectedScopes, SqlLiteralSyntax literalSyntax) {
+		if (parameterSources.isEmpty()) {
+			return new DataScopeSql(markedSql, Collections.emptyList(), toArray(matchedScopes), toArray(injectedScopes));
+		}
+		MarkerScan scan;
+		if (literalSyntax != null) {
+			scan = MarkerScan.scan(markedSql, parameterSources.size(), literalSyntax);
+		}
+		else {
+			scan = MarkerScan.scan(markedSql, parameterSources.size(), SqlLiteralSyntax.STANDARD);
+			if (markedSql.indexOf('\\') >= 0
+					&& !scan.equals(MarkerScan.scan(markedSql, parameterSources.size(), SqlLiteralSyntax.BACKSLASH_ESCAPES))) {
+				throw ExceptionUtils.mpe("Ambiguous backslash in string literal, unable to locate DataScope parameters, "
+						+ "please specify the DbType of DataPermissionInterceptor. Error SQL: %s", markedSql);
+			}
+		}
+		for (int i = 0; i < parameterSources.size(); i++) {
+			for (int position : scan.positions[i]) {
+				parameterSources.get(i).addPosition(position);
+			}
+		}
+		return new DataScopeSql(scan.sql, Collections.unmodifiableList(parameterSources), toArray(matchedScopes),
+				toArray(injectedScopes));
+	}
+
+	/**
+	 * 按一种转义规则扫描带标记 SQL 的结果：移除标记后的 SQL，以及每个参数来源对应的占位符下标
+	 */
+	private static final class MarkerScan {
+
+		private final String sql;
+
+		private final int[][] positions;
+
+		private MarkerScan(String sql, int[][] positions) {
+			this.sql = sql;
+			this.positions = positions;
+		}
+
+		static MarkerScan scan(String markedSql, int sourceCount, SqlLiteralSyntax literalSyntax) {
+			StringBuilder builder = new StringBuilder(markedSql.length());
+			int[] counts = new int[sourceCount];
+			int[][] positions = new int[sourceCount][4];
+			int current = -1;
+			int placeholderIndex = 0;
+			int i = 0;
+			int length = markedSql.length();
+			while (i < length) {
+				char c = markedSql.charAt(i);
+				if (c == '/' && current >= 0 && markedSql.startsWith(ParameterizedExpression.MARKER_END, i)) {
+					current = -1;
+					i += ParameterizedExpression.MARKER_END.length();
+					continue;
+				}
+				if (c == '/' && markedSql.startsWith(ParameterizedExpression.MARKER_START, i)) {
+					// 只识别 /*ds:序号*/ 形式且序号合法的标记，其它内容按普通注释处理
+					int indexStart = i + ParameterizedExpression.MARKER_START.length();
+					int indexEnd = indexStart;
+					while (indexEnd < length && indexEnd - indexStart < 9 && Character.isDigit(markedSql.charAt(indexEnd))) {
+						indexEnd++;
+					}
+					if (indexEnd > indexStart && markedSql.startsWith("*/", indexEnd)) {
+						int index = Integer.parseInt(markedSql.substring(indexStart, indexEnd));
+						if (index < sourceCount) {
+							current = index;
+							i = indexEnd + 2;
+							continue;
+						}
+					}
+				}
+				int end = i + 1;
+				if (c == '\'' || c == '"' || c == '`') {
+					end = literalSyntax.skipQuoted(markedSql, i);
+				}
+				else if (c == '-' && i + 1 < length && markedSql.charAt(i + 1) == '-') {
+					end = markedSql.indexOf('\n', i);
+					end = end < 0 ? length : end;
+				}
+				else if (c == '/' && i + 1 < length && markedSql.charAt(i + 1) == '*') {
+					end = markedSql.indexOf("*/", i + 2);
+					end = end < 0 ? length : end + 2;
+				}
+				else if (c == '?') {
+					if (current >= 0) {
+						if (counts[current] == positions[current].length) {
+							positions[current] = Arrays.copyOf(positions[current], counts[current] * 2);
+						}
+						positions[current][counts[current]++] = placeholderIndex;
+					}
+					placeholderIndex++;
+				}
+				builder.append(markedSql, i, end);
+				i = end;
+			}
+			for (int j = 0; j < sourceCount; j++) {
+				positions[j] = Arrays.copyOf(positions[j], counts[j]);
+			}
+			return new MarkerScan(builder.toString(), positions);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof MarkerScan)) {
+				return false;
+			}
+			MarkerScan that = (MarkerScan) o;
+			return this.sql.equals(that.sql) && Arrays.deepEquals(this.positions, that.positions);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.sql.hashCode();
+		}
+
+	}
+
+}
@@ -16,27 +16,34 @@
 
 package fun.yannji.data.scope.processor;
 
+import com.baomidou.mybatisplus.core.toolkit.ExceptionUtils;
+import com.baomidou.mybatisplus.extension.parser.JsqlParserGlobal;
 import com.baomidou.mybatisplus.extension.parser.JsqlParserSupport;
 import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.holder.DataScopeTableIndex;
+import fun.yannji.data.scope.metrics.DataScopeMetrics;
 import fun.yannji.data.scope.util.CollectionUtil;
+import fun.yannji.data.scope.util.SqlLiteralSyntax;
 import fun.yannji.data.scope.util.SqlParseUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.sf.jsqlparser.JSQLParserException;
 import net.sf.jsqlparser.expression.*;
 import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
 import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
-import net.sf.jsqlparser.expression.operators.relational.ExistsExpression;
 import net.sf.jsqlparser.expression.operators.relational.ExpressionList;
-import net.sf.jsqlparser.expression.operators.relational.InExpression;
+import net.sf.jsqlparser.expression.operators.relational.ParenthesedExpressionList;
+import net.sf.jsqlparser.schema.Column;
 import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
 import net.sf.jsqlparser.statement.delete.Delete;
 import net.sf.jsqlparser.statement.insert.Insert;
 import net.sf.jsqlparser.statement.select.*;
 import net.sf.jsqlparser.statement.update.Update;
+import net.sf.jsqlparser.statement.update.UpdateSet;
 import org.springframework.util.CollectionUtils;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * 数据权限 sql 处理器 参考 mybatis-plus 租户拦截器，解析 sql where 部分，进行查询表达式注入
@@ -48,125 +55,479 @@ import java.util.stream.Collectors;
 @Slf4j
 public class DataScopeSqlProcessor extends JsqlParserSupport {
 
+	private DataScopeMetrics metrics = DataScopeMetrics.NOOP;
+
+	private DataScopeValueSetStrategy valueSetStrategy;
+
+	private boolean fastPathEnabled = true;
+
+	private SqlLiteralSyntax literalSyntax;
+
+	/**
+	 * 设置监控指标，用于记录解析、注入、序列化各阶段的耗时
+	 * @param metrics 监控指标，为 null 时不记录
+	 */
+	public void setMetrics(DataScopeMetrics metrics) {
+		this.metrics = metrics == null ? DataScopeMetrics.NOOP : metrics;
+	}
+
+	/**
+	 * 设置大 IN 列表改写策略
+	 * @param valueSetStrategy 策略，为 null 时不改写
+	 */
+	public void setValueSetStrategy(DataScopeValueSetStrategy valueSetStrategy) {
+		this.valueSetStrategy = valueSetStrategy;
+	}
+
+	/**
+	 * 设置字符串常量的转义规则，用于定位参数化 DataScope 注入的占位符
+	 * @param literalSyntax 转义规则，为 null 时表示未知，SQL 中含有反斜杠且两种规则的结果不一致时改写失败
+	 */
+	public void setLiteralSyntax(SqlLiteralSyntax literalSyntax) {
+		this.literalSyntax = literalSyntax;
+	}
+
+	/**
+	 * 设置是否启用快速改写：简单单表查询直接在原 SQL 上拼接过滤条件，跳过 AST 解析与序列化，见 {@link SimpleSelect}
+	 * @param fastPathEnabled 默认为 true
+	 */
+	public void setFastPathEnabled(boolean fastPathEnabled) {
+		this.fastPathEnabled = fastPathEnabled;
+	}
+
+	/**
+	 * 改写 SQL，注入数据权限过滤条件
+	 * @param sql 原始 SQL
+	 * @param dataScopes 生效的 DataScope
+	 * @return 改写结果，包含参数化 DataScope 需要额外绑定的参数来源
+	 */
+	public DataScopeSql rewrite(String sql, List<DataScope> dataScopes) {
+		return rewrite(sql, DataScopeTableIndex.of(dataScopes));
+	}
+
+	/**
+	 * 改写 SQL，注入数据权限过滤条件
+	 * @param sql 原始 SQL
+	 * @param tableIndex 生效 DataScope 的表名索引
+	 * @return 改写结果，包含参数化 DataScope 需要额外绑定的参数来源
+	 */
+	public DataScopeSql rewrite(String sql, DataScopeTableIndex tableIndex) {
+		return rewrite(sql, tableIndex, null);
+	}
+
+	/**
+	 * 改写 SQL，注入数据权限过滤条件
+	 * @param sql 原始 SQL
+	 * @param tableIndex 生效 DataScope 的表名索引
+	 * @param memo 当前作用域的表达式缓存，可以为 null
+	 * @return 改写结果，包含参数化 DataScope 需要额外绑定的参数来源
+	 */
+	public DataScopeSql rewrite(String sql, DataScopeTableIndex tableIndex, DataScopeExpressionMemo memo) {
+		DataScopeRewriteContext context = new DataScopeRewriteContext(tableIndex, this.metrics, memo);
+		context.setValueSetStrategy(this.valueSetStrategy);
+		context.setLiteralSyntax(this.literalSyntax);
+		return context.toDataScopeSql(process(sql, context));
+	}
+
+	/**
+	 * 编译改写计划：解析一次 SQL，记录所有注入位置，之后每次执行只需生成表达式并拼接
+	 * @param sql 原始 SQL
+	 * @param tableIndex 生效 DataScope 的表名索引
+	 * @return 改写计划
+	 */
+	public DataScopeRewritePlan compile(String sql, DataScopeTableIndex tableIndex) {
+		DataScopeRewriteContext context = DataScopeRewriteContext.forPlanning(tableIndex, this.metrics);
+		return context.toRewritePlan(process(sql, context))
+			.withValueSetStrategy(this.valueSetStrategy)
+			.withLiteralSyntax(this.literalSyntax);
+	}
+
+	/**
+	 * 解析、注入、序列化 SQL，与 {@link #parserSingle} 流程一致，启用监控时分别记录各阶段耗时
+	 * @param sql 原始 SQL
+	 * @param context 改写上下文
+	 * @return 改写后的 SQL
+	 */
+	private String process(String sql, DataScopeRewriteContext context) {
+		DataScopeMetrics metrics = context.getMetrics();
+		boolean timed = metrics.isEnabled();
+		long start = timed ? System.nanoTime() : 0L;
+		// 快速改写只追加 where 条件，存在字段级数据权限时需要改写查询列表
+		SimpleSelect simpleSelect = this.fastPathEnabled && !context.getTableIndex().hasColumnScopes()
+				? SimpleSelect.parse(sql) : null;
+		if (simpleSelect != null) {
+			return processSimpleSelect(simpleSelect, context, start);
+		}
+		Statement statement;
+		try {
+			statement = JsqlParserGlobal.parse(sql);
+		}
+		catch (JSQLParserException e) {
+			throw ExceptionUtils.mpe("Failed to process, Error SQL: %s", e.getCause(), sql);
+		}
+		long parsed = timed ? System.nanoTime() : 0L;
+		if (statement instanceof Insert) {
+			processInsert((Insert) statement, 0, sql, context);
+		}
+		else if (statement instanceof Select) {
+			processSelect((Select) statement, 0, sql, context);
+		}
+		else if (statement instanceof Update) {
+			processUpdate((Update) statement, 0, sql, context);
+		}
+		else if (statement instanceof Delete) {
+			processDelete((Delete) statement, 0, sql, context);
+		}
+		long rewritten = timed ? System.nanoTime() : 0L;
+		String result = statement.toString();
+		if (timed) {
+			metrics.recordParse(parsed - start);
+			metrics.recordRewrite(rewritten - parsed);
+			metrics.recordSerialize(System.nanoTime() - rewritten);
+		}
+		return result;
+	}
+
+	/**
+	 * 快速改写简单单表查询，阶段耗时分别记为词法识别、生成表达式、拼接 SQL
+	 * @param simpleSelect 识别结果
+	 * @param context 改写上下文
+	 * @param start 开始识别的时间，未启用监控时为 0
+	 * @return 改写后的 SQL
+	 */
+	private String processSimpleSelect(SimpleSelect simpleSelect, DataScopeRewriteContext context, long start) {
+		DataScopeMetrics metrics = context.getMetrics();
+		boolean timed = metrics.isEnabled();
+		long parsed = timed ? System.nanoTime() : 0L;
+		Expression injectExpression = injectExpression(null, simpleSelect.getTable(), context);
+		long rewritten = timed ? System.nanoTime() : 0L;
+		String result = simpleSelect.inject(injectExpression);
+		if (timed) {
+			metrics.recordParse(parsed - start);
+			metrics.recordRewrite(rewritten - parsed);
+			metrics.recordSerialize(System.nanoTime() - rewritten);
+		}
+		return result;
+	}
+
 	/**
 	 * select 类型SQL处理
 	 * @param select jsqlparser Statement Select
 	 */
 	@Override
 	protected void processSelect(Select select, int index, String sql, Object obj) {
-		List<DataScope> dataScopes = (List<DataScope>) obj;
-		try {
-			// dataScopes 放入 ThreadLocal 方便透传
-			DataScopeHolder.push(dataScopes);
-			processSelectBody(select.getSelectBody());
-			List<WithItem> withItemsList = select.getWithItemsList();
-			if (CollectionUtil.isNotEmpty(withItemsList)) {
-				withItemsList.forEach(this::processSelectBody);
-			}
-		}
-		finally {
-			// 必须清空 ThreadLocal
-			DataScopeHolder.poll();
-		}
+		DataScopeRewriteContext context = DataScopeRewriteContext.of(obj);
+		processSelectBody(select, context, true);
+	}
+
+	/**
+	 * 处理查询，数据权限条件注入到每一层查询中直接引用表的 where 或 on 条件，不会在外层包装子查询
+	 * <p>
+	 * 任意层级的 with（包括 recursive）、order by 及各类表达式中的子查询都会被遍历；查询列表不按 ColumnScope 替换
+	 * @param selectBody 查询
+	 * @param context 改写上下文
+	 */
+	protected void processSelectBody(Select selectBody, DataScopeRewriteContext context) {
+		processSelectBody(selectBody, context, false);
 	}
 
-	protected void processSelectBody(Select selectBody) {
+	/**
+	 * 处理查询
+	 * @param selectBody 查询
+	 * @param context 改写上下文
+	 * @param resultColumns 查询列表是否会出现在语句的结果中：顶层查询及其 with、集合运算的各个分支、from/join 中的子查询，
+	 * 以及这些查询的查询列表中直接出现的子查询。只有这些查询按 {@link fun.yannji.data.scope.ColumnScope} 替换字段，
+	 * where、having、on、update set、insert ... select 等位置的子查询保持原字段，不影响过滤及写入的值
+	 */
+	protected void processSelectBody(Select selectBody, DataScopeRewriteContext context, boolean resultColumns) {
 		if (selectBody == null) {
 			return;
 		}
+		List<WithItem> withItemsList = selectBody.getWithItemsList();
+		if (CollectionUtil.isNotEmpty(withItemsList)) {
+			for (WithItem withItem : withItemsList) {
+				processSelectBody(withItem, context, resultColumns);
+			}
+		}
+		List<OrderByElement> orderByElements = selectBody.getOrderByElements();
+		if (CollectionUtil.isNotEmpty(orderByElements)) {
+			for (OrderByElement orderByElement : orderByElements) {
+				processWhereSubSelect(orderByElement.getExpression(), context);
+			}
+		}
+		processLimit(selectBody, context);
 		if (selectBody instanceof PlainSelect) {
-			processPlainSelect((PlainSelect) selectBody);
+			processPlainSelect((PlainSelect) selectBody, context, resultColumns);
 		}
 		else if (selectBody instanceof ParenthesedSelect) {
 			ParenthesedSelect parenthesedSelect = (ParenthesedSelect) selectBody;
-			processSelectBody(parenthesedSelect.getSelect());
+			processSelectBody(parenthesedSelect.getSelect(), context, resultColumns);
 		}
 		else if (selectBody instanceof SetOperationList) {
 			SetOperationList operationList = (SetOperationList) selectBody;
 			List<Select> selectBodys = operationList.getSelects();
 			if (CollectionUtil.isNotEmpty(selectBodys)) {
-				selectBodys.forEach(this::processSelectBody);
+				for (Select body : selectBodys) {
+					processSelectBody(body, context, resultColumns);
+				}
 			}
 		}
 	}
 
 	/**
-	 * insert 类型SQL处理
+	 * 处理 limit、offset、fetch 中的子查询，如 LIMIT (SELECT COUNT(*) FROM ...)
+	 * @param selectBody 查询
+	 * @param context 改写上下文
+	 */
+	private void processLimit(Select selectBody, DataScopeRewriteContext context) {
+		Limit limit = selectBody.getLimit();
+		if (limit != null) {
+			processWhereSubSelect(limit.getRowCount(), context);
+			processWhereSubSelect(limit.getOffset(), context);
+		}
+		Offset offset = selectBody.getOffset();
+		if (offset != null) {
+			processWhereSubSelect(offset.getOffset(), context);
+		}
+		Fetch fetch = selectBody.getFetch();
+		if (fetch != null) {
+			processWhereSubSelect(fetch.getExpression(), context);
+		}
+	}
+
+	/**
+	 * insert 类型SQL处理：insert ... select 的查询部分注入数据权限，insert ... values 只处理其中的子查询，
+	 * 并按 {@link DataScope#getInsertColumns} 自动填充字段
 	 * @param insert jsqlparser Statement Insert
 	 */
 	@Override
 	protected void processInsert(Insert insert, int index, String sql, Object obj) {
-		// insert 暂时不处理
+		DataScopeRewriteContext context = DataScopeRewriteContext.of(obj);
+		processWithItems(insert.getWithItemsList(), context);
+		Select select = insert.getSelect();
+		if (select instanceof Values) {
+			processWhereSubSelect(((Values) select).getExpressions(), context);
+		}
+		else if (select != null) {
+			processSelectBody(select, context);
+		}
+		fillInsertColumns(insert, context);
+	}
+
+	private void processWithItems(List<WithItem> withItemsList, DataScopeRewriteContext context) {
+		if (CollectionUtil.isNotEmpty(withItemsList)) {
+			for (WithItem withItem : withItemsList) {
+				processSelectBody(withItem, context);
+			}
+		}
+	}
+
+	/**
+	 * 自动填充 DataScope 声明的 insert 字段，已经包含的字段不填充。
+	 * 值以参数形式追加到 values 的每一行或 insert ... select 的查询列表中，没有字段列表的语句无法确定值的位置，不做处理
+	 * @param insert Insert
+	 * @param context 改写上下文
+	 */
+	private void fillInsertColumns(Insert insert, DataScopeRewriteContext context) {
+		ExpressionList<Column> columns = insert.getColumns();
+		if (CollectionUtil.isEmpty(columns) || insert.getSelect() == null) {
+			return;
+		}
+		String tableName = SqlParseUtil.getTableName(insert.getTable().getName());
+		for (DataScope dataScope : context.getTableIndex().match(tableName)) {
+			List<String> insertColumns = dataScope.getInsertColumns(tableName);
+			if (CollectionUtil.isEmpty(insertColumns)) {
+				continue;
+			}
+			List<Column> fillColumns = new ArrayList<>(insertColumns.size());
+			int[] valueIndexes = new int[insertColumns.size()];
+			for (int i = 0; i < insertColumns.size(); i++) {
+				String insertColumn = insertColumns.get(i);
+				if (!containsColumn(columns, insertColumn)) {
+					valueIndexes[fillColumns.size()] = i;
+					fillColumns.add(new Column(insertColumn));
+				}
+			}
+			if (fillColumns.isEmpty()) {
+				continue;
+			}
+			int sourceIndex = context.addInsertSource(dataScope, tableName,
+					Arrays.copyOf(valueIndexes, fillColumns.size()));
+			columns.addAll(fillColumns);
+			appendInsertValues(insert.getSelect(), fillColumns.size(), sourceIndex);
+		}
+	}
+
+	private static boolean containsColumn(ExpressionList<Column> columns, String columnName) {
+		for (Column column : columns) {
+			if (SqlParseUtil.getTableName(column.getColumnName()).equalsIgnoreCase(columnName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 在 values 的每一行或查询列表末尾追加填充值的占位符
+	 * @param select values 或 insert ... select 的查询
+	 * @param count 填充的字段数
+	 * @param sourceIndex 参数来源下标
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void appendInsertValues(Select select, int count, int sourceIndex) {
+		if (select instanceof Values) {
+			ExpressionList expressions = ((Values) select).getExpressions();
+			if (expressions instanceof ParenthesedExpressionList) {
+				// 单行 values (a, b)
+				addInsertValues(expressions, count, sourceIndex);
+				return;
+			}
+			// 多行 values (a, b), (c, d)，单字段时每行解析为 Parenthesis
+			for (int i = 0; i < expressions.size(); i++) {
+				Object row = expressions.get(i);
+				if (row instanceof ParenthesedExpressionList) {
+					addInsertValues((ExpressionList) row, count, sourceIndex);
+				}
+				else {
+					ExpressionList rowValues = new ParenthesedExpressionList<>(row instanceof Parenthesis
+							? ((Parenthesis) row).getExpression() : (Expression) row);
+					addInsertValues(rowValues, count, sourceIndex);
+					expressions.set(i, rowValues);
+				}
+			}
+		}
+		else if (select instanceof PlainSelect) {
+			PlainSelect plainSelect = (PlainSelect) select;
+			for (int i = 0; i < count; i++) {
+				plainSelect.addSelectItem(new ParameterizedExpression(sourceIndex, new JdbcParameter()));
+			}
+		}
+		else if (select instanceof ParenthesedSelect) {
+			appendInsertValues(((ParenthesedSelect) select).getSelect(), count, sourceIndex);
+		}
+		else if (select instanceof SetOperationList) {
+			for (Select body : ((SetOperationList) select).getSelects()) {
+				appendInsertValues(body, count, sourceIndex);
+			}
+		}
+	}
+
+	private static void addInsertValues(ExpressionList<Expression> values, int count, int sourceIndex) {
+		for (int i = 0; i < count; i++) {
+			values.add(new ParameterizedExpression(sourceIndex, new JdbcParameter()));
+		}
 	}
 
 	/**
 	 * update 类型SQL处理
+	 * <p>
+	 * 多表 update 中 join 的表（MySQL 的 UPDATE a JOIN b ON ... SET）及 from 中的表（PostgreSQL 的 UPDATE a SET ... FROM b）
+	 * 与查询相同，按 join 类型注入到 on 或 where 中
 	 * @param update jsqlparser Statement Update
 	 */
 	@Override
 	protected void processUpdate(Update update, int index, String sql, Object obj) {
-		List<DataScope> dataScopes = (List<DataScope>) obj;
-		try {
-			// dataScopes 放入 ThreadLocal 方便透传
-			DataScopeHolder.push(dataScopes);
-			update.setWhere(this.injectExpression(update.getWhere(), update.getTable()));
+		DataScopeRewriteContext context = DataScopeRewriteContext.of(obj);
+		processWithItems(update.getWithItemsList(), context);
+		List<UpdateSet> updateSets = update.getUpdateSets();
+		if (CollectionUtil.isNotEmpty(updateSets)) {
+			for (UpdateSet updateSet : updateSets) {
+				processWhereSubSelect(updateSet.getValues(), context);
+			}
 		}
-		finally {
-			// 必须清空 ThreadLocal
-			DataScopeHolder.poll();
+		List<Table> mainTables = new ArrayList<>();
+		mainTables.add(update.getTable());
+		if (CollectionUtil.isNotEmpty(update.getStartJoins())) {
+			mainTables = processJoins(mainTables, update.getStartJoins(), context, false);
+		}
+		if (update.getFromItem() != null) {
+			mainTables.addAll(processFromItem(update.getFromItem(), context, false));
+			if (CollectionUtil.isNotEmpty(update.getJoins())) {
+				mainTables = processJoins(mainTables, update.getJoins(), context, false);
+			}
 		}
+		processWhereSubSelect(update.getWhere(), context);
+		update.setWhere(this.injectExpression(update.getWhere(), mainTables, context));
 	}
 
 	/**
 	 * delete 类型SQL处理
+	 * <p>
+	 * 多表 delete 中 join 的表（MySQL 的 DELETE a FROM a JOIN b ON ...）与查询相同，按 join 类型注入到 on 或 where 中，
+	 * using 中的表（PostgreSQL 的 DELETE FROM a USING b）注入到 where 中
 	 * @param delete jsqlparser Statement Delete
 	 */
 	@Override
 	protected void processDelete(Delete delete, int index, String sql, Object obj) {
-		List<DataScope> dataScopes = (List<DataScope>) obj;
-		try {
-			// dataScopes 放入 ThreadLocal 方便透传
-			DataScopeHolder.push(dataScopes);
-			delete.setWhere(this.injectExpression(delete.getWhere(), delete.getTable()));
+		DataScopeRewriteContext context = DataScopeRewriteContext.of(obj);
+		processWithItems(delete.getWithItemsList(), context);
+		List<Table> mainTables = new ArrayList<>();
+		mainTables.add(delete.getTable());
+		if (CollectionUtil.isNotEmpty(delete.getUsingList())) {
+			mainTables.addAll(delete.getUsingList());
 		}
-		finally {
-			// 必须清空 ThreadLocal
-			DataScopeHolder.poll();
+		if (CollectionUtil.isNotEmpty(delete.getJoins())) {
+			mainTables = processJoins(mainTables, delete.getJoins(), context, false);
 		}
+		processWhereSubSelect(delete.getWhere(), context);
+		delete.setWhere(this.injectExpression(delete.getWhere(), mainTables, context));
 	}
 
 	/**
 	 * 处理 PlainSelect
+	 * @param resultColumns 查询列表是否会出现在语句的结果中，见 {@link #processSelectBody(Select, DataScopeRewriteContext, boolean)}
 	 */
-	protected void processPlainSelect(PlainSelect plainSelect) {
+	protected void processPlainSelect(PlainSelect plainSelect, DataScopeRewriteContext context,
+			boolean resultColumns) {
 		// #3087 github
 		List<SelectItem<?>> selectItems = plainSelect.getSelectItems();
 		if (CollectionUtil.isNotEmpty(selectItems)) {
-			selectItems.forEach(this::processSelectItem);
+			for (SelectItem<?> selectItem : selectItems) {
+				processSelectItem(selectItem, context, resultColumns);
+			}
+		}
+
+		// 字段级数据权限，替换出现在结果中的查询列表的字段
+		if (resultColumns && context.getTableIndex().hasColumnScopes()) {
+			ColumnScopeProcessor.process(plainSelect, context.getTableIndex());
 		}
 
 		// 处理 where 中的子查询
 		Expression where = plainSelect.getWhere();
-		processWhereSubSelect(where);
+		processWhereSubSelect(where, context);
+
+		// 处理 group by、having、qualify 中的子查询
+		GroupByElement groupBy = plainSelect.getGroupBy();
+		if (groupBy != null) {
+			processWhereSubSelect(groupBy.getGroupByExpressionList(), context);
+			List<ExpressionList> groupingSets = groupBy.getGroupingSets();
+			if (CollectionUtil.isNotEmpty(groupingSets)) {
+				for (ExpressionList<?> groupingSet : groupingSets) {
+					processWhereSubSelect(groupingSet, context);
+				}
+			}
+		}
+		processWhereSubSelect(plainSelect.getHaving(), context);
+		processWhereSubSelect(plainSelect.getQualify(), context);
 
 		// 处理 fromItem
 		FromItem fromItem = plainSelect.getFromItem();
-		List<Table> list = processFromItem(fromItem);
+		List<Table> list = processFromItem(fromItem, context, resultColumns);
 		List<Table> mainTables = new ArrayList<>(list);
 
 		// 处理 join
 		List<Join> joins = plainSelect.getJoins();
 		if (CollectionUtil.isNotEmpty(joins)) {
-			mainTables = processJoins(mainTables, joins);
+			mainTables = processJoins(mainTables, joins, context, resultColumns);
 		}
 
 		// 当有 mainTable 时，进行 where 条件追加
 		if (CollectionUtil.isNotEmpty(mainTables)) {
-			plainSelect.setWhere(injectExpression(where, mainTables));
+			plainSelect.setWhere(injectExpression(where, mainTables, context));
 		}
 	}
 
-	private List<Table> processFromItem(FromItem fromItem) {
+	private List<Table> processFromItem(FromItem fromItem, DataScopeRewriteContext context, boolean resultColumns) {
 		List<Table> mainTables = new ArrayList<>();
 		// 无 join 时的处理逻辑
 		if (fromItem instanceof Table) {
@@ -174,99 +535,65 @@ public class DataScopeSqlProcessor extends JsqlParserSupport {
 			mainTables.add(fromTable);
 		} else if (fromItem instanceof ParenthesedFromItem ) {
 			// SubJoin 类型则还需要添加上 where 条件
-			List<Table> tables = processSubJoin((ParenthesedFromItem) fromItem);
+			List<Table> tables = processSubJoin((ParenthesedFromItem) fromItem, context, resultColumns);
 			mainTables.addAll(tables);
 		} else {
 			// 处理下 fromItem
-			processOtherFromItem(fromItem);
+			processOtherFromItem(fromItem, context, resultColumns);
 		}
 		return mainTables;
 	}
 
 	/**
-	 * 处理where条件内的子查询
+	 * 处理 where、having、on 等表达式内的子查询
 	 * <p>
-	 * 支持如下: 1. in 2. = 3. > 4. < 5. >= 6. <= 7. <> 8. EXISTS 9. NOT EXISTS
-	 * <p>
-	 * 前提条件: 1. 子查询必须放在小括号中 2. 子查询一般放在比较操作符的右边
-	 * @param where where 条件
+	 * 通过 {@link SubSelectFinder} 结构化遍历表达式树，不会将表达式序列化为字符串；
+	 * 支持 in、比较运算、EXISTS、NOT EXISTS、ANY/ALL 以及函数、CASE 等位置中的子查询
+	 * @param where 表达式
+	 * @param context 改写上下文
 	 */
-	protected void processWhereSubSelect(Expression where) {
+	protected void processWhereSubSelect(Expression where, DataScopeRewriteContext context) {
 		if (where == null) {
 			return;
 		}
 		if (where instanceof FromItem) {
-			processOtherFromItem((FromItem) where);
+			processOtherFromItem((FromItem) where, context);
 			return;
 		}
-		if (where.toString().indexOf("SELECT") > 0) {
-			// 有子查询
-			if (where instanceof BinaryExpression) {
-				// 比较符号 , and , or , 等等
-				BinaryExpression expression = (BinaryExpression) where;
-				processWhereSubSelect(expression.getLeftExpression());
-				processWhereSubSelect(expression.getRightExpression());
-			} else if (where instanceof InExpression) {
-				// in
-				InExpression expression = (InExpression) where;
-				Expression inExpression = expression.getRightExpression();
-				if (inExpression instanceof Select) {
-					processSelectBody(((Select) inExpression));
-				}
-			} else if (where instanceof ExistsExpression) {
-				// exists
-				ExistsExpression expression = (ExistsExpression) where;
-				processWhereSubSelect(expression.getRightExpression());
-			} else if (where instanceof NotExpression) {
-				// not exists
-				NotExpression expression = (NotExpression) where;
-				processWhereSubSelect(expression.getExpression());
-			} else if (where instanceof Parenthesis) {
-				Parenthesis expression = (Parenthesis) where;
-				processWhereSubSelect(expression.getExpression());
-			}
-		}
+		where.accept(new SubSelectFinder(context));
 	}
 
-	protected void processSelectItem(SelectItem selectItem) {
+	/**
+	 * 处理查询列表中的子查询，包括函数参数、CASE、EXISTS 及窗口函数 partition by、order by 中的子查询
+	 * @param selectItem 查询项
+	 * @param context 改写上下文
+	 * @param resultColumns 所在查询的查询列表是否会出现在语句的结果中，直接作为查询项的子查询与之相同
+	 */
+	protected void processSelectItem(SelectItem<?> selectItem, DataScopeRewriteContext context,
+			boolean resultColumns) {
 		Expression expression = selectItem.getExpression();
 		if (expression instanceof Select) {
-			processSelectBody(((Select) expression));
-		} else if (expression instanceof Function) {
-			processFunction((Function) expression);
+			processSelectBody((Select) expression, context, resultColumns);
+		} else {
+			processWhereSubSelect(expression, context);
 		}
 	}
 
 	/**
-	 * 处理函数
-	 * <p>
-	 * 支持: 1. select fun(args..) 2. select fun1(fun2(args..),args..)
-	 * <p>
-	 * <p>
-	 * fixed gitee pulls/141
-	 * </p>
-	 * @param function 待处理函数
+	 * 处理子查询等
 	 */
-	protected void processFunction(Function function) {
-		ExpressionList<?> parameters = function.getParameters();
-		if (parameters != null) {
-			parameters.forEach(expression -> {
-				if (expression instanceof Select) {
-					processSelectBody(((Select) expression));
-				} else if (expression instanceof Function) {
-					processFunction((Function) expression);
-				}
-			});
-		}
+	protected void processOtherFromItem(FromItem fromItem, DataScopeRewriteContext context) {
+		processOtherFromItem(fromItem, context, false);
 	}
 
 	/**
 	 * 处理子查询等
+	 * @param resultColumns 子查询的查询列表是否会出现在语句的结果中
 	 */
-	protected void processOtherFromItem(FromItem fromItem) {
+	protected void processOtherFromItem(FromItem fromItem, DataScopeRewriteContext context, boolean resultColumns) {
 		if (fromItem instanceof ParenthesedSelect) {
 			Select subSelect = (Select) fromItem;
-			processSelectBody(subSelect);
+			processSelectBody(subSelect, context, resultColumns);
 		} else if (fromItem instanceof ParenthesedFromItem) {
 			log.debug("Perform a subQuery, if you do not give us feedback");
 		}
@@ -277,15 +604,16 @@ public class DataScopeSqlProcessor extends JsqlParserSupport {
 	 * @param subJoin subJoin
 	 * @return Table subJoin 中的主表
 	 */
-	private List<Table> processSubJoin(ParenthesedFromItem subJoin) {
+	private List<Table> processSubJoin(ParenthesedFromItem subJoin, DataScopeRewriteContext context,
+			boolean resultColumns) {
 		List<Table> mainTables = new ArrayList<>();
 		while (subJoin.getJoins() == null && subJoin.getFromItem() instanceof ParenthesedFromItem) {
 			subJoin = (ParenthesedFromItem) subJoin.getFromItem();
 		}
 		if (subJoin.getJoins() != null) {
-			List<Table> list = processFromItem(subJoin.getFromItem());
+			List<Table> list = processFromItem(subJoin.getFromItem(), context, resultColumns);
 			mainTables.addAll(list);
-			processJoins(mainTables, subJoin.getJoins());
+			processJoins(mainTables, subJoin.getJoins(), context, resultColumns);
 		}
 		return mainTables;
 	}
@@ -294,11 +622,14 @@ public class DataScopeSqlProcessor extends JsqlParserSupport {
 	 * 处理 joins
 	 * @param mainTables 可以为 null
 	 * @param joins join 集合
+	 * @param context 改写上下文
+	 * @param resultColumns join 中子查询的查询列表是否会出现在语句的结果中
 	 * @return List
 	 * <Table>
 	 * 右连接查询的 Table 列表
 	 */
-	private List<Table> processJoins(List<Table> mainTables, List<Join> joins) {
+	private List<Table> processJoins(List<Table> mainTables, List<Join> joins, DataScopeRewriteContext context,
+			boolean resultColumns) {
 		if (mainTables == null) {
 			mainTables = new ArrayList<>();
 		}
@@ -315,7 +646,10 @@ public class DataScopeSqlProcessor extends JsqlParserSupport {
 		// 对于 on 表达式写在最后的 join，需要记录下前面多个 on 的表名
 		Deque<List<Table>> onTableDeque = new LinkedList<>();
 		for (Join join : joins) {
-			// 处理 on 表达式
+			// 注入前先处理 on 表达式中的子查询
+			for (Expression onExpression : join.getOnExpressions()) {
+				processWhereSubSelect(onExpression, context);
+			}
 			FromItem joinItem = join.getRightItem();
 
 			// 获取当前 join 的表，subJoint 可以看作是一张表
@@ -324,7 +658,7 @@ public class DataScopeSqlProcessor extends JsqlParserSupport {
 				joinTables = new ArrayList<>();
 				joinTables.add((Table) joinItem);
 			} else if (joinItem instanceof ParenthesedFromItem ) {
-				joinTables = processSubJoin((ParenthesedFromItem ) joinItem);
+				joinTables = processSubJoin((ParenthesedFromItem ) joinItem, context, resultColumns);
 			}
 
 			if (joinTables != null) {
@@ -367,7 +701,7 @@ public class DataScopeSqlProcessor extends JsqlParserSupport {
 				// 正常 join on 表达式只有一个，立刻处理
 				if (originOnExpressions.size() == 1 && onTables != null) {
 					List<Expression> onExpressions = new LinkedList<>();
-					onExpressions.add(injectExpression(originOnExpressions.iterator().next(), onTables));
+					onExpressions.add(injectExpression(originOnExpressions.iterator().next(), onTables, context));
 					join.setOnExpressions(onExpressions);
 					leftTable = mainTable == null ? joinTable : mainTable;
 					continue;
@@ -383,14 +717,14 @@ public class DataScopeSqlProcessor extends JsqlParserSupport {
 							onExpressions.add(originOnExpression);
 						}
 						else {
-							onExpressions.add(injectExpression(originOnExpression, currentTableList));
+							onExpressions.add(injectExpression(originOnExpression, currentTableList, context));
 						}
 					}
 					join.setOnExpressions(onExpressions);
 				}
 				leftTable = joinTable;
 			} else {
-				processOtherFromItem(joinItem);
+				processOtherFromItem(joinItem, context, resultColumns);
 				leftTable = null;
 			}
 		}
@@ -402,49 +736,73 @@ public class DataScopeSqlProcessor extends JsqlParserSupport {
 	 * 根据 DataScope ，将数据过滤的表达式注入原本的 where/or 条件
 	 * @param currentExpression Expression where/or
 	 * @param table 表信息
+	 * @param context 改写上下文
 	 * @return 修改后的 where/or 条件
 	 */
-	private Expression injectExpression(Expression currentExpression, Table table) {
-		return injectExpression(currentExpression, Collections.singletonList(table));
+	private Expression injectExpression(Expression currentExpression, Table table, DataScopeRewriteContext context) {
+		return injectExpression(currentExpression, Collections.singletonList(table), context);
 	}
 
 	/**
 	 * 根据 DataScope ，将数据过滤的表达式注入原本的 where/or 条件
 	 * @param currentExpression Expression where/or
 	 * @param tables 表信息
+	 * @param context 改写上下文
 	 * @return 修改后的 where/or 条件
 	 */
-	private Expression injectExpression(Expression currentExpression, List<Table> tables) {
+	private Expression injectExpression(Expression currentExpression, List<Table> tables,
+			DataScopeRewriteContext context) {
 		// 没有表需要处理直接返回
 		if (CollectionUtil.isEmpty(tables)) {
 			return currentExpression;
 		}
 
+		// 编译改写计划时只记录注入位置，表达式在执行时才生成
+		Expression injectExpression = context.isPlanning() ? context.addPlanSlot(tables)
+				: buildInjectExpression(context, tables);
+
+		if (injectExpression == null) {
+			return currentExpression;
+		}
+		if (currentExpression == null) {
+			return injectExpression;
+		}
+		if (currentExpression instanceof OrExpression) {
+			return new AndExpression(new Parenthesis(currentExpression), injectExpression);
+		}
+		else {
+			return new AndExpression(currentExpression, injectExpression);
+		}
+	}
+
+	/**
+	 * 构建需要注入的数据过滤表达式
+	 * @param context 改写上下文
+	 * @param tables 表信息
+	 * @return 注入的表达式，没有匹配的 DataScope 时返回 null
+	 */
+	private Expression buildInjectExpression(DataScopeRewriteContext context, List<Table> tables) {
 		List<Expression> dataFilterExpressions = new ArrayList<>(tables.size());
 		for (Table table : tables) {
 			// 获取表名
 			String tableName = SqlParseUtil.getTableName(table.getName());
 
-			// 进行 dataScope 的表名匹配
-			List<DataScope> matchDataScopes = DataScopeHolder.peek()
-				.stream()
-				.filter(x -> x.includes(tableName))
-				.collect(Collectors.toList());
+			// 通过表名索引匹配 dataScope
+			List<DataScope> matchDataScopes = context.getTableIndex().match(tableName);
 
 			if (CollectionUtils.isEmpty(matchDataScopes)) {
 				continue;
 			}
 
 			// 获取到数据权限过滤的表达式
-			matchDataScopes.stream()
-				.map(x -> x.getExpression(tableName, table.getAlias()))
-				.filter(Objects::nonNull)
-				.reduce(AndExpression::new)
-				.ifPresent(dataFilterExpressions::add);
+			Expression expression = context.getExpression(matchDataScopes, tableName, table.getAlias());
+			if (expression != null) {
+				dataFilterExpressions.add(expression);
+			}
 		}
 
 		if (dataFilterExpressions.isEmpty()) {
-			return currentExpression;
+			return null;
 		}
 
 		// 注入的表达式
@@ -455,73 +813,52 @@ public class DataScopeSqlProcessor extends JsqlParserSupport {
 				injectExpression = new AndExpression(injectExpression, dataFilterExpressions.get(i));
 			}
 		}
-
-		if (currentExpression == null) {
-			return injectExpression;
-		}
-		if (injectExpression == null) {
-			return currentExpression;
-		}
-		if (currentExpression instanceof OrExpression) {
-			return new AndExpression(new Parenthesis(currentExpression), injectExpression);
-		}
-		else {
-			return new AndExpression(currentExpression, injectExpression);
-		}
+		return injectExpression;
 	}
 
 	/**
-	 * DataScope 持有者。 方便解析 SQL 时的参数透传
-	 *
-	 * @author hccake
+	 * 子查询查找器，遍历表达式树并对其中的子查询进行数据权限处理。
+	 * 不含子查询的表达式（包括大量常量组成的 IN 列表）只会被遍历一次，不产生额外对象
 	 */
-	private static final class DataScopeHolder {
-
-		private DataScopeHolder() {
-		}
+	private final class SubSelectFinder extends ExpressionVisitorAdapter {
 
-		/**
-		 * 使用栈存储 List<DataScope>，便于在方法嵌套调用时使用不同的数据权限控制。
-		 */
-		private static final ThreadLocal<Deque<List<DataScope>>> DATA_SCOPES = ThreadLocal.withInitial(ArrayDeque::new);
+		private final DataScopeRewriteContext context;
 
-		/**
-		 * 获取当前的 dataScopes
-		 * @return List<DataScope>
-		 */
-		public static List<DataScope> peek() {
-			Deque<List<DataScope>> deque = DATA_SCOPES.get();
-			return deque == null ? new ArrayList<>() : deque.peek();
+		private SubSelectFinder(DataScopeRewriteContext context) {
+			this.context = context;
 		}
 
-		/**
-		 * 入栈一组 dataScopes
-		 */
-		public static void push(List<DataScope> dataScopes) {
-			Deque<List<DataScope>> deque = DATA_SCOPES.get();
-			if (deque == null) {
-				deque = new ArrayDeque<>();
-			}
-			deque.push(dataScopes);
+		@Override
+		public void visit(Select select) {
+			processSelectBody(select, this.context);
 		}
 
-		/**
-		 * 弹出最顶部 dataScopes
-		 */
-		public static void poll() {
-			Deque<List<DataScope>> deque = DATA_SCOPES.get();
-			deque.poll();
-			// 当没有元素时，清空 ThreadLocal
-			if (deque.isEmpty()) {
-				clear();
-			}
+		@Override
+		public void visit(AnyComparisonExpression expr) {
+			processSelectBody(expr.getSelect(), this.context);
 		}
 
 		/**
-		 * 清除 TreadLocal
+		 * ExpressionVisitorAdapter 不会遍历窗口函数的 partition by 及 filter (where ...)；
+		 * 只有存在函数内的 order by（如 WITHIN GROUP (ORDER BY ...)）时才遍历 over 中的 order by，且不遍历函数内的 order by
 		 */
-		private static void clear() {
-			DATA_SCOPES.remove();
+		@Override
+		public void visit(AnalyticExpression expr) {
+			super.visit(expr);
+			ExpressionList<?> partitionExpressionList = expr.getPartitionExpressionList();
+			if (partitionExpressionList != null) {
+				partitionExpressionList.accept(this);
+			}
+			List<OrderByElement> orderByElements = expr.getFuncOrderBy() == null ? expr.getOrderByElements()
+					: expr.getFuncOrderBy();
+			if (CollectionUtil.isNotEmpty(orderByElements)) {
+				for (OrderByElement orderByElement : orderByElements) {
+					orderByElement.getExpression().accept(this);
+				}
+			}
+			if (expr.getFilterExpression() != null) {
+				expr.getFilterExpression().accept(this);
+			}
 		}
 
 	}
@@ -0,0 +1,62 @@
+package fun.yannji.data.scope.processor;
+
+import com.baomidou.mybatisplus.annotation.DbType;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.operators.relational.InExpression;
+
+import java.util.List;
+
+/**
+ * DataScope 表达式中大 IN 列表的改写策略。
+ * <p>
+ * DataScope 生成的 in (...) 常量列表超过阈值时，改写为与值数量无关的形式（如 PostgreSQL 的 = ANY(?) 数组参数），
+ * SQL 长度、解析开销以及数据库的执行计划都不再随可见数据量增长。参数化 DataScope 的表达式已使用占位符，不做改写
+ *
+ * @author yannji
+ */
+public interface DataScopeValueSetStrategy {
+
+	/**
+	 * 默认阈值
+	 */
+	int DEFAULT_THRESHOLD = 1000;
+
+	/**
+	 * IN 列表中的值数量超过该阈值时才会改写
+	 * @return 阈值
+	 */
+	int getThreshold();
+
+	/**
+	 * 改写 IN 表达式
+	 * @param inExpression 原 IN 表达式，右侧均为常量
+	 * @param values 常量值，均为 Long 或均为 String
+	 * @param parameterValues 改写后表达式中 ? 占位符对应的参数值，按占位符出现的顺序添加
+	 * @return 改写后的表达式，返回 null 时保留原表达式
+	 */
+	Expression rewrite(InExpression inExpression, List<Object> values, List<Object> parameterValues);
+
+	/**
+	 * 根据数据库类型选择策略
+	 * @param dbType 数据库类型
+	 * @return 策略，数据库不支持时返回 null，保留原 IN 列表
+	 */
+	static DataScopeValueSetStrategy of(DbType dbType) {
+		return of(dbType, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * 根据数据库类型选择策略
+	 * @param dbType 数据库类型
+	 * @param threshold 阈值
+	 * @return 策略，数据库不支持时返回 null，保留原 IN 列表；MySQL、Oracle 等没有通用数组参数的数据库可以通过
+	 * {@code DataPermissionInterceptor#setValueSetStrategy} 设置自定义策略
+	 */
+	static DataScopeValueSetStrategy of(DbType dbType, int threshold) {
+		if (dbType == DbType.POSTGRE_SQL || dbType == DbType.H2) {
+			return new ArrayValueSetStrategy(threshold);
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,126 @@
+package fun.yannji.data.scope.processor;
+
+import com.baomidou.mybatisplus.core.toolkit.ExceptionUtils;
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.ParameterizedDataScope;
+import lombok.Getter;
+import net.sf.jsqlparser.expression.Alias;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 一处参数化表达式注入的参数来源，记录了取值所需的表信息，以及每个参数值在最终 SQL 占位符中的位置。
+ * 大 IN 列表改写产生的参数值是固定的，直接记录在参数来源中；insert 自动填充的参数值每行一组，每次执行从 DataScope 获取
+ *
+ * @author yannji
+ */
+@Getter
+public class ParameterSource {
+
+	private final DataScope dataScope;
+
+	private final String tableName;
+
+	private final Alias tableAlias;
+
+	/**
+	 * 第 i 个参数值在整条 SQL 所有 ? 占位符中的下标
+	 */
+	private int[] positions = new int[0];
+
+	/**
+	 * 固定的参数值，为 null 时每次执行从 ParameterizedDataScope 获取
+	 */
+	private final List<Object> fixedValues;
+
+	/**
+	 * insert 自动填充的字段在 {@link DataScope#getInsertValues} 中的下标，不是自动填充时为 null
+	 */
+	private final int[] insertValueIndexes;
+
+	ParameterSource(ParameterizedDataScope dataScope, String tableName, Alias tableAlias) {
+		this(dataScope, tableName, tableAlias, null);
+	}
+
+	ParameterSource(DataScope dataScope, String tableName, Alias tableAlias, List<Object> fixedValues) {
+		this(dataScope, tableName, tableAlias, fixedValues, null);
+	}
+
+	ParameterSource(DataScope dataScope, String tableName, int[] insertValueIndexes) {
+		this(dataScope, tableName, null, null, insertValueIndexes);
+	}
+
+	private ParameterSource(DataScope dataScope, String tableName, Alias tableAlias, List<Object> fixedValues,
+			int[] insertValueIndexes) {
+		this.dataScope = dataScope;
+		this.tableName = tableName;
+		this.tableAlias = tableAlias;
+		this.fixedValues = fixedValues;
+		this.insertValueIndexes = insertValueIndexes;
+	}
+
+	/**
+	 * 复制一个尚未记录占位符位置的参数来源，用于改写计划每次执行
+	 * @return ParameterSource
+	 */
+	ParameterSource copy() {
+		return new ParameterSource(this.dataScope, this.tableName, this.tableAlias, this.fixedValues,
+				this.insertValueIndexes);
+	}
+
+	void addPosition(int position) {
+		int[] newPositions = new int[this.positions.length + 1];
+		System.arraycopy(this.positions, 0, newPositions, 0, this.positions.length);
+		newPositions[this.positions.length] = position;
+		this.positions = newPositions;
+	}
+
+	/**
+	 * 获取本次执行的参数值
+	 * @return 参数值
+	 */
+	public List<Object> getParameterValues() {
+		if (this.fixedValues != null) {
+			return this.fixedValues;
+		}
+		if (this.insertValueIndexes != null) {
+			return getInsertValues();
+		}
+		return ((ParameterizedDataScope) this.dataScope).getParameterValues(this.tableName, this.tableAlias);
+	}
+
+	/**
+	 * 获取本次执行的参数值。参数来源会随改写结果一起缓存，作用域的表达式缓存只能在执行时传入
+	 * @param memo 当前作用域的表达式缓存，可以为 null
+	 * @return 参数值
+	 */
+	public List<Object> getParameterValues(DataScopeExpressionMemo memo) {
+		if (memo == null || this.fixedValues != null || this.insertValueIndexes != null) {
+			return getParameterValues();
+		}
+		return memo.getParameterValues((ParameterizedDataScope) this.dataScope, this.tableName, this.tableAlias);
+	}
+
+	/**
+	 * 获取 insert 自动填充的参数值，多行插入时每行使用同一组值
+	 * @return 参数值
+	 */
+	private List<Object> getInsertValues() {
+		List<Object> values = this.dataScope.getInsertValues(this.tableName);
+		int count = this.insertValueIndexes.length;
+		for (int index : this.insertValueIndexes) {
+			if (values == null || index >= values.size()) {
+				throw ExceptionUtils.mpe("DataScope [%s] expects %s insert values for table %s, but got %s",
+						this.dataScope.getDataScopeKey(), this.insertValueIndexes[count - 1] + 1, this.tableName,
+						values == null ? 0 : values.size());
+			}
+		}
+		List<Object> result = new ArrayList<>(this.positions.length);
+		for (int i = 0; i < this.positions.length; i++) {
+			result.add(values.get(this.insertValueIndexes[i % count]));
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,38 @@
+package fun.yannji.data.scope.processor;
+
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.ExpressionVisitor;
+import net.sf.jsqlparser.parser.ASTNodeAccessImpl;
+
+/**
+ * 参数化 DataScope 表达式的包装，输出 SQL 时在表达式前后加上标记注释，
+ * 以便在最终 SQL 中定位表达式内 ? 占位符的位置，参见 {@link DataScopeSql#of}
+ *
+ * @author yannji
+ */
+class ParameterizedExpression extends ASTNodeAccessImpl implements Expression {
+
+	static final String MARKER_START = "/*ds:";
+
+	static final String MARKER_END = "/*ds*/";
+
+	private final int sourceIndex;
+
+	private final Expression expression;
+
+	ParameterizedExpression(int sourceIndex, Expression expression) {
+		this.sourceIndex = sourceIndex;
+		this.expression = expression;
+	}
+
+	@Override
+	public void accept(ExpressionVisitor expressionVisitor) {
+		this.expression.accept(expressionVisitor);
+	}
+
+	@Override
+	public String toString() {
+		return MARKER_START + this.sourceIndex + "*/" + this.expression + MARKER_END;
+	}
+
+}
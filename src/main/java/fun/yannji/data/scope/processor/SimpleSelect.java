@@ -0,0 +1,328 @@
+package fun.yannji.data.scope.processor;
+
+import fun.yannji.data.scope.util.SqlLiteralSyntax;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.schema.Table;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 简单单表查询的词法识别结果，用于跳过 AST 解析的快速改写
+ * <p>
+ * 只识别 {@code SELECT ... FROM t [[AS] alias] [WHERE ...] [GROUP BY/HAVING/ORDER BY/LIMIT/OFFSET/FETCH/FOR UPDATE ...]}：
+ * 没有子查询、join、集合运算、注释及多条语句，表名不带 schema 且不使用双引号。
+ * 只识别 '…'、"…"、`…` 三种引号：字符串常量中含有反斜杠时，各数据库对常量结束位置的判断不同；
+ * SQL Server 的 [name]、PostgreSQL 的 $$…$$ 及 E'…'、N'…'、U&'…'、Oracle 的 q'[…]' 等带前缀的常量无法按上述规则跳过，
+ * 这些情况都不做快速改写。
+ * 识别成功后直接在原 SQL 的 where 条件末尾（或 FROM 子句之后）拼接过滤条件，原条件含顶层 OR 时加括号，
+ * 与 {@link DataScopeSqlProcessor} 的注入规则一致；任何不确定的结构都返回 null，交由 AST 解析处理。
+ *
+ * @author yannji
+ */
+final class SimpleSelect {
+
+	/**
+	 * where 条件之后、或没有 where 时 FROM 子句之后的子句关键字
+	 */
+	private static final Set<String> BOUNDARY_KEYWORDS = new HashSet<>(Arrays.asList("WHERE", "GROUP", "HAVING",
+			"ORDER", "LIMIT", "OFFSET", "FETCH", "FOR", "LOCK", "WINDOW", "QUALIFY"));
+
+	/**
+	 * 出现在顶层时不做快速改写的关键字
+	 */
+	private static final Set<String> UNSUPPORTED_KEYWORDS = new HashSet<>(Arrays.asList("UNION", "INTERSECT",
+			"EXCEPT", "MINUS", "JOIN", "STRAIGHT_JOIN", "APPLY", "LATERAL", "ON", "USING", "INTO", "WITH", "ONLY",
+			"TABLESAMPLE", "PARTITION", "PIVOT", "UNPIVOT", "MATCH_RECOGNIZE", "CONNECT", "START", "MODEL",
+			"RETURNING", "OPTION", "PREWHERE", "SETTINGS", "FORMAT"));
+
+	/**
+	 * 不能作为表名或别名的关键字，包括 ClickHouse 的 FINAL/SAMPLE/ARRAY JOIN、Oracle 的 AS OF/VERSIONS 等表修饰
+	 */
+	private static final Set<String> RESERVED_KEYWORDS = new HashSet<>(Arrays.asList("SELECT", "FROM", "AS",
+			"VALUES", "LEFT", "RIGHT", "INNER", "OUTER", "CROSS", "FULL", "NATURAL", "USE", "FORCE", "IGNORE",
+			"FINAL", "SAMPLE", "ARRAY", "GLOBAL", "ANY", "ALL", "ASOF", "SEMI", "ANTI", "PASTE", "OF", "VERSIONS",
+			"NOLOCK", "INDEXED", "NOT"));
+
+	static {
+		RESERVED_KEYWORDS.addAll(BOUNDARY_KEYWORDS);
+		RESERVED_KEYWORDS.addAll(UNSUPPORTED_KEYWORDS);
+	}
+
+	private static final int EXPECT_SELECT = 0;
+
+	private static final int SELECT_ITEMS = 1;
+
+	private static final int EXPECT_TABLE = 2;
+
+	private static final int AFTER_TABLE = 3;
+
+	private static final int EXPECT_ALIAS = 4;
+
+	private static final int AFTER_ALIAS = 5;
+
+	private static final int CONDITION = 6;
+
+	private static final int REST = 7;
+
+	private final String sql;
+
+	private final Table table;
+
+	/**
+	 * where 条件的起止下标（不含末尾空白），没有 where 时为 -1
+	 */
+	private final int conditionStart;
+
+	private final int conditionEnd;
+
+	/**
+	 * 原 where 条件含顶层 OR，拼接前需要加括号
+	 */
+	private final boolean wrapCondition;
+
+	/**
+	 * 没有 where 时过滤条件的插入位置，即 FROM 子句末尾
+	 */
+	private final int insertPosition;
+
+	private SimpleSelect(String sql, Table table, int conditionStart, int conditionEnd, boolean wrapCondition,
+			int insertPosition) {
+		this.sql = sql;
+		this.table = table;
+		this.conditionStart = conditionStart;
+		this.conditionEnd = conditionEnd;
+		this.wrapCondition = wrapCondition;
+		this.insertPosition = insertPosition;
+	}
+
+	/**
+	 * 识别简单单表查询
+	 * @param sql 原始 SQL
+	 * @return 识别结果，不是可以快速改写的语句时返回 null
+	 */
+	static SimpleSelect parse(String sql) {
+		int length = sql.length();
+		int state = EXPECT_SELECT;
+		int depth = 0;
+		String tableName = null;
+		String alias = null;
+		boolean useAs = false;
+		int fromEnd = -1;
+		int conditionStart = -1;
+		int conditionEnd = -1;
+		boolean wrapCondition = false;
+		int i = 0;
+		while (i < length) {
+			char c = sql.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+				continue;
+			}
+			if (Character.isLetter(c) || c == '_') {
+				int end = i + 1;
+				while (end < length && isIdentifierPart(sql.charAt(end))) {
+					end++;
+				}
+				if (isLiteralPrefix(sql, end)) {
+					// E'…'、N'…'、U&'…'、q'[…]' 等带前缀的常量
+					return null;
+				}
+				// t.order 这类限定名中的单词不是关键字
+				boolean qualified = i > 0 && sql.charAt(i - 1) == '.';
+				String word = qualified ? null : sql.substring(i, end).toUpperCase(Locale.ROOT);
+				if (word == null) {
+					if (state >= EXPECT_TABLE && state <= AFTER_ALIAS) {
+						return null;
+					}
+				}
+				else if (state == EXPECT_SELECT) {
+					if (!"SELECT".equals(word)) {
+						return null;
+					}
+					state = SELECT_ITEMS;
+				}
+				else if ("SELECT".equals(word) || "VALUES".equals(word)) {
+					// 子查询
+					return null;
+				}
+				else if (state == EXPECT_TABLE) {
+					if (RESERVED_KEYWORDS.contains(word)) {
+						return null;
+					}
+					tableName = sql.substring(i, end);
+					fromEnd = end;
+					state = AFTER_TABLE;
+				}
+				else if ((state == AFTER_TABLE || state == AFTER_ALIAS) && BOUNDARY_KEYWORDS.contains(word)) {
+					if ("WHERE".equals(word)) {
+						conditionStart = end;
+						state = CONDITION;
+					}
+					else {
+						state = REST;
+					}
+				}
+				else if (state == AFTER_TABLE && "AS".equals(word)) {
+					useAs = true;
+					state = EXPECT_ALIAS;
+				}
+				else if (state == AFTER_TABLE || state == EXPECT_ALIAS) {
+					if (RESERVED_KEYWORDS.contains(word)) {
+						return null;
+					}
+					alias = sql.substring(i, end);
+					fromEnd = end;
+					state = AFTER_ALIAS;
+				}
+				else if (state == AFTER_ALIAS) {
+					return null;
+				}
+				else if (depth == 0) {
+					if (UNSUPPORTED_KEYWORDS.contains(word)) {
+						return null;
+					}
+					if (state == SELECT_ITEMS && "FROM".equals(word)) {
+						state = EXPECT_TABLE;
+					}
+					else if (state == CONDITION && ("OR".equals(word) || "XOR".equals(word))) {
+						wrapCondition = true;
+					}
+					else if (state == CONDITION && BOUNDARY_KEYWORDS.contains(word)) {
+						if ("WHERE".equals(word)) {
+							return null;
+						}
+						conditionEnd = i;
+						state = REST;
+					}
+				}
+				i = end;
+				continue;
+			}
+			if (c == '\'' || c == '"' || c == '`') {
+				int end = SqlLiteralSyntax.STANDARD.skipQuoted(sql, i);
+				if (sql.lastIndexOf('\\', end - 1) >= i) {
+					// MySQL 中 'C:\' 未结束，标准 SQL 中已经结束，无法确定条件的边界
+					return null;
+				}
+				if (state == EXPECT_TABLE && c == '`' && end <= length && sql.charAt(end - 1) == '`' && end - i > 2) {
+					tableName = sql.substring(i, end);
+					fromEnd = end;
+					state = AFTER_TABLE;
+				}
+				else if (state >= EXPECT_TABLE && state <= AFTER_ALIAS) {
+					return null;
+				}
+				i = end;
+				continue;
+			}
+			char next = i + 1 < length ? sql.charAt(i + 1) : 0;
+			if (c == ';' || c == '{' || c == '#' || (c == '-' && next == '-') || (c == '/' && next == '*')) {
+				// 多条语句、JDBC 转义语法及注释
+				return null;
+			}
+			if (c == '[' || c == '$') {
+				// SQL Server 的 [name]、PostgreSQL 的 $$…$$、$tag$…$tag$ 及 $1 等
+				return null;
+			}
+			if (state == EXPECT_SELECT || (state >= EXPECT_TABLE && state <= AFTER_ALIAS)) {
+				// FROM 子句中出现逗号、括号、点号等，可能是多表、子查询或带 schema 的表名
+				return null;
+			}
+			if (c == '(') {
+				depth++;
+			}
+			else if (c == ')' && --depth < 0) {
+				return null;
+			}
+			else if (c == '|' && next == '|' && depth == 0 && state == CONDITION) {
+				// mysql 中 || 默认是 OR
+				wrapCondition = true;
+			}
+			i++;
+		}
+		if (depth != 0 || state == EXPECT_SELECT || state == SELECT_ITEMS || state == EXPECT_TABLE
+				|| state == EXPECT_ALIAS) {
+			return null;
+		}
+		if (state == CONDITION) {
+			conditionEnd = length;
+		}
+		if (conditionStart >= 0) {
+			while (conditionEnd > conditionStart && Character.isWhitespace(sql.charAt(conditionEnd - 1))) {
+				conditionEnd--;
+			}
+			if (conditionEnd == conditionStart) {
+				return null;
+			}
+		}
+		Table table = new Table(tableName);
+		if (alias != null) {
+			table.setAlias(new Alias(alias, useAs));
+		}
+		return new SimpleSelect(sql, table, conditionStart, conditionEnd, wrapCondition,
+				conditionStart >= 0 ? -1 : fromEnd);
+	}
+
+	private static boolean isIdentifierPart(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+	}
+
+	/**
+	 * 单词之后紧跟引号，或紧跟 &amp; 和引号时，单词是常量或标识符的前缀
+	 * @param sql sql
+	 * @param end 单词结束的下标
+	 * @return 是否为前缀
+	 */
+	private static boolean isLiteralPrefix(String sql, int end) {
+		if (end < sql.length() && sql.charAt(end) == '&') {
+			end++;
+		}
+		return end < sql.length() && (sql.charAt(end) == '\'' || sql.charAt(end) == '"');
+	}
+
+	/**
+	 * FROM 子句中的表
+	 * @return Table
+	 */
+	Table getTable() {
+		return this.table;
+	}
+
+	/**
+	 * 将过滤条件拼接到原 SQL 中
+	 * @param expression 需要注入的过滤条件，为 null 时返回原 SQL
+	 * @return 改写后的 SQL
+	 */
+	String inject(Expression expression) {
+		if (expression == null) {
+			return this.sql;
+		}
+		String condition = expression.toString();
+		StringBuilder builder = new StringBuilder(this.sql.length() + condition.length() + 16);
+		if (this.conditionStart < 0) {
+			builder.append(this.sql, 0, this.insertPosition)
+				.append(" WHERE ")
+				.append(condition)
+				.append(this.sql, this.insertPosition, this.sql.length());
+			return builder.toString();
+		}
+		int start = this.conditionStart;
+		while (Character.isWhitespace(this.sql.charAt(start))) {
+			start++;
+		}
+		builder.append(this.sql, 0, start);
+		if (this.wrapCondition) {
+			builder.append('(').append(this.sql, start, this.conditionEnd).append(')');
+		}
+		else {
+			builder.append(this.sql, start, this.conditionEnd);
+		}
+		builder.append(" AND ").append(condition).append(this.sql, this.conditionEnd, this.sql.length());
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,38 @@
+package fun.yannji.data.scope.propagation;
+
+import fun.yannji.data.scope.helper.DataScopeHelper;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 包装 Executor，提交任务时捕获当前线程的数据权限并在执行线程中恢复，任务结束后还原执行线程的状态。
+ * <p>
+ * 可包装任意线程池或虚拟线程的 Executor，例如传给 CompletableFuture.supplyAsync 并行执行多个带数据权限的查询
+ *
+ * @author yannji
+ */
+public class DataScopeExecutor implements Executor {
+
+	private final Executor delegate;
+
+	public DataScopeExecutor(Executor delegate) {
+		Assert.notNull(delegate, "delegate must not be null");
+		this.delegate = delegate;
+	}
+
+	/**
+	 * 包装 Executor
+	 * @param delegate 实际执行任务的 Executor
+	 * @return DataScopeExecutor
+	 */
+	public static DataScopeExecutor wrap(Executor delegate) {
+		return delegate instanceof DataScopeExecutor ? (DataScopeExecutor) delegate : new DataScopeExecutor(delegate);
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		this.delegate.execute(DataScopeHelper.snapshot().wrap(command));
+	}
+
+}
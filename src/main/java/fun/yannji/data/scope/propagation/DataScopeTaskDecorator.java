@@ -0,0 +1,18 @@
+package fun.yannji.data.scope.propagation;
+
+import fun.yannji.data.scope.helper.DataScopeHelper;
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * 将提交任务线程的数据权限传递到执行线程，可配置到 ThreadPoolTaskExecutor 上，使 @Async 方法中的查询保留数据权限
+ *
+ * @author yannji
+ */
+public class DataScopeTaskDecorator implements TaskDecorator {
+
+	@Override
+	public Runnable decorate(Runnable runnable) {
+		return DataScopeHelper.snapshot().wrap(runnable);
+	}
+
+}
@@ -0,0 +1,40 @@
+package fun.yannji.data.scope.propagation;
+
+import fun.yannji.data.scope.helper.DataScopeHelper;
+import fun.yannji.data.scope.helper.DataScopeSnapshot;
+import io.micrometer.context.ThreadLocalAccessor;
+
+/**
+ * Micrometer context-propagation 的 ThreadLocalAccessor，通过 META-INF/services 自动注册到 ContextRegistry。
+ * <p>
+ * 引入 io.micrometer:context-propagation 后，ContextSnapshot 包装的任务、以及开启了
+ * Hooks.enableAutomaticContextPropagation() 的 Reactor 链路都会自动传递数据权限
+ *
+ * @author yannji
+ */
+public class DataScopeThreadLocalAccessor implements ThreadLocalAccessor<DataScopeSnapshot> {
+
+	public static final String KEY = "fun.yannji.data.scope";
+
+	@Override
+	public Object key() {
+		return KEY;
+	}
+
+	@Override
+	public DataScopeSnapshot getValue() {
+		DataScopeSnapshot snapshot = DataScopeHelper.snapshot();
+		return snapshot.isEmpty() ? null : snapshot;
+	}
+
+	@Override
+	public void setValue(DataScopeSnapshot value) {
+		DataScopeHelper.restore(value);
+	}
+
+	@Override
+	public void setValue() {
+		DataScopeHelper.clearDataScope();
+	}
+
+}
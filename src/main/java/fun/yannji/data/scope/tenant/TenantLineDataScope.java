@@ -0,0 +1,96 @@
+package fun.yannji.data.scope.tenant;
+
+import com.baomidou.mybatisplus.core.toolkit.ExceptionUtils;
+import com.baomidou.mybatisplus.extension.plugins.handler.TenantLineHandler;
+import fun.yannji.data.scope.GlobalDataScope;
+import fun.yannji.data.scope.util.SqlParseUtil;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.DoubleValue;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.StringValue;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 基于 MyBatis-Plus {@link TenantLineHandler} 的多租户 DataScope，用于替换 TenantLineInnerInterceptor。
+ * <p>
+ * 租户条件作为 {@link GlobalDataScope} 与其它数据权限在同一次解析中注入，过滤的表、租户字段及租户 id 均由 TenantLineHandler 决定。
+ * 租户 id 随请求变化，表达式不可缓存，改写时使用按 MappedStatement 缓存的改写计划，每次执行只生成表达式并拼接，不再解析 SQL。
+ * <p>
+ * insert 语句的字段列表中没有租户字段时自动填充，租户 id 以参数形式绑定，需要是数字或字符串常量
+ *
+ * @author yannji
+ */
+public class TenantLineDataScope implements GlobalDataScope {
+
+	/**
+	 * 默认的 DataScope 标识
+	 */
+	public static final String DEFAULT_DATA_SCOPE_KEY = "tenant";
+
+	private final String dataScopeKey;
+
+	private final TenantLineHandler tenantLineHandler;
+
+	public TenantLineDataScope(TenantLineHandler tenantLineHandler) {
+		this(DEFAULT_DATA_SCOPE_KEY, tenantLineHandler);
+	}
+
+	/**
+	 * @param dataScopeKey DataScope 唯一标识
+	 * @param tenantLineHandler 租户处理器
+	 */
+	public TenantLineDataScope(String dataScopeKey, TenantLineHandler tenantLineHandler) {
+		this.dataScopeKey = dataScopeKey;
+		this.tenantLineHandler = tenantLineHandler;
+	}
+
+	@Override
+	public String getDataScopeKey() {
+		return this.dataScopeKey;
+	}
+
+	@Override
+	public boolean includes(String tableName) {
+		return !this.tenantLineHandler.ignoreTable(tableName);
+	}
+
+	@Override
+	public Expression getExpression(String tableName, Alias tableAlias) {
+		return new EqualsTo(
+				SqlParseUtil.getAliasColumn(tableName, tableAlias, this.tenantLineHandler.getTenantIdColumn()),
+				this.tenantLineHandler.getTenantId());
+	}
+
+	@Override
+	public List<String> getInsertColumns(String tableName) {
+		return Collections.singletonList(this.tenantLineHandler.getTenantIdColumn());
+	}
+
+	@Override
+	public List<Object> getInsertValues(String tableName) {
+		Expression tenantId = this.tenantLineHandler.getTenantId();
+		Object value;
+		if (tenantId instanceof LongValue) {
+			value = ((LongValue) tenantId).getValue();
+		}
+		else if (tenantId instanceof StringValue) {
+			value = ((StringValue) tenantId).getValue();
+		}
+		else if (tenantId instanceof DoubleValue) {
+			value = ((DoubleValue) tenantId).getValue();
+		}
+		else {
+			throw ExceptionUtils.mpe("Unsupported tenant id for insert: %s", tenantId);
+		}
+		return Collections.singletonList(value);
+	}
+
+	public TenantLineHandler getTenantLineHandler() {
+		return this.tenantLineHandler;
+	}
+
+}
@@ -0,0 +1,81 @@
+package fun.yannji.data.scope.util;
+
+import com.baomidou.mybatisplus.annotation.DbType;
+
+/**
+ * 字符串常量的转义规则，用于在 SQL 文本中跳过字符串常量及带引号的标识符
+ * <p>
+ * 标准 SQL 中单引号只能写作 ''，反斜杠是普通字符；MySQL 等数据库默认还把反斜杠作为转义字符。
+ * 同一个 'C:\' 在两种规则下的结束位置不同，扫描占位符或识别 SQL 结构时必须与数据库的规则一致
+ *
+ * @author yannji
+ */
+public enum SqlLiteralSyntax {
+
+	/**
+	 * 标准 SQL：PostgreSQL、Oracle、SQL Server、H2 等
+	 */
+	STANDARD(false),
+
+	/**
+	 * 反斜杠同时作为转义字符：MySQL、MariaDB、ClickHouse 等
+	 */
+	BACKSLASH_ESCAPES(true);
+
+	private final boolean backslashEscapes;
+
+	SqlLiteralSyntax(boolean backslashEscapes) {
+		this.backslashEscapes = backslashEscapes;
+	}
+
+	/**
+	 * 获取数据库的转义规则
+	 * @param dbType 数据库类型
+	 * @return SqlLiteralSyntax，dbType 为 null 或 {@link DbType#OTHER} 时无法确定，返回 null
+	 */
+	public static SqlLiteralSyntax of(DbType dbType) {
+		if (dbType == null || dbType == DbType.OTHER) {
+			return null;
+		}
+		switch (dbType) {
+			case MYSQL:
+			case MARIADB:
+			case CLICK_HOUSE:
+			case GBASE:
+			case OCEAN_BASE:
+			case IMPALA:
+			case TDENGINE:
+				return BACKSLASH_ESCAPES;
+			default:
+				return STANDARD;
+		}
+	}
+
+	/**
+	 * 跳过从 start 开始的字符串常量或带引号的标识符，如 'xx'、"xx"、`xx`，引号重复两次表示引号本身
+	 * @param sql sql
+	 * @param start 起始引号所在下标
+	 * @return 结束引号之后的下标，没有结束引号时返回 sql 长度
+	 */
+	public int skipQuoted(String sql, int start) {
+		char quote = sql.charAt(start);
+		int i = start + 1;
+		while (i < sql.length()) {
+			char c = sql.charAt(i);
+			if (c == '\\' && quote == '\'' && this.backslashEscapes) {
+				i += 2;
+				continue;
+			}
+			if (c == quote) {
+				if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+					i += 2;
+					continue;
+				}
+				return i + 1;
+			}
+			i++;
+		}
+		return sql.length();
+	}
+
+}
@@ -0,0 +1,163 @@
+package fun.yannji.data.scope.warmup;
+
+import com.baomidou.mybatisplus.extension.parser.JsqlParserGlobal;
+import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.inner.InnerInterceptor;
+import fun.yannji.data.scope.DataScopeProperties;
+import fun.yannji.data.scope.annotation.DataScopedStatementRegistry;
+import fun.yannji.data.scope.holder.DataScopeHolder;
+import fun.yannji.data.scope.holder.DataScopeSet;
+import fun.yannji.data.scope.interceptor.DataPermissionInterceptor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.scripting.defaults.RawSqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 启动预热：所有单例初始化完成、Web 服务开始接收请求之前，遍历 SqlSessionFactory 中的 MappedStatement，
+ * 对静态 SQL 做一次解析，加载 JSqlParser 相关类；Mapper 方法声明了 {@link fun.yannji.data.scope.annotation.DataScoped}
+ * 或配置了预热 DataScope 的语句会预先改写并放入改写缓存。
+ * <p>
+ * 动态 SQL（含 &lt;if&gt; 等标签或 Provider）在执行前无法确定 SQL，不做预热
+ *
+ * @author yannji
+ */
+@Slf4j
+public class DataScopeWarmUp implements SmartInitializingSingleton {
+
+	private final ObjectProvider<SqlSessionFactory> sqlSessionFactories;
+
+	private final DataScopeHolder dataScopeHolder;
+
+	private final DataScopedStatementRegistry statementRegistry;
+
+	private final DataScopeProperties.WarmUp properties;
+
+	public DataScopeWarmUp(ObjectProvider<SqlSessionFactory> sqlSessionFactories, DataScopeHolder dataScopeHolder,
+			DataScopedStatementRegistry statementRegistry, DataScopeProperties.WarmUp properties) {
+		this.sqlSessionFactories = sqlSessionFactories;
+		this.dataScopeHolder = dataScopeHolder;
+		this.statementRegistry = statementRegistry;
+		this.properties = properties;
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		this.sqlSessionFactories.orderedStream().forEach(factory -> warmUp(factory.getConfiguration()));
+	}
+
+	/**
+	 * 预热一个 MyBatis Configuration 中的所有静态语句
+	 * @param configuration Configuration
+	 */
+	public void warmUp(Configuration configuration) {
+		long start = System.currentTimeMillis();
+		DataPermissionInterceptor interceptor = findInterceptor(configuration);
+		DataScopeSet defaultDataScopeSet = this.properties.getDataScopeKeys().isEmpty() ? DataScopeSet.EMPTY
+				: this.dataScopeHolder.getDataScopeSet(this.properties.getDataScopeKeys().toArray(new String[0]));
+		List<MappedStatement> statements = getStaticStatements(configuration);
+		LongAdder parsed = new LongAdder();
+		LongAdder rewritten = new LongAdder();
+		LongAdder failed = new LongAdder();
+		int parallelism = this.properties.getParallelism() > 0 ? this.properties.getParallelism()
+				: Runtime.getRuntime().availableProcessors();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.submit(() -> statements.parallelStream().forEach(ms -> {
+				try {
+					String sql = ms.getBoundSql(null).getSql();
+					DataScopeSet dataScopeSet = this.statementRegistry.getDataScopeSet(ms);
+					if (dataScopeSet.isEmpty()) {
+						dataScopeSet = defaultDataScopeSet;
+					}
+					dataScopeSet = this.dataScopeHolder.withGlobalDataScopes(dataScopeSet);
+					if (interceptor != null && !dataScopeSet.isEmpty()) {
+						interceptor.warmUp(ms, sql, dataScopeSet);
+						rewritten.increment();
+					}
+					else {
+						JsqlParserGlobal.parse(sql);
+						parsed.increment();
+					}
+				}
+				catch (Exception e) {
+					failed.increment();
+					log.debug("Data scope warm-up skipped statement {}", ms.getId(), e);
+				}
+			})).get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (Exception e) {
+			log.warn("Data scope warm-up failed", e);
+		}
+		finally {
+			pool.shutdown();
+		}
+		log.info("Data scope warm-up finished in {} ms: {} static statements, {} parsed, {} rewritten, {} skipped",
+				System.currentTimeMillis() - start, statements.size(), parsed.sum(), rewritten.sum(), failed.sum());
+	}
+
+	/**
+	 * 获取 SQL 固定的语句，Configuration 中同一语句会以短 id 和完整 id 出现两次，按实例去重
+	 * @param configuration Configuration
+	 * @return MappedStatement
+	 */
+	private static List<MappedStatement> getStaticStatements(Configuration configuration) {
+		Set<MappedStatement> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<MappedStatement> statements = new ArrayList<>();
+		// 短 id 冲突时 values 中会混有 Ambiguity 对象
+		for (Object value : (Iterable<?>) configuration.getMappedStatements()) {
+			if (!(value instanceof MappedStatement)) {
+				continue;
+			}
+			MappedStatement ms = (MappedStatement) value;
+			SqlCommandType sct = ms.getSqlCommandType();
+			boolean supported = sct == SqlCommandType.SELECT || sct == SqlCommandType.INSERT
+					|| sct == SqlCommandType.UPDATE || sct == SqlCommandType.DELETE;
+			if (supported && isStatic(ms.getSqlSource()) && visited.add(ms)) {
+				statements.add(ms);
+			}
+		}
+		return statements;
+	}
+
+	private static boolean isStatic(SqlSource sqlSource) {
+		return sqlSource instanceof RawSqlSource || sqlSource instanceof StaticSqlSource;
+	}
+
+	/**
+	 * 从 Configuration 注册的插件中查找 DataPermissionInterceptor
+	 * @param configuration Configuration
+	 * @return DataPermissionInterceptor，没有时返回 null
+	 */
+	private static DataPermissionInterceptor findInterceptor(Configuration configuration) {
+		for (Interceptor interceptor : configuration.getInterceptors()) {
+			if (interceptor instanceof MybatisPlusInterceptor) {
+				for (InnerInterceptor inner : ((MybatisPlusInterceptor) interceptor).getInterceptors()) {
+					if (inner instanceof DataPermissionInterceptor) {
+						return (DataPermissionInterceptor) inner;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+}
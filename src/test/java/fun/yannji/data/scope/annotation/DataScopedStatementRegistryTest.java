@@ -0,0 +1,180 @@
+package fun.yannji.data.scope.annotation;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.helper.DataScopeHelper;
+import fun.yannji.data.scope.holder.DataScopeHolder;
+import fun.yannji.data.scope.holder.DataScopeSet;
+import fun.yannji.data.scope.interceptor.DataPermissionInterceptor;
+import fun.yannji.data.scope.util.SqlParseUtil;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Mapper 方法上的 {@link DataScoped} 通过 MappedStatement id 解析为声明的 DataScopeSet 并在执行时生效
+ *
+ * @author yannji
+ */
+class DataScopedStatementRegistryTest {
+
+	private SqlSessionFactory sqlSessionFactory;
+
+	private DataScopeHolder dataScopeHolder;
+
+	private DataScopedStatementRegistry registry;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		UnpooledDataSource dataSource = new UnpooledDataSource("org.h2.Driver",
+				"jdbc:h2:mem:data_scoped;DB_CLOSE_DELAY=-1", "sa", "");
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE sys_user (id BIGINT PRIMARY KEY, dept_id BIGINT, status INT)");
+			statement.execute("INSERT INTO sys_user VALUES (1, 1, 1), (2, 2, 1), (3, 1, 0), (4, 2, 0)");
+		}
+
+		StaticApplicationContext applicationContext = new StaticApplicationContext();
+		applicationContext.getBeanFactory().registerSingleton("dept", new ColumnDataScope("dept", "dept_id"));
+		applicationContext.getBeanFactory().registerSingleton("status", new ColumnDataScope("status", "status"));
+		this.dataScopeHolder = new DataScopeHolder();
+		this.dataScopeHolder.setApplicationContext(applicationContext);
+		this.dataScopeHolder.afterPropertiesSet();
+		this.registry = new DataScopedStatementRegistry(this.dataScopeHolder);
+
+		MybatisConfiguration configuration = new MybatisConfiguration(
+				new Environment("test", new JdbcTransactionFactory(), dataSource));
+		DataPermissionInterceptor dataPermissionInterceptor = new DataPermissionInterceptor();
+		dataPermissionInterceptor.setStatementRegistry(this.registry);
+		MybatisPlusInterceptor mybatisPlusInterceptor = new MybatisPlusInterceptor();
+		mybatisPlusInterceptor.addInnerInterceptor(dataPermissionInterceptor);
+		configuration.addInterceptor(mybatisPlusInterceptor);
+		configuration.addMapper(UserMapper.class);
+		configuration.addMapper(ActiveUserMapper.class);
+		this.sqlSessionFactory = new MybatisSqlSessionFactoryBuilder().build(configuration);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		DataScopeHelper.clearDataScope();
+		try (SqlSession sqlSession = this.sqlSessionFactory.openSession();
+				Connection connection = sqlSession.getConnection();
+				Statement statement = connection.createStatement()) {
+			statement.execute("DROP TABLE sys_user");
+		}
+	}
+
+	@Test
+	void mapperMethodResolvesToDeclaredDataScopeSet() {
+		Configuration configuration = this.sqlSessionFactory.getConfiguration();
+		String userMapper = UserMapper.class.getName();
+		String activeUserMapper = ActiveUserMapper.class.getName();
+
+		DataScopeSet dataScopeSet = this.registry
+			.getDataScopeSet(configuration.getMappedStatement(userMapper + ".listByDept"));
+		assertThat(dataScopeSet.getDataScopeKeys()).containsExactly("dept");
+		assertThat(dataScopeSet.getDataScopes())
+			.containsExactlyElementsOf(this.dataScopeHolder.getDataScopeSet("dept").getDataScopes());
+		assertThat(this.registry.getDataScopeSet(configuration.getMappedStatement(userMapper + ".listByDept")))
+			.isSameAs(dataScopeSet);
+		assertThat(this.registry.getDataScopeSet(configuration.getMappedStatement(userMapper + ".list")))
+			.isSameAs(DataScopeSet.EMPTY);
+		// 方法上的注解优先于类上的注解
+		assertThat(this.registry.getDataScopeSet(configuration.getMappedStatement(activeUserMapper + ".list"))
+			.getDataScopeKeys()).containsExactly("status");
+		assertThat(this.registry
+			.getDataScopeSet(configuration.getMappedStatement(activeUserMapper + ".listByDeptAndStatus"))
+			.getDataScopeKeys()).containsExactly("dept", "status");
+	}
+
+	@Test
+	void declaredDataScopeIsApplied() {
+		try (SqlSession sqlSession = this.sqlSessionFactory.openSession()) {
+			UserMapper userMapper = sqlSession.getMapper(UserMapper.class);
+			ActiveUserMapper activeUserMapper = sqlSession.getMapper(ActiveUserMapper.class);
+
+			assertThat(userMapper.listByDept()).containsExactly(1L, 3L);
+			assertThat(userMapper.list()).containsExactly(1L, 2L, 3L, 4L);
+			assertThat(activeUserMapper.list()).containsExactly(1L, 2L);
+			assertThat(activeUserMapper.listByDeptAndStatus()).containsExactly(1L);
+
+			// 当前线程开启的数据权限优先于注解
+			DataScopeHelper.startDataScope(this.dataScopeHolder.getDataScopeSet("status"));
+			assertThat(userMapper.listByDept()).containsExactly(1L, 2L);
+		}
+	}
+
+	interface UserMapper {
+
+		@DataScoped("dept")
+		@Select("SELECT id FROM sys_user ORDER BY id")
+		List<Long> listByDept();
+
+		@Select("SELECT id FROM sys_user ORDER BY id")
+		List<Long> list();
+
+	}
+
+	@DataScoped("status")
+	interface ActiveUserMapper {
+
+		@Select("SELECT id FROM sys_user ORDER BY id")
+		List<Long> list();
+
+		@DataScoped({ "dept", "status" })
+		@Select("SELECT id FROM sys_user ORDER BY id")
+		List<Long> listByDeptAndStatus();
+
+	}
+
+	/**
+	 * sys_user 注入 column = 1
+	 */
+	static class ColumnDataScope implements DataScope {
+
+		private final String dataScopeKey;
+
+		private final String columnName;
+
+		ColumnDataScope(String dataScopeKey, String columnName) {
+			this.dataScopeKey = dataScopeKey;
+			this.columnName = columnName;
+		}
+
+		@Override
+		public String getDataScopeKey() {
+			return this.dataScopeKey;
+		}
+
+		@Override
+		public boolean includes(String tableName) {
+			return "sys_user".equals(tableName);
+		}
+
+		@Override
+		public Expression getExpression(String tableName, Alias tableAlias) {
+			return new EqualsTo(SqlParseUtil.getAliasColumn(tableName, tableAlias, this.columnName), new LongValue(1));
+		}
+
+	}
+
+}
@@ -0,0 +1,161 @@
+package fun.yannji.data.scope.helper;
+
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.DataScopeAutoConfiguration;
+import fun.yannji.data.scope.holder.DataScopeHolder;
+import fun.yannji.data.scope.holder.DataScopeSet;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 线程内数据权限的开启、嵌套及传递
+ *
+ * @author yannji
+ */
+class DataScopeHelperTest {
+
+	private final ApplicationContextRunner contextRunner = new ApplicationContextRunner().withBean(DeptDataScope.class)
+		.withConfiguration(AutoConfigurations.of(DataScopeAutoConfiguration.class));
+
+	@AfterEach
+	void tearDown() {
+		DataScopeHelper.clearDataScope();
+	}
+
+	/**
+	 * 上下文中没有 SpringUtil，按 key 开启只能使用启动时设置的 DataScopeHolder；重新启动的容器使用新的 DataScopeHolder
+	 */
+	@Test
+	void dataScopeHolderIsSetByTheRunningContext() {
+		AtomicReference<DataScopeSet> first = new AtomicReference<>();
+		this.contextRunner.run(context -> {
+			DataScopeHelper.startDataScope("dept");
+			first.set(DataScopeHelper.getDataScopeSet());
+			assertThat(first.get()).isSameAs(context.getBean(DataScopeHolder.class).getDataScopeSet("dept"));
+			DataScopeHelper.clearDataScope();
+		});
+		this.contextRunner.run(context -> {
+			try (DataScopeHandle ignored = DataScopeHelper.openDataScope("dept")) {
+				assertThat(DataScopeHelper.getDataScopeSet())
+					.isSameAs(context.getBean(DataScopeHolder.class).getDataScopeSet("dept"))
+					.isNotSameAs(first.get());
+			}
+		});
+	}
+
+	@Test
+	void pendingDataScopeSurvivesClosingAnInnerScope() throws Exception {
+		DataScopeHolder holder = holder();
+		DataScopeSet dept = holder.getDataScopeSet("dept");
+		DataScopeSet role = holder.getDataScopeSet("role");
+		try (DataScopeHandle ignored = DataScopeHelper.openDataScope(role)) {
+			DataScopeHelper.startDataScope(dept);
+			try (DataScopeHandle inner = DataScopeHelper.openDataScope(role)) {
+				assertThat(DataScopeHelper.getDataScopeSet()).isSameAs(dept);
+			}
+			assertThat(DataScopeHelper.consumeDataScope()).isSameAs(dept);
+			assertThat(DataScopeHelper.consumeDataScope()).isSameAs(role);
+		}
+	}
+
+	@Test
+	void pendingDataScopeSetInsideAClosedScopeIsDiscarded() throws Exception {
+		DataScopeHolder holder = holder();
+		DataScopeSet dept = holder.getDataScopeSet("dept");
+		DataScopeSet role = holder.getDataScopeSet("role");
+		try (DataScopeHandle ignored = DataScopeHelper.openDataScope(role)) {
+			try (DataScopeHandle inner = DataScopeHelper.openDataScope(role)) {
+				DataScopeHelper.startDataScope(dept);
+			}
+			assertThat(DataScopeHelper.consumeDataScope()).isSameAs(role);
+		}
+		assertThat(DataScopeHelper.getDataScopeSet()).isNull();
+	}
+
+	@Test
+	void countedScopeIsSharedAcrossThreads() throws Exception {
+		DataScopeHolder holder = holder();
+		DataScopeSet dept = holder.getDataScopeSet("dept");
+		DataScopeSet role = holder.getDataScopeSet("role");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try (DataScopeHandle outer = DataScopeHelper.openDataScope(role);
+				DataScopeHandle counted = DataScopeHelper.openDataScope(dept, 3)) {
+			DataScopeSnapshot snapshot = DataScopeHelper.snapshot();
+			List<Future<DataScopeSet>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				Callable<DataScopeSet> task = DataScopeHelper::consumeDataScope;
+				results.add(executor.submit(snapshot.wrap(task)));
+			}
+			int deptStatements = 0;
+			for (Future<DataScopeSet> result : results) {
+				DataScopeSet consumed = result.get();
+				if (consumed == dept) {
+					deptStatements++;
+				}
+				else {
+					assertThat(consumed).isSameAs(role);
+				}
+			}
+			assertThat(deptStatements).isEqualTo(3);
+			assertThat(DataScopeHelper.getDataScopeSet()).isSameAs(role);
+			assertThat(DataScopeHelper.consumeDataScope()).isSameAs(role);
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	private static DataScopeHolder holder() throws Exception {
+		StaticApplicationContext applicationContext = new StaticApplicationContext();
+		applicationContext.getBeanFactory().registerSingleton("dept", new DeptDataScope());
+		applicationContext.getBeanFactory().registerSingleton("role", new RoleDataScope());
+		DataScopeHolder holder = new DataScopeHolder();
+		holder.setApplicationContext(applicationContext);
+		holder.afterPropertiesSet();
+		return holder;
+	}
+
+	static class RoleDataScope extends DeptDataScope {
+
+		@Override
+		public String getDataScopeKey() {
+			return "role";
+		}
+
+	}
+
+	static class DeptDataScope implements DataScope {
+
+		@Override
+		public String getDataScopeKey() {
+			return "dept";
+		}
+
+		@Override
+		public boolean includes(String tableName) {
+			return "sys_user".equals(tableName);
+		}
+
+		@Override
+		public Expression getExpression(String tableName, Alias tableAlias) {
+			return null;
+		}
+
+	}
+
+}
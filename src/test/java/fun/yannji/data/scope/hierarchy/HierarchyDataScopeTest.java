@@ -0,0 +1,51 @@
+package fun.yannji.data.scope.hierarchy;
+
+import fun.yannji.data.scope.processor.DataScopeSqlProcessor;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 层级子查询的别名
+ *
+ * @author yannji
+ */
+class HierarchyDataScopeTest {
+
+	private static final ClosureTableDataScope DEPT_SCOPE = new ClosureTableDataScope("dept", "dept_id",
+			"sys_dept_closure", "ancestor", "descendant", "sys_user") {
+
+		@Override
+		protected Object getCurrentNode() {
+			return 1L;
+		}
+
+	};
+
+	private static String rewrite(String sql) {
+		return new DataScopeSqlProcessor().rewrite(sql, Collections.singletonList(DEPT_SCOPE)).getSql();
+	}
+
+	@Test
+	void aliasIsDerivedFromOuterAlias() {
+		assertThat(rewrite("SELECT id FROM sys_user u")).isEqualTo("SELECT id FROM sys_user u WHERE EXISTS "
+				+ "(SELECT 1 FROM sys_dept_closure ds_h_u WHERE ds_h_u.descendant = u.dept_id AND ds_h_u.ancestor = ?)");
+	}
+
+	@Test
+	void outerAliasNamedLikeHierarchyAliasDoesNotCollide() {
+		assertThat(rewrite("SELECT id FROM sys_user ds_h")).isEqualTo("SELECT id FROM sys_user ds_h WHERE EXISTS "
+				+ "(SELECT 1 FROM sys_dept_closure ds_h_ds_h WHERE ds_h_ds_h.descendant = ds_h.dept_id "
+				+ "AND ds_h_ds_h.ancestor = ?)");
+	}
+
+	@Test
+	void aliasIsSanitized() {
+		assertThat(HierarchyDataScope.hierarchyAlias("db.sys_user")).isEqualTo("ds_h_sys_user");
+		assertThat(HierarchyDataScope.hierarchyAlias("`u`")).isEqualTo("ds_h_u");
+		assertThat(HierarchyDataScope.hierarchyAlias("ds_h_")).isEqualTo("ds_h_ds_h_");
+	}
+
+}
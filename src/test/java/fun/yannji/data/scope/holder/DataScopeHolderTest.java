@@ -0,0 +1,147 @@
+package fun.yannji.data.scope.holder;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.GlobalDataScope;
+import fun.yannji.data.scope.helper.DataScopeHelper;
+import fun.yannji.data.scope.interceptor.DataPermissionInterceptor;
+import fun.yannji.data.scope.util.SqlParseUtil;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.StaticApplicationContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@link GlobalDataScope} 并入每个 DataScopeSet
+ *
+ * @author yannji
+ */
+class DataScopeHolderTest {
+
+	private static final String SQL = "SELECT id FROM sys_user WHERE id = ?";
+
+	private static DataScopeHolder holder(DataScope... dataScopes) throws Exception {
+		StaticApplicationContext applicationContext = new StaticApplicationContext();
+		for (DataScope dataScope : dataScopes) {
+			applicationContext.getBeanFactory().registerSingleton(dataScope.getDataScopeKey(), dataScope);
+		}
+		DataScopeHolder holder = new DataScopeHolder();
+		holder.setApplicationContext(applicationContext);
+		holder.afterPropertiesSet();
+		return holder;
+	}
+
+	@AfterEach
+	void clearDataScope() {
+		DataScopeHelper.clearDataScope();
+	}
+
+	@Test
+	void globalDataScopesAreMergedIntoEveryDataScopeSet() throws Exception {
+		DataScopeHolder holder = holder(new ColumnDataScope("dept"), new ColumnDataScope("owner"),
+				new GlobalColumnDataScope("tenant"), new GlobalColumnDataScope("region"));
+		DataScopeSet globals = holder.getGlobalDataScopeSet();
+
+		assertThat(globals.getDataScopeKeys()).containsExactlyInAnyOrder("tenant", "region");
+		assertThat(holder.withGlobalDataScopes(null)).isSameAs(globals);
+		assertThat(holder.withGlobalDataScopes(DataScopeSet.EMPTY)).isSameAs(globals);
+
+		DataScopeSet dept = holder.getDataScopeSet("dept");
+		DataScopeSet merged = holder.withGlobalDataScopes(dept);
+		assertThat(merged.getDataScopeKeys()).startsWith(globals.getDataScopeKeys().toArray(new String[0]))
+			.endsWith("dept")
+			.hasSize(3);
+		assertThat(holder.withGlobalDataScopes(dept)).isSameAs(merged);
+		assertThat(holder.withGlobalDataScopes(merged)).isSameAs(merged);
+
+		DataScopeSet deptAndOwner = holder.withGlobalDataScopes(holder.getDataScopeSet("dept", "owner"));
+		assertThat(deptAndOwner.getDataScopeKeys()).endsWith("dept", "owner").hasSize(4);
+
+		// 已经显式开启的 GlobalDataScope 不会重复加入
+		DataScopeSet withTenant = holder.withGlobalDataScopes(holder.getDataScopeSet("dept", "tenant"));
+		assertThat(withTenant).isSameAs(merged);
+	}
+
+	@Test
+	void withoutGlobalDataScopesTheSetIsReturnedAsIs() throws Exception {
+		DataScopeHolder holder = holder(new ColumnDataScope("dept"));
+		DataScopeSet dept = holder.getDataScopeSet("dept");
+
+		assertThat(holder.getGlobalDataScopeSet()).isSameAs(DataScopeSet.EMPTY);
+		assertThat(holder.withGlobalDataScopes(dept)).isSameAs(dept);
+		assertThat(holder.withGlobalDataScopes(null)).isNull();
+	}
+
+	@Test
+	void globalDataScopesAreInjectedWithTheStatementDataScopes() throws Exception {
+		DataScopeHolder holder = holder(new ColumnDataScope("dept"), new GlobalColumnDataScope("tenant"));
+		DataPermissionInterceptor interceptor = new DataPermissionInterceptor();
+		interceptor.setDataScopeHolder(holder);
+
+		assertThat(beforeQuery(interceptor).getSql()).isEqualTo(SQL + " AND sys_user.tenant_id = 1");
+
+		DataScopeHelper.startDataScope(holder.getDataScopeSet("dept"));
+		BoundSql boundSql = beforeQuery(interceptor);
+		assertThat(boundSql.getSql()).isEqualTo(SQL + " AND sys_user.tenant_id = 1 AND sys_user.dept_id = 1");
+		assertThat(DataPermissionInterceptor.getAppliedDataScopeSet(boundSql))
+			.isSameAs(holder.withGlobalDataScopes(holder.getDataScopeSet("dept")));
+	}
+
+	private static BoundSql beforeQuery(DataPermissionInterceptor interceptor) throws Exception {
+		MybatisConfiguration configuration = new MybatisConfiguration();
+		MappedStatement ms = new MappedStatement.Builder(configuration, "test.select",
+				new StaticSqlSource(configuration, SQL), SqlCommandType.SELECT)
+			.build();
+		BoundSql boundSql = ms.getBoundSql(null);
+		interceptor.beforeQuery(null, ms, null, RowBounds.DEFAULT, null, boundSql);
+		return boundSql;
+	}
+
+	/**
+	 * sys_user 注入 key_id = 1
+	 */
+	static class ColumnDataScope implements DataScope {
+
+		private final String dataScopeKey;
+
+		ColumnDataScope(String dataScopeKey) {
+			this.dataScopeKey = dataScopeKey;
+		}
+
+		@Override
+		public String getDataScopeKey() {
+			return this.dataScopeKey;
+		}
+
+		@Override
+		public boolean includes(String tableName) {
+			return "sys_user".equals(tableName);
+		}
+
+		@Override
+		public Expression getExpression(String tableName, Alias tableAlias) {
+			return new EqualsTo(SqlParseUtil.getAliasColumn(tableName, tableAlias, this.dataScopeKey + "_id"),
+					new LongValue(1));
+		}
+
+	}
+
+	static class GlobalColumnDataScope extends ColumnDataScope implements GlobalDataScope {
+
+		GlobalColumnDataScope(String dataScopeKey) {
+			super(dataScopeKey);
+		}
+
+	}
+
+}
@@ -0,0 +1,166 @@
+package fun.yannji.data.scope.interceptor;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.inner.InnerInterceptor;
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.helper.DataScopeHelper;
+import fun.yannji.data.scope.holder.DataScopeHolder;
+import fun.yannji.data.scope.holder.DataScopeSet;
+import fun.yannji.data.scope.util.SqlParseUtil;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * BatchExecutor 执行的语句只改写一次，一次性数据权限对整个批次生效
+ *
+ * @author yannji
+ */
+class DataPermissionInterceptorBatchTest {
+
+	private static final String CONDITION = "sys_user.dept_id = 1";
+
+	private final List<String> preparedSqls = new ArrayList<>();
+
+	private SqlSessionFactory sqlSessionFactory;
+
+	private DataScopeSet dataScopeSet;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		UnpooledDataSource dataSource = new UnpooledDataSource("org.h2.Driver", "jdbc:h2:mem:batch;DB_CLOSE_DELAY=-1",
+				"sa", "");
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE sys_user (id BIGINT PRIMARY KEY, dept_id BIGINT, status INT)");
+			statement.execute("INSERT INTO sys_user VALUES (1, 1, 0), (2, 2, 0), (3, 1, 0), (4, 2, 0)");
+		}
+		MybatisConfiguration configuration = new MybatisConfiguration(
+				new Environment("test", new JdbcTransactionFactory(), dataSource));
+		MybatisPlusInterceptor mybatisPlusInterceptor = new MybatisPlusInterceptor();
+		mybatisPlusInterceptor.addInnerInterceptor(new DataPermissionInterceptor());
+		mybatisPlusInterceptor.addInnerInterceptor(new InnerInterceptor() {
+
+			@Override
+			public void beforePrepare(StatementHandler sh, Connection connection, Integer transactionTimeout) {
+				DataPermissionInterceptorBatchTest.this.preparedSqls.add(sh.getBoundSql().getSql());
+			}
+
+		});
+		configuration.addInterceptor(mybatisPlusInterceptor);
+		configuration.addMapper(UserMapper.class);
+		this.sqlSessionFactory = new MybatisSqlSessionFactoryBuilder().build(configuration);
+
+		StaticApplicationContext applicationContext = new StaticApplicationContext();
+		applicationContext.getBeanFactory().registerSingleton("dept", new DeptDataScope());
+		DataScopeHolder dataScopeHolder = new DataScopeHolder();
+		dataScopeHolder.setApplicationContext(applicationContext);
+		dataScopeHolder.afterPropertiesSet();
+		this.dataScopeSet = dataScopeHolder.getDataScopeSet("dept");
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		DataScopeHelper.clearDataScope();
+		try (SqlSession sqlSession = this.sqlSessionFactory.openSession();
+				Connection connection = sqlSession.getConnection();
+				Statement statement = connection.createStatement()) {
+			statement.execute("DROP TABLE sys_user");
+		}
+	}
+
+	@Test
+	void batchUpdateIsRewrittenOnceAndScopedAsAWhole() {
+		try (SqlSession sqlSession = this.sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+			UserMapper userMapper = sqlSession.getMapper(UserMapper.class);
+			DataScopeHelper.startDataScope(this.dataScopeSet);
+			for (long id = 1; id <= 4; id++) {
+				userMapper.updateStatus(id, 1);
+			}
+			List<BatchResult> batchResults = sqlSession.flushStatements();
+			sqlSession.commit();
+
+			// 相同的改写结果复用同一个 PreparedStatement，只准备一次
+			assertThat(this.preparedSqls).hasSize(1);
+			assertThat(this.preparedSqls.get(0))
+				.isEqualTo("UPDATE sys_user SET status = ? WHERE id = ? AND " + CONDITION);
+			assertThat(batchResults).hasSize(1);
+			assertThat(batchResults.get(0).getUpdateCounts()).containsExactly(1, 0, 1, 0);
+			// 批次中的语句不消费一次性数据权限，需要在批次结束后清除
+			assertThat(DataScopeHelper.getDataScopeSet()).isSameAs(this.dataScopeSet);
+			DataScopeHelper.clearDataScope();
+
+			assertThat(userMapper.listByStatus(1)).containsExactly(1L, 3L);
+			assertThat(this.preparedSqls.get(1)).doesNotContain(CONDITION);
+		}
+	}
+
+	@Test
+	void simpleExecutorConsumesPendingDataScopeOnFirstUpdate() {
+		try (SqlSession sqlSession = this.sqlSessionFactory.openSession()) {
+			UserMapper userMapper = sqlSession.getMapper(UserMapper.class);
+			DataScopeHelper.startDataScope(this.dataScopeSet);
+			assertThat(userMapper.updateStatus(2L, 1)).isZero();
+			assertThat(DataScopeHelper.getDataScopeSet()).isNull();
+			assertThat(userMapper.updateStatus(4L, 1)).isEqualTo(1);
+			sqlSession.commit();
+
+			assertThat(this.preparedSqls.get(0)).endsWith(CONDITION);
+			assertThat(this.preparedSqls.get(1)).doesNotContain(CONDITION);
+		}
+	}
+
+	interface UserMapper {
+
+		@Update("UPDATE sys_user SET status = #{status} WHERE id = #{id}")
+		int updateStatus(@Param("id") Long id, @Param("status") int status);
+
+		@Select("SELECT id FROM sys_user WHERE status = #{status} ORDER BY id")
+		List<Long> listByStatus(@Param("status") int status);
+
+	}
+
+	static class DeptDataScope implements DataScope {
+
+		@Override
+		public String getDataScopeKey() {
+			return "dept";
+		}
+
+		@Override
+		public boolean includes(String tableName) {
+			return "sys_user".equals(tableName);
+		}
+
+		@Override
+		public Expression getExpression(String tableName, Alias tableAlias) {
+			return new EqualsTo(SqlParseUtil.getAliasColumn(tableName, tableAlias, "dept_id"), new LongValue(1));
+		}
+
+	}
+
+}
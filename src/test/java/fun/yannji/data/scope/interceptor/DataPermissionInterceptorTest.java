@@ -0,0 +1,93 @@
+package fun.yannji.data.scope.interceptor;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import fun.yannji.data.scope.GlobalDataScope;
+import fun.yannji.data.scope.annotation.DataScopedStatementRegistry;
+import fun.yannji.data.scope.holder.DataScopeHolder;
+import fun.yannji.data.scope.metrics.DataScopeMetrics;
+import fun.yannji.data.scope.util.SqlParseUtil;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 拦截器依赖的注入
+ *
+ * @author yannji
+ */
+class DataPermissionInterceptorTest {
+
+	private static final String SQL = "SELECT id FROM sys_user WHERE id = ?";
+
+	private final MappedStatement ms = new MappedStatement.Builder(new MybatisConfiguration(), "test.select",
+			new StaticSqlSource(new MybatisConfiguration(), SQL), SqlCommandType.SELECT)
+		.build();
+
+	private BoundSql beforeQuery(DataPermissionInterceptor interceptor) throws Exception {
+		BoundSql boundSql = this.ms.getBoundSql(null);
+		interceptor.beforeQuery(null, this.ms, null, RowBounds.DEFAULT, null, boundSql);
+		return boundSql;
+	}
+
+	@Test
+	void withoutSpringNothingIsInjected() throws Exception {
+		BoundSql boundSql = beforeQuery(new DataPermissionInterceptor());
+
+		assertThat(boundSql.getSql()).isEqualTo(SQL);
+		assertThat(DataPermissionInterceptor.getAppliedDataScopeSet(boundSql)).isNull();
+	}
+
+	@Test
+	void configurerInjectsHolderThroughPaginationDelegate() throws Exception {
+		StaticApplicationContext applicationContext = new StaticApplicationContext();
+		applicationContext.getBeanFactory().registerSingleton("tenant", new TenantDataScope());
+		DataScopeHolder holder = new DataScopeHolder();
+		holder.setApplicationContext(applicationContext);
+		holder.afterPropertiesSet();
+		StaticListableBeanFactory beanFactory = new StaticListableBeanFactory(
+				Collections.singletonMap("dataScopeHolder", holder));
+		DataPermissionInterceptorConfigurer configurer = new DataPermissionInterceptorConfigurer(
+				beanFactory.getBeanProvider(SqlSessionFactory.class), beanFactory.getBeanProvider(DataScopeHolder.class),
+				beanFactory.getBeanProvider(DataScopedStatementRegistry.class),
+				beanFactory.getBeanProvider(DataScopeMetrics.class));
+		DataPermissionInterceptor interceptor = new DataPermissionInterceptor();
+
+		configurer.configure(new DataScopePaginationInnerInterceptor(interceptor));
+
+		assertThat(beforeQuery(interceptor).getSql()).isEqualTo(SQL + " AND sys_user.tenant_id = 1");
+	}
+
+	static class TenantDataScope implements GlobalDataScope {
+
+		@Override
+		public String getDataScopeKey() {
+			return "tenant";
+		}
+
+		@Override
+		public boolean includes(String tableName) {
+			return "sys_user".equals(tableName);
+		}
+
+		@Override
+		public Expression getExpression(String tableName, Alias tableAlias) {
+			return new EqualsTo(SqlParseUtil.getAliasColumn(tableName, tableAlias, "tenant_id"), new LongValue(1));
+		}
+
+	}
+
+}
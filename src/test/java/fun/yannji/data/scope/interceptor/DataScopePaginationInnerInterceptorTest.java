@@ -0,0 +1,190 @@
+package fun.yannji.data.scope.interceptor;
+
+import com.baomidou.mybatisplus.annotation.DbType;
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.inner.InnerInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.helper.DataScopeHandle;
+import fun.yannji.data.scope.helper.DataScopeHelper;
+import fun.yannji.data.scope.holder.DataScopeHolder;
+import fun.yannji.data.scope.util.SqlParseUtil;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 分页查询的 count 语句与分页语句共用一次数据权限注入
+ *
+ * @author yannji
+ */
+class DataScopePaginationInnerInterceptorTest {
+
+	private static final String CONDITION = "sys_user.dept_id = 1";
+
+	/**
+	 * 分页插件按 MappedStatement id 静态缓存 count 语句，count 语句使用首次创建时的 Configuration，所有用例共用一个 SqlSessionFactory
+	 */
+	private static final List<String> EXECUTED_SQLS = new ArrayList<>();
+
+	private static DataPermissionInterceptor dataPermissionInterceptor;
+
+	private static SqlSessionFactory sqlSessionFactory;
+
+	private static DataScopeHolder dataScopeHolder;
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		UnpooledDataSource dataSource = new UnpooledDataSource("org.h2.Driver",
+				"jdbc:h2:mem:pagination;DB_CLOSE_DELAY=-1", "sa", "");
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE sys_user (id BIGINT PRIMARY KEY, dept_id BIGINT)");
+			statement.execute("INSERT INTO sys_user VALUES (1, 1), (2, 2), (3, 1), (4, 1), (5, 2), (6, 1), (7, 1)");
+		}
+		MybatisConfiguration configuration = new MybatisConfiguration(
+				new Environment("test", new JdbcTransactionFactory(), dataSource));
+		dataPermissionInterceptor = new DataPermissionInterceptor(DbType.H2);
+		// 分页插件在前时 count 语句早于 DataPermissionInterceptor#beforeQuery 执行
+		MybatisPlusInterceptor mybatisPlusInterceptor = new MybatisPlusInterceptor();
+		mybatisPlusInterceptor
+			.addInnerInterceptor(new DataScopePaginationInnerInterceptor(dataPermissionInterceptor, DbType.H2));
+		mybatisPlusInterceptor.addInnerInterceptor(dataPermissionInterceptor);
+		mybatisPlusInterceptor.addInnerInterceptor(new InnerInterceptor() {
+
+			@Override
+			public void beforePrepare(StatementHandler sh, Connection connection, Integer transactionTimeout) {
+				EXECUTED_SQLS.add(sh.getBoundSql().getSql());
+			}
+
+		});
+		configuration.addInterceptor(mybatisPlusInterceptor);
+		configuration.addMapper(UserMapper.class);
+		sqlSessionFactory = new MybatisSqlSessionFactoryBuilder().build(configuration);
+
+		StaticApplicationContext applicationContext = new StaticApplicationContext();
+		applicationContext.getBeanFactory().registerSingleton("dept", new DeptDataScope());
+		dataScopeHolder = new DataScopeHolder();
+		dataScopeHolder.setApplicationContext(applicationContext);
+		dataScopeHolder.afterPropertiesSet();
+	}
+
+	@AfterAll
+	static void tearDown() throws Exception {
+		try (SqlSession sqlSession = sqlSessionFactory.openSession();
+				Connection connection = sqlSession.getConnection();
+				Statement statement = connection.createStatement()) {
+			statement.execute("DROP TABLE sys_user");
+		}
+	}
+
+	@BeforeEach
+	void clearExecutedSqls() {
+		EXECUTED_SQLS.clear();
+	}
+
+	@AfterEach
+	void clearDataScope() {
+		DataScopeHelper.clearDataScope();
+	}
+
+	@Test
+	void countAndPageShareOnePendingDataScope() {
+		try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+			UserMapper userMapper = sqlSession.getMapper(UserMapper.class);
+			DataScopeHelper.startDataScope(dataScopeHolder.getDataScopeSet("dept"));
+			IPage<Long> page = userMapper.page(new Page<>(2, 2));
+
+			assertThat(page.getTotal()).isEqualTo(5);
+			assertThat(page.getRecords()).containsExactly(4L, 6L);
+			assertThat(DataScopeHelper.getDataScopeSet()).isNull();
+			assertThat(EXECUTED_SQLS).hasSize(2);
+			assertThat(EXECUTED_SQLS.get(0).toUpperCase()).startsWith("SELECT COUNT(*)");
+			assertThat(EXECUTED_SQLS).allSatisfy(sql -> assertThat(occurrences(sql, CONDITION)).isEqualTo(1));
+			// count 语句由改写后的 SQL 生成，只有分页查询的原始 SQL 编译了改写计划
+			assertThat(dataPermissionInterceptor.getPlanCache().size()).isEqualTo(1);
+
+			// 一次性数据权限已被消费，之后的分页查询不再过滤
+			IPage<Long> next = userMapper.page(new Page<>(2, 2));
+			assertThat(next.getTotal()).isEqualTo(7);
+			assertThat(next.getRecords()).containsExactly(3L, 4L);
+			assertThat(EXECUTED_SQLS.subList(2, 4)).noneMatch(sql -> sql.contains(CONDITION));
+		}
+	}
+
+	@Test
+	void pageInsideScopeIsRewrittenOnce() {
+		List<Long> ids = new ArrayList<>();
+		try (DataScopeHandle ignored = DataScopeHelper.openDataScope(dataScopeHolder.getDataScopeSet("dept"))) {
+			for (int current = 1; current <= 3; current++) {
+				// 每页使用新的 SqlSession，避免 count 语句命中一级缓存
+				try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+					IPage<Long> page = sqlSession.getMapper(UserMapper.class).page(new Page<>(current, 2));
+					assertThat(page.getTotal()).isEqualTo(5);
+					ids.addAll(page.getRecords());
+				}
+			}
+		}
+		assertThat(ids).containsExactly(1L, 3L, 4L, 6L, 7L);
+		assertThat(EXECUTED_SQLS).hasSize(6).allSatisfy(sql -> assertThat(occurrences(sql, CONDITION)).isEqualTo(1));
+		assertThat(dataPermissionInterceptor.getPlanCache().size()).isEqualTo(1);
+	}
+
+	private static int occurrences(String sql, String condition) {
+		int count = 0;
+		for (int i = sql.indexOf(condition); i >= 0; i = sql.indexOf(condition, i + condition.length())) {
+			count++;
+		}
+		return count;
+	}
+
+	interface UserMapper {
+
+		@Select("SELECT id FROM sys_user ORDER BY id")
+		IPage<Long> page(IPage<Long> page);
+
+	}
+
+	static class DeptDataScope implements DataScope {
+
+		@Override
+		public String getDataScopeKey() {
+			return "dept";
+		}
+
+		@Override
+		public boolean includes(String tableName) {
+			return "sys_user".equals(tableName);
+		}
+
+		@Override
+		public Expression getExpression(String tableName, Alias tableAlias) {
+			return new EqualsTo(SqlParseUtil.getAliasColumn(tableName, tableAlias, "dept_id"), new LongValue(1));
+		}
+
+	}
+
+}
@@ -0,0 +1,133 @@
+package fun.yannji.data.scope.interceptor;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.DataScopeAutoConfiguration;
+import fun.yannji.data.scope.helper.DataScopeHelper;
+import fun.yannji.data.scope.holder.DataScopeHolder;
+import fun.yannji.data.scope.util.SqlParseUtil;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 游标查询消费一次性数据权限
+ *
+ * @author yannji
+ */
+class DataScopeStreamingInterceptorTest {
+
+	private SqlSessionFactory sqlSessionFactory;
+
+	private DataScopeHolder dataScopeHolder;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		UnpooledDataSource dataSource = new UnpooledDataSource("org.h2.Driver",
+				"jdbc:h2:mem:streaming;DB_CLOSE_DELAY=-1", "sa", "");
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE sys_user (id BIGINT PRIMARY KEY, dept_id BIGINT)");
+			statement.execute("INSERT INTO sys_user VALUES (1, 1), (2, 2), (3, 1)");
+		}
+		MybatisConfiguration configuration = new MybatisConfiguration(
+				new Environment("test", new JdbcTransactionFactory(), dataSource));
+		MybatisPlusInterceptor mybatisPlusInterceptor = new MybatisPlusInterceptor();
+		mybatisPlusInterceptor.addInnerInterceptor(new DataPermissionInterceptor());
+		configuration.addInterceptor(mybatisPlusInterceptor);
+		configuration.addInterceptor(new DataScopeStreamingInterceptor(null));
+		configuration.addMapper(UserMapper.class);
+		this.sqlSessionFactory = new MybatisSqlSessionFactoryBuilder().build(configuration);
+
+		StaticApplicationContext applicationContext = new StaticApplicationContext();
+		applicationContext.getBeanFactory().registerSingleton("dept", new DeptDataScope());
+		this.dataScopeHolder = new DataScopeHolder();
+		this.dataScopeHolder.setApplicationContext(applicationContext);
+		this.dataScopeHolder.afterPropertiesSet();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		DataScopeHelper.clearDataScope();
+		try (SqlSession sqlSession = this.sqlSessionFactory.openSession();
+				Connection connection = sqlSession.getConnection();
+				Statement statement = connection.createStatement()) {
+			statement.execute("DROP TABLE sys_user");
+		}
+	}
+
+	@Test
+	void cursorQueryConsumesPendingDataScope() throws Exception {
+		List<Long> ids = new ArrayList<>();
+		try (SqlSession sqlSession = this.sqlSessionFactory.openSession()) {
+			DataScopeHelper.startDataScope(this.dataScopeHolder.getDataScopeSet("dept"));
+			try (Cursor<Long> cursor = sqlSession.getMapper(UserMapper.class).cursor()) {
+				assertThat(DataScopeHelper.getDataScopeSet()).isNull();
+				cursor.forEach(ids::add);
+			}
+			assertThat(ids).containsExactly(1L, 3L);
+			assertThat(DataScopeHelper.getDataScopeSet()).isNull();
+
+			assertThat(sqlSession.getMapper(UserMapper.class).list()).containsExactly(1L, 2L, 3L);
+		}
+	}
+
+	@Test
+	void registeredByDefault() {
+		new ApplicationContextRunner().withBean(DeptDataScope.class)
+			.withConfiguration(AutoConfigurations.of(DataScopeAutoConfiguration.class))
+			.run(context -> assertThat(context).hasSingleBean(DataScopeStreamingInterceptor.class));
+	}
+
+	interface UserMapper {
+
+		@Select("SELECT id FROM sys_user ORDER BY id")
+		Cursor<Long> cursor();
+
+		@Select("SELECT id FROM sys_user ORDER BY id")
+		List<Long> list();
+
+	}
+
+	static class DeptDataScope implements DataScope {
+
+		@Override
+		public String getDataScopeKey() {
+			return "dept";
+		}
+
+		@Override
+		public boolean includes(String tableName) {
+			return "sys_user".equals(tableName);
+		}
+
+		@Override
+		public Expression getExpression(String tableName, Alias tableAlias) {
+			return new EqualsTo(SqlParseUtil.getAliasColumn(tableName, tableAlias, "dept_id"), new LongValue(1));
+		}
+
+	}
+
+}
@@ -0,0 +1,195 @@
+package fun.yannji.data.scope.processor;
+
+import com.baomidou.mybatisplus.annotation.DbType;
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.inner.InnerInterceptor;
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.helper.DataScopeHelper;
+import fun.yannji.data.scope.holder.DataScopeHolder;
+import fun.yannji.data.scope.holder.DataScopeSet;
+import fun.yannji.data.scope.interceptor.DataPermissionInterceptor;
+import fun.yannji.data.scope.util.SqlParseUtil;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.operators.relational.InExpression;
+import net.sf.jsqlparser.expression.operators.relational.ParenthesedExpressionList;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 大 IN 列表改写为 = ANY(?) 数组参数后，在 H2 上与原 IN 列表查询结果一致
+ *
+ * @author yannji
+ */
+class ArrayValueSetStrategyTest {
+
+	private static final String URL = "jdbc:h2:mem:value_set;DB_CLOSE_DELAY=-1";
+
+	private static final int ROWS = 3000;
+
+	private static UnpooledDataSource dataSource;
+
+	private static DataScopeHolder dataScopeHolder;
+
+	@BeforeAll
+	static void setUp() throws Exception {
+		dataSource = new UnpooledDataSource("org.h2.Driver", URL, "sa", "");
+		try (Connection connection = dataSource.getConnection()) {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("CREATE TABLE sys_user (id BIGINT PRIMARY KEY)");
+			}
+			try (PreparedStatement statement = connection.prepareStatement("INSERT INTO sys_user VALUES (?)")) {
+				for (long id = 1; id <= ROWS; id++) {
+					statement.setLong(1, id);
+					statement.addBatch();
+				}
+				statement.executeBatch();
+			}
+		}
+
+		StaticApplicationContext applicationContext = new StaticApplicationContext();
+		applicationContext.getBeanFactory().registerSingleton("in", new MultipleOfThreeDataScope(false));
+		applicationContext.getBeanFactory().registerSingleton("notIn", new MultipleOfThreeDataScope(true));
+		dataScopeHolder = new DataScopeHolder();
+		dataScopeHolder.setApplicationContext(applicationContext);
+		dataScopeHolder.afterPropertiesSet();
+	}
+
+	@AfterAll
+	static void tearDown() throws Exception {
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("DROP TABLE sys_user");
+		}
+	}
+
+	@AfterEach
+	void clearDataScope() {
+		DataScopeHelper.clearDataScope();
+	}
+
+	@Test
+	void largeInListIsBoundAsSingleArrayParameter() {
+		DataScopeSet dataScopeSet = dataScopeHolder.getDataScopeSet("in");
+		List<BoundSql> inList = new ArrayList<>();
+		List<Long> expected = list(new DataPermissionInterceptor(), dataScopeSet, inList);
+		List<BoundSql> array = new ArrayList<>();
+		List<Long> actual = list(new DataPermissionInterceptor(DbType.H2), dataScopeSet, array);
+
+		assertThat(inList.get(0).getSql()).contains("sys_user.id IN (3, 6, 9");
+		assertThat(inList.get(0).getParameterMappings()).hasSize(1);
+		assertThat(array.get(0).getSql()).endsWith("WHERE id > ? AND sys_user.id = ANY(?) ORDER BY id");
+		assertThat(array.get(0).getParameterMappings()).hasSize(2);
+		assertThat(expected).hasSize(ROWS / 3 - 3).allMatch(id -> id % 3 == 0 && id > 10);
+		assertThat(actual).isEqualTo(expected);
+	}
+
+	@Test
+	void largeNotInListIsBoundAsSingleArrayParameter() {
+		DataScopeSet dataScopeSet = dataScopeHolder.getDataScopeSet("notIn");
+		List<Long> expected = list(new DataPermissionInterceptor(), dataScopeSet, new ArrayList<>());
+		List<BoundSql> array = new ArrayList<>();
+		List<Long> actual = list(new DataPermissionInterceptor(DbType.H2), dataScopeSet, array);
+
+		assertThat(array.get(0).getSql()).endsWith("WHERE id > ? AND NOT sys_user.id = ANY(?) ORDER BY id");
+		assertThat(expected).hasSize(ROWS - ROWS / 3 - 7).noneMatch(id -> id % 3 == 0);
+		assertThat(actual).isEqualTo(expected);
+	}
+
+	/**
+	 * 使用给定的拦截器查询 id 大于 10 的用户
+	 * @param dataPermissionInterceptor 数据权限拦截器
+	 * @param dataScopeSet 本次查询的数据权限
+	 * @param boundSqls 记录改写后的 BoundSql
+	 * @return 用户 id
+	 */
+	private static List<Long> list(DataPermissionInterceptor dataPermissionInterceptor, DataScopeSet dataScopeSet,
+			List<BoundSql> boundSqls) {
+		MybatisConfiguration configuration = new MybatisConfiguration(
+				new Environment("test", new JdbcTransactionFactory(), dataSource));
+		MybatisPlusInterceptor mybatisPlusInterceptor = new MybatisPlusInterceptor();
+		mybatisPlusInterceptor.addInnerInterceptor(dataPermissionInterceptor);
+		mybatisPlusInterceptor.addInnerInterceptor(new InnerInterceptor() {
+
+			@Override
+			public void beforeQuery(Executor executor, MappedStatement ms, Object parameter, RowBounds rowBounds,
+					ResultHandler resultHandler, BoundSql boundSql) {
+				boundSqls.add(boundSql);
+			}
+
+		});
+		configuration.addInterceptor(mybatisPlusInterceptor);
+		configuration.addMapper(UserMapper.class);
+		SqlSessionFactory sqlSessionFactory = new MybatisSqlSessionFactoryBuilder().build(configuration);
+		try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+			DataScopeHelper.startDataScope(dataScopeSet);
+			return sqlSession.getMapper(UserMapper.class).list(10L);
+		}
+	}
+
+	interface UserMapper {
+
+		@Select("SELECT id FROM sys_user WHERE id > #{minId} ORDER BY id")
+		List<Long> list(@Param("minId") long minId);
+
+	}
+
+	/**
+	 * sys_user 注入 id in (3, 6, ..., 3600)，共 1200 个常量，超过默认阈值
+	 */
+	static class MultipleOfThreeDataScope implements DataScope {
+
+		private final boolean not;
+
+		MultipleOfThreeDataScope(boolean not) {
+			this.not = not;
+		}
+
+		@Override
+		public String getDataScopeKey() {
+			return this.not ? "notIn" : "in";
+		}
+
+		@Override
+		public boolean includes(String tableName) {
+			return "sys_user".equals(tableName);
+		}
+
+		@Override
+		public Expression getExpression(String tableName, Alias tableAlias) {
+			List<Expression> values = new ArrayList<>();
+			for (long id = 3; id <= 3600; id += 3) {
+				values.add(new LongValue(id));
+			}
+			return new InExpression(SqlParseUtil.getAliasColumn(tableName, tableAlias, "id"),
+					new ParenthesedExpressionList<>(values)).withNot(this.not);
+		}
+
+	}
+
+}
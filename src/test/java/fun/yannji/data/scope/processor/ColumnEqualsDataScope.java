@@ -0,0 +1,74 @@
+package fun.yannji.data.scope.processor;
+
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.util.SqlParseUtil;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 测试使用的 DataScope，表 TABLES[i] 注入 scope_i = i
+ *
+ * @author yannji
+ */
+final class ColumnEqualsDataScope implements DataScope {
+
+	static final String[] TABLES = { "sys_user", "sys_role", "sys_dept", "sys_order", "sys_user_role" };
+
+	private final String tableName;
+
+	private final String columnName;
+
+	private final long value;
+
+	private ColumnEqualsDataScope(String tableName, String columnName, long value) {
+		this.tableName = tableName;
+		this.columnName = columnName;
+		this.value = value;
+	}
+
+	/**
+	 * 为 {@link #TABLES} 中的每张表创建一个 DataScope
+	 * @return DataScope
+	 */
+	static List<DataScope> create() {
+		List<DataScope> dataScopes = new ArrayList<>(TABLES.length);
+		for (int i = 0; i < TABLES.length; i++) {
+			dataScopes.add(new ColumnEqualsDataScope(TABLES[i], "scope_" + i, i));
+		}
+		return dataScopes;
+	}
+
+	@Override
+	public String getDataScopeKey() {
+		return this.columnName;
+	}
+
+	@Override
+	public boolean includes(String tableName) {
+		return this.tableName.equals(tableName);
+	}
+
+	@Override
+	public Expression getExpression(String tableName, Alias tableAlias) {
+		return new EqualsTo(SqlParseUtil.getAliasColumn(tableName, tableAlias, this.columnName),
+				new LongValue(this.value));
+	}
+
+	@Override
+	public Set<String> getTableNames() {
+		return Collections.singleton(this.tableName);
+	}
+
+	@Override
+	public String getFingerprint() {
+		return "1";
+	}
+
+}
@@ -0,0 +1,156 @@
+package fun.yannji.data.scope.processor;
+
+import com.baomidou.mybatisplus.annotation.TableName;
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.exceptions.MybatisPlusException;
+import com.baomidou.mybatisplus.core.metadata.TableInfoHelper;
+import fun.yannji.data.scope.ColumnScope;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.schema.Column;
+import org.apache.ibatis.builder.MapperBuilderAssistant;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 字段级数据权限只替换出现在结果中的查询列表，无法确定脱敏结果时不返回未脱敏的数据
+ *
+ * @author yannji
+ */
+class ColumnScopeProcessorTest {
+
+	private static final ColumnScope PHONE_SCOPE = new ColumnScope() {
+
+		@Override
+		public String getDataScopeKey() {
+			return "phone";
+		}
+
+		@Override
+		public boolean includes(String tableName) {
+			return "sys_user".equals(tableName) || "sys_customer".equals(tableName);
+		}
+
+		@Override
+		public Expression getColumnExpression(String tableName, String columnName, Column column) {
+			return "phone".equals(columnName) ? ColumnScope.nullValue() : null;
+		}
+
+	};
+
+	@TableName("sys_customer")
+	static class Customer {
+
+		private Long id;
+
+		private String name;
+
+		private String phone;
+
+	}
+
+	@TableName("sys_invoice")
+	static class Invoice {
+
+		private Long id;
+
+		private Long customerId;
+
+		private Long amount;
+
+	}
+
+	@BeforeAll
+	static void initTableInfo() {
+		MapperBuilderAssistant assistant = new MapperBuilderAssistant(new MybatisConfiguration(), "");
+		TableInfoHelper.initTableInfo(assistant, Customer.class);
+		TableInfoHelper.initTableInfo(assistant, Invoice.class);
+	}
+
+	private static String rewrite(String sql) {
+		return new DataScopeSqlProcessor().rewrite(sql, Collections.singletonList(PHONE_SCOPE)).getSql();
+	}
+
+	@Test
+	void topLevelSelectIsMasked() {
+		assertThat(rewrite("SELECT u.id, u.phone FROM sys_user u"))
+			.isEqualTo("SELECT u.id, NULL AS phone FROM sys_user u");
+	}
+
+	@Test
+	void derivedTableIsMasked() {
+		assertThat(rewrite("SELECT t.phone FROM (SELECT id, phone FROM sys_user) t"))
+			.isEqualTo("SELECT t.phone FROM (SELECT id, NULL AS phone FROM sys_user) t");
+	}
+
+	@Test
+	void setOperationBranchesAreMasked() {
+		assertThat(rewrite("SELECT phone FROM sys_user UNION SELECT phone FROM sys_user"))
+			.isEqualTo("SELECT NULL AS phone FROM sys_user UNION SELECT NULL AS phone FROM sys_user");
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "SELECT id FROM orders WHERE contact_phone IN (SELECT phone FROM sys_user)",
+			"UPDATE orders SET contact_phone = (SELECT phone FROM sys_user WHERE id = ?)",
+			"SELECT id FROM orders o WHERE EXISTS (SELECT * FROM sys_user u WHERE u.id = o.user_id)",
+			"SELECT id FROM orders WHERE contact_phone IN (SELECT phone FROM sys_user GROUP BY phone HAVING COUNT(*) > 1)",
+			"SELECT o.id FROM orders o JOIN sys_contact c ON c.phone IN (SELECT phone FROM sys_user)",
+			"SELECT user_id, COUNT(*) FROM orders GROUP BY user_id HAVING MAX(contact_phone) = (SELECT MAX(phone) FROM sys_user)",
+			"INSERT INTO orders (contact_phone) SELECT phone FROM sys_user WHERE id = ?",
+			"DELETE FROM orders WHERE contact_phone IN (SELECT phone FROM sys_user)" })
+	void subqueriesOutsideTheResultAreNotMasked(String sql) {
+		assertThat(rewrite(sql)).isEqualTo(sql);
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "SELECT * FROM sys_user u", "SELECT u.* FROM sys_user u",
+			"SELECT o.id, u.* FROM orders o JOIN sys_user u ON u.id = o.user_id" })
+	void selectAllWithoutTableInfoFails(String sql) {
+		assertThatThrownBy(() -> rewrite(sql)).isInstanceOf(MybatisPlusException.class)
+			.hasMessageContaining("no TableInfo found for table sys_user");
+	}
+
+	@Test
+	void selectAllIsExpandedByTableInfo() {
+		assertThat(rewrite("SELECT * FROM sys_customer c"))
+			.isEqualTo("SELECT c.id, c.name, NULL AS phone FROM sys_customer c");
+		assertThat(rewrite("SELECT c.*, i.* FROM sys_customer c JOIN sys_invoice i ON i.customer_id = c.id"))
+			.isEqualTo("SELECT c.id, c.name, NULL AS phone, i.* FROM sys_customer c "
+					+ "JOIN sys_invoice i ON i.customer_id = c.id");
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "SELECT IFNULL(phone, '') FROM sys_user", "SELECT u.id, u.phone || '' AS phone FROM sys_user u",
+			"SELECT CASE WHEN u.id > 0 THEN u.phone END FROM sys_user u", "SELECT MAX(phone) FROM sys_user",
+			"SELECT UPPER(u.phone) FROM sys_user u JOIN orders o ON o.user_id = u.id" })
+	void computedItemsReferencingMaskedColumnsFail(String sql) {
+		assertThatThrownBy(() -> rewrite(sql)).isInstanceOf(MybatisPlusException.class)
+			.hasMessageContaining("is referenced in select item");
+	}
+
+	@Test
+	void computedItemsWithoutMaskedColumnsAreKept() {
+		assertThat(rewrite("SELECT UPPER(name), id + 1 FROM sys_user"))
+			.isEqualTo("SELECT UPPER(name), id + 1 FROM sys_user");
+	}
+
+	@Test
+	void unqualifiedColumnInJoinWithoutTableInfoFails() {
+		assertThatThrownBy(() -> rewrite("SELECT o.id, phone FROM orders o JOIN sys_user u ON u.id = o.user_id"))
+			.isInstanceOf(MybatisPlusException.class)
+			.hasMessageContaining("needs a table qualifier");
+	}
+
+	@Test
+	void unqualifiedColumnInJoinIsResolvedByTableInfo() {
+		assertThat(rewrite("SELECT amount, phone FROM sys_invoice i JOIN sys_customer c ON c.id = i.customer_id"))
+			.isEqualTo("SELECT amount, NULL AS phone FROM sys_invoice i JOIN sys_customer c ON c.id = i.customer_id");
+	}
+
+}
@@ -0,0 +1,89 @@
+package fun.yannji.data.scope.processor;
+
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.holder.DataScopeTableIndex;
+import fun.yannji.data.scope.metrics.DataScopeMetrics;
+import fun.yannji.data.scope.util.SqlParseUtil;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.operators.conditional.OrExpression;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 改写计划与 AST 改写的差分校验
+ * <p>
+ * 同一条 SQL 编译为改写计划后生成的结果应与直接 AST 改写的结果一致，DataScope 返回 or 表达式时两条路径都需要加上括号
+ *
+ * @author yannji
+ */
+class DataScopeRewritePlanTest {
+
+	private static final DataScopeTableIndex TABLE_INDEX = DataScopeTableIndex.of(createDataScopes());
+
+	private static List<DataScope> createDataScopes() {
+		List<DataScope> dataScopes = new ArrayList<>(ColumnEqualsDataScope.create());
+		dataScopes.add(new OwnerOrDeptDataScope());
+		return dataScopes;
+	}
+
+	private static DataScopeSqlProcessor processor() {
+		DataScopeSqlProcessor processor = new DataScopeSqlProcessor();
+		processor.setFastPathEnabled(false);
+		return processor;
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "SELECT id FROM sys_user", "SELECT id FROM sys_user WHERE status = ?",
+			"SELECT id FROM sys_user WHERE status = ? OR type = ?",
+			"SELECT u.id FROM sys_user u, sys_role r WHERE r.id = u.role_id",
+			"SELECT u.id FROM sys_user u LEFT JOIN sys_dept d ON d.id = u.dept_id WHERE u.id = ?",
+			"SELECT id FROM sys_role WHERE user_id IN (SELECT id FROM sys_user WHERE status = ? OR type = ?)",
+			"UPDATE sys_user SET status = ? WHERE id = ? OR name = ?", "DELETE FROM sys_user WHERE id = ?" })
+	void planMatchesAstRewrite(String sql) {
+		String expected = processor().rewrite(sql, TABLE_INDEX).getSql();
+		String actual = processor().compile(sql, TABLE_INDEX).resolve(DataScopeMetrics.NOOP, null).getSql();
+
+		assertThat(actual).isEqualTo(expected);
+		assertThat(actual).containsPattern("\\((\\w+\\.)?owner_id = 1 OR (\\w+\\.)?dept_id = 2\\)");
+	}
+
+	/**
+	 * sys_user 注入 owner_id = 1 OR dept_id = 2，表达式是动态的，不会被缓存
+	 */
+	private static final class OwnerOrDeptDataScope implements DataScope {
+
+		@Override
+		public String getDataScopeKey() {
+			return "owner_or_dept";
+		}
+
+		@Override
+		public boolean includes(String tableName) {
+			return "sys_user".equals(tableName);
+		}
+
+		@Override
+		public Expression getExpression(String tableName, Alias tableAlias) {
+			return new OrExpression(
+					new EqualsTo(SqlParseUtil.getAliasColumn(tableName, tableAlias, "owner_id"), new LongValue(1)),
+					new EqualsTo(SqlParseUtil.getAliasColumn(tableName, tableAlias, "dept_id"), new LongValue(2)));
+		}
+
+		@Override
+		public Set<String> getTableNames() {
+			return Collections.singleton("sys_user");
+		}
+
+	}
+
+}
@@ -0,0 +1,110 @@
+package fun.yannji.data.scope.processor;
+
+import com.baomidou.mybatisplus.core.exceptions.MybatisPlusException;
+import fun.yannji.data.scope.ParameterizedDataScope;
+import fun.yannji.data.scope.util.SqlLiteralSyntax;
+import fun.yannji.data.scope.util.SqlParseUtil;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.JdbcParameter;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 参数化表达式标记的扫描
+ *
+ * @author yannji
+ */
+class DataScopeSqlTest {
+
+	private static final ParameterizedDataScope DEPT_SCOPE = new ParameterizedDataScope() {
+
+		@Override
+		public String getDataScopeKey() {
+			return "dept";
+		}
+
+		@Override
+		public boolean includes(String tableName) {
+			return "sys_user".equals(tableName);
+		}
+
+		@Override
+		public Expression getExpression(String tableName, Alias tableAlias) {
+			return new EqualsTo(SqlParseUtil.getAliasColumn(tableName, tableAlias, "dept_id"), new JdbcParameter());
+		}
+
+		@Override
+		public List<Object> getParameterValues(String tableName, Alias tableAlias) {
+			return Collections.singletonList(1L);
+		}
+
+	};
+
+	private static DataScopeSql rewrite(String sql, SqlLiteralSyntax literalSyntax) {
+		DataScopeSqlProcessor processor = new DataScopeSqlProcessor();
+		processor.setFastPathEnabled(false);
+		processor.setLiteralSyntax(literalSyntax);
+		return processor.rewrite(sql, Collections.singletonList(DEPT_SCOPE));
+	}
+
+	private static List<ParameterSource> sources() {
+		List<ParameterSource> sources = new ArrayList<>();
+		sources.add(new ParameterSource(DEPT_SCOPE, "sys_user", (Alias) null));
+		return sources;
+	}
+
+	@Test
+	void standardLiteralEndingWithBackslashDoesNotSwallowMarkers() {
+		DataScopeSql dataScopeSql = rewrite("SELECT id FROM sys_user WHERE path = 'C:\\' AND id = ?",
+				SqlLiteralSyntax.STANDARD);
+
+		assertThat(dataScopeSql.getSql())
+			.isEqualTo("SELECT id FROM sys_user WHERE path = 'C:\\' AND id = ? AND sys_user.dept_id = ?");
+		assertThat(dataScopeSql.getParameterSources().get(0).getPositions()).containsExactly(1);
+	}
+
+	@Test
+	void backslashEscapedQuoteStaysInsideLiteral() {
+		DataScopeSql dataScopeSql = DataScopeSql.of(
+				"SELECT id FROM sys_user WHERE name = 'it\\'s ?' AND id = ? AND /*ds:0*/sys_user.dept_id = ?/*ds*/",
+				sources(), null, null, SqlLiteralSyntax.BACKSLASH_ESCAPES);
+
+		assertThat(dataScopeSql.getSql())
+			.isEqualTo("SELECT id FROM sys_user WHERE name = 'it\\'s ?' AND id = ? AND sys_user.dept_id = ?");
+		assertThat(dataScopeSql.getParameterSources().get(0).getPositions()).containsExactly(1);
+	}
+
+	@Test
+	void unknownSyntaxWithoutBackslash() {
+		DataScopeSql dataScopeSql = rewrite("SELECT id FROM sys_user WHERE name = 'a''b' AND id = ?", null);
+
+		assertThat(dataScopeSql.getParameterSources().get(0).getPositions()).containsExactly(1);
+	}
+
+	@Test
+	void unknownSyntaxWithAmbiguousBackslashFails() {
+		assertThatThrownBy(() -> rewrite("SELECT id FROM sys_user WHERE path = 'C:\\' AND id = ?", null))
+			.isInstanceOf(MybatisPlusException.class)
+			.hasMessageContaining("DbType");
+	}
+
+	@Test
+	void onlyWellFormedMarkersAreRecognized() {
+		DataScopeSql dataScopeSql = DataScopeSql.of(
+				"SELECT /*ds:x*/ id /*ds:9*/ FROM sys_user WHERE id = ? AND /*ds:0*/sys_user.dept_id = ?/*ds*/",
+				sources(), null, null, SqlLiteralSyntax.STANDARD);
+
+		assertThat(dataScopeSql.getSql())
+			.isEqualTo("SELECT /*ds:x*/ id /*ds:9*/ FROM sys_user WHERE id = ? AND sys_user.dept_id = ?");
+		assertThat(dataScopeSql.getParameterSources().get(0).getPositions()).containsExactly(1);
+	}
+
+}
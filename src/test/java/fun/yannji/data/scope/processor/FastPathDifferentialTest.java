@@ -0,0 +1,126 @@
+package fun.yannji.data.scope.processor;
+
+import com.baomidou.mybatisplus.core.exceptions.MybatisPlusException;
+import com.baomidou.mybatisplus.extension.parser.JsqlParserGlobal;
+import fun.yannji.data.scope.holder.DataScopeTableIndex;
+import fun.yannji.data.scope.util.SqlLiteralSyntax;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 快速改写与 AST 改写的差分校验
+ * <p>
+ * 对同一条 SQL 分别开启、关闭快速改写，快速改写的结果重新解析、序列化后应与 AST 改写的结果一致；
+ * 语料同时包含不应走快速改写的语句，用于确认回退路径
+ *
+ * @author yannji
+ */
+class FastPathDifferentialTest {
+
+	private static final DataScopeTableIndex TABLE_INDEX = DataScopeTableIndex.of(ColumnEqualsDataScope.create());
+
+	private static String rewrite(String sql, boolean fastPathEnabled) {
+		DataScopeSqlProcessor processor = new DataScopeSqlProcessor();
+		processor.setFastPathEnabled(fastPathEnabled);
+		processor.setLiteralSyntax(SqlLiteralSyntax.STANDARD);
+		return processor.rewrite(sql, TABLE_INDEX).getSql();
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = {
+			// 可以快速改写的单表查询
+			"SELECT id, name FROM sys_user", "SELECT id, name FROM sys_user WHERE id = ?",
+			"select id, name from sys_user u where u.id = ? order by u.id",
+			"SELECT u.id FROM sys_user AS u WHERE u.status = ? OR u.type = ? ORDER BY u.id LIMIT ?",
+			"SELECT id FROM sys_user WHERE (status = ? OR type = ?) AND deleted = 0",
+			"SELECT id FROM sys_user WHERE NOT status = ? AND create_time BETWEEN ? AND ?",
+			"SELECT COUNT(*) FROM sys_order WHERE user_id IN (?, ?, ?)",
+			"SELECT dept_id, COUNT(1) FROM sys_user GROUP BY dept_id HAVING COUNT(1) > ?",
+			"SELECT dept_id, COUNT(1) FROM sys_user WHERE status = ? GROUP BY dept_id ORDER BY dept_id",
+			"SELECT id FROM `sys_user` WHERE name LIKE CONCAT('%', ?, '%') LIMIT ?, ?",
+			"SELECT id, 'where x or y' AS s FROM sys_role r WHERE r.name = 'a or b' ORDER BY r.id DESC",
+			"SELECT id, EXTRACT(YEAR FROM create_time) FROM sys_order o WHERE o.amount > ? LIMIT ? OFFSET ?",
+			"SELECT id, ROW_NUMBER() OVER (PARTITION BY dept_id ORDER BY id) FROM sys_user WHERE status = ?",
+			"SELECT u.id FROM sys_user u WHERE u.order_no = ? FOR UPDATE",
+			"SELECT CASE WHEN status = 1 THEN 'a' ELSE 'b' END FROM sys_dept d WHERE d.parent_id = ?",
+			"SELECT id FROM sys_user\n\tWHERE\n\t\tstatus = ?\n\t\tAND deleted = 0\n\tORDER BY id",
+			"SELECT id FROM sys_user_role ur WHERE ur.role_id = ? OR ur.user_id = ? AND ur.deleted = 0",
+			"SELECT id FROM unscoped_table WHERE id = ?",
+			"SELECT id, name, status FROM sys_user WHERE id = ?",
+			"SELECT id, amount FROM sys_order WHERE status = ? AND id IN (?, ?, ?, ?, ?)",
+			// 需要回退到 AST 改写的语句
+			"SELECT u.id FROM sys_user u LEFT JOIN sys_dept d ON d.id = u.dept_id WHERE u.id = ?",
+			"SELECT u.id FROM sys_user u, sys_dept d WHERE d.id = u.dept_id",
+			"SELECT id FROM sys_user WHERE dept_id IN (SELECT id FROM sys_dept WHERE parent_id = ?)",
+			"SELECT id FROM (SELECT id FROM sys_user) t WHERE t.id = ?",
+			"SELECT id FROM sys_user WHERE status = ? UNION SELECT id FROM sys_role WHERE status = ?",
+			"WITH a AS (SELECT id FROM sys_user) SELECT id FROM a",
+			"SELECT id FROM public.sys_user WHERE id = ?",
+			"SELECT id FROM \"sys_user\" WHERE id = ?",
+			"SELECT id FROM sys_user /* hint */ WHERE id = ?",
+			"SELECT u.id, r.name, d.name FROM sys_user u RIGHT JOIN sys_role r ON r.id = u.role_id "
+					+ "INNER JOIN sys_dept d ON d.id = u.dept_id LEFT JOIN sys_order o ON o.user_id = u.id, "
+					+ "sys_user_role ur WHERE ur.user_id = u.id AND u.status = ?",
+			"SELECT u.id, (SELECT COUNT(1) FROM sys_order o WHERE o.user_id = u.id) AS order_count "
+					+ "FROM (SELECT id, dept_id FROM sys_user WHERE status = ?) u "
+					+ "WHERE u.dept_id IN (SELECT id FROM sys_dept WHERE parent_id = ? "
+					+ "AND EXISTS (SELECT 1 FROM sys_role r WHERE r.dept_id = sys_dept.id))",
+			"SELECT id, name FROM sys_user WHERE status = ? UNION ALL SELECT id, name FROM sys_role WHERE status = ?",
+			"WITH active_user AS (SELECT id FROM sys_user WHERE status = ?) "
+					+ "SELECT ur.* FROM sys_user_role ur JOIN active_user a ON a.id = ur.user_id",
+			// 字符串常量中含有反斜杠
+			"SELECT id FROM sys_user WHERE x = 'C:\\' OR owner = ? OR y = '\\'",
+			"SELECT id FROM sys_user WHERE path LIKE 'a\\_%' ORDER BY id",
+			// 无法按引号规则跳过的标识符及常量
+			"SELECT id FROM sys_user WHERE a = $$ ORDER $$", "SELECT id FROM sys_user WHERE a = $$ x OR y $$ AND b = ?",
+			"SELECT id FROM sys_user WHERE name = N'ORDER BY' OR id = ?" })
+	void fastPathMatchesAst(String sql) throws Exception {
+		String fast = rewrite(sql, true);
+		String ast = rewrite(sql, false);
+
+		assertThat(JsqlParserGlobal.parse(fast).toString()).isEqualTo(ast);
+	}
+
+	@Test
+	void dollarQuotedTextIsNotTreatedAsClauses() {
+		assertThat(rewrite("SELECT id FROM sys_user WHERE a = $$ ORDER $$", true))
+			.isEqualTo("SELECT id FROM sys_user WHERE a = $$ ORDER $$ AND sys_user.scope_0 = 0");
+	}
+
+	/**
+	 * 未开启方括号标识符的解析器无法解析 [order]，快速改写同样不能输出拼接错位的 SQL
+	 */
+	@Test
+	void bracketQuotedNameFallsBackToParser() {
+		String sql = "SELECT id FROM sys_user WHERE [order] = 1";
+
+		assertThat(SimpleSelect.parse(sql)).isNull();
+		assertThatThrownBy(() -> rewrite(sql, true)).isInstanceOf(MybatisPlusException.class);
+		assertThatThrownBy(() -> rewrite(sql, false)).isInstanceOf(MybatisPlusException.class);
+	}
+
+	@Test
+	void backslashLiteralKeepsOrConditionsWrapped() {
+		assertThat(rewrite("SELECT id FROM sys_user WHERE x = 'C:\\' OR owner = ? OR y = '\\'", true))
+			.isEqualTo("SELECT id FROM sys_user WHERE (x = 'C:\\' OR owner = ? OR y = '\\') AND sys_user.scope_0 = 0");
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "SELECT id FROM sys_user WHERE x = 'C:\\' OR owner = ? OR y = '\\'",
+			"SELECT id FROM sys_user WHERE name = 'it\\'s' OR id = ?", "SELECT id FROM sys_user final WHERE id = ?",
+			"SELECT id FROM sys_user FINAL", "SELECT id FROM sys_user SAMPLE 0.1 WHERE id = ?",
+			"SELECT id FROM sys_user u PREWHERE u.id = ?", "SELECT id FROM sys_user WHERE id = ? SETTINGS max_threads = 1",
+			"SELECT id FROM sys_user AS OF TIMESTAMP ? WHERE id = ?", "SELECT id FROM sys_user WHERE [order] = 1",
+			"SELECT id FROM sys_user WHERE a = $$ ORDER $$", "SELECT id FROM sys_user WHERE a = $tag$ x $tag$",
+			"SELECT id FROM sys_user WHERE a = $1",
+			"SELECT id FROM sys_user WHERE a = E'x' OR b = ?", "SELECT id FROM sys_user WHERE a = N'x' ORDER BY id",
+			"SELECT id FROM sys_user WHERE a = U&'x' ORDER BY id", "SELECT id FROM sys_user WHERE a = q'[it's]'" })
+	void unsafeStatementsAreNotRecognized(String sql) {
+		assertThat(SimpleSelect.parse(sql)).isNull();
+	}
+
+}
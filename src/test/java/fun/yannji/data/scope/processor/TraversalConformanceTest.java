@@ -0,0 +1,168 @@
+package fun.yannji.data.scope.processor;
+
+import com.baomidou.mybatisplus.annotation.DbType;
+import com.baomidou.mybatisplus.extension.parser.JsqlParserGlobal;
+import fun.yannji.data.scope.holder.DataScopeTableIndex;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 各数据库方言下 SQL 遍历的一致性校验
+ * <p>
+ * 语料按 {@link DbType} 分组，覆盖 recursive CTE、嵌套 with、LATERAL / APPLY、窗口函数、insert values、
+ * 多表 update/delete 以及 having、order by、qualify、group by、on、limit/offset、update set 等位置中的子查询。每条语句改写后需要满足：
+ * <ul>
+ * <li>改写结果可以被重新解析</li>
+ * <li>注入的条件数量等于语句中需要过滤的表引用数量，即每个表引用都在其所在查询中被过滤</li>
+ * <li>查询的层数不变，条件直接下推到表所在的 where 或 on 中，不在外层包装子查询</li>
+ * </ul>
+ *
+ * @author yannji
+ */
+class TraversalConformanceTest {
+
+	private static final Pattern PREDICATE = Pattern.compile("\\bscope_\\d+ = \\d+");
+
+	private static final Pattern SELECT = Pattern.compile("\\bSELECT\\b", Pattern.CASE_INSENSITIVE);
+
+	private static final DataScopeTableIndex TABLE_INDEX = DataScopeTableIndex.of(ColumnEqualsDataScope.create());
+
+	enum ConformanceCase {
+
+		MYSQL_JOIN_ON_SUBQUERY(DbType.MYSQL, 3,
+				"SELECT u.id FROM sys_user u JOIN sys_dept d ON d.id = u.dept_id AND d.id IN (SELECT dept_id FROM sys_role)"),
+
+		MYSQL_NESTED_WITH(DbType.MYSQL, 1, "SELECT * FROM (WITH x AS (SELECT id FROM sys_user) SELECT id FROM x) y"),
+
+		MYSQL_LATERAL(DbType.MYSQL, 2, "SELECT u.id, o.total FROM sys_user u, "
+				+ "LATERAL (SELECT SUM(amount) AS total FROM sys_order o WHERE o.user_id = u.id) o"),
+
+		MYSQL_ORDER_BY_SUBQUERY(DbType.MYSQL, 2,
+				"SELECT id FROM sys_user u ORDER BY (SELECT MAX(amount) FROM sys_order o WHERE o.user_id = u.id) LIMIT ?"),
+
+		MYSQL_UPDATE_SET_SUBQUERY(DbType.MYSQL, 2,
+				"UPDATE sys_user SET amount = (SELECT SUM(amount) FROM sys_order o WHERE o.user_id = sys_user.id)"),
+
+		MYSQL_DELETE_EXISTS(DbType.MYSQL, 2,
+				"DELETE FROM sys_user WHERE EXISTS (SELECT 1 FROM sys_order o WHERE o.user_id = sys_user.id)"),
+
+		MYSQL_INSERT_VALUES_SUBQUERY(DbType.MYSQL, 1, "INSERT INTO audit_log (user_id, role_id) "
+				+ "VALUES (?, (SELECT id FROM sys_role WHERE code = ?))"),
+
+		MYSQL_INSERT_MULTI_ROW_VALUES_SUBQUERY(DbType.MYSQL, 2, "INSERT INTO audit_log (user_id, role_id) "
+				+ "VALUES (?, (SELECT id FROM sys_role WHERE code = ?)), ((SELECT MAX(id) FROM sys_user), ?)"),
+
+		MYSQL_UPDATE_JOIN(DbType.MYSQL, 2,
+				"UPDATE sys_user u JOIN sys_dept d ON d.id = u.dept_id SET u.status = ? WHERE d.status = ?"),
+
+		MYSQL_UPDATE_LEFT_JOIN_SUBQUERY(DbType.MYSQL, 3, "UPDATE sys_user u LEFT JOIN sys_dept d ON d.id = u.dept_id "
+				+ "SET u.status = ? WHERE d.id IN (SELECT dept_id FROM sys_role)"),
+
+		MYSQL_DELETE_JOIN(DbType.MYSQL, 2,
+				"DELETE o FROM sys_order o JOIN sys_user u ON u.id = o.user_id WHERE u.status = ?"),
+
+		POSTGRE_SQL_RECURSIVE_CTE(DbType.POSTGRE_SQL, 2, "WITH RECURSIVE t AS (SELECT id, parent_id FROM sys_dept "
+				+ "WHERE id = ? UNION ALL SELECT d.id, d.parent_id FROM sys_dept d JOIN t ON d.parent_id = t.id) "
+				+ "SELECT * FROM t"),
+
+		POSTGRE_SQL_LEFT_JOIN_LATERAL(DbType.POSTGRE_SQL, 2, "SELECT u.id, o.total FROM sys_user u LEFT JOIN "
+				+ "LATERAL (SELECT SUM(amount) AS total FROM sys_order o WHERE o.user_id = u.id) o ON true"),
+
+		POSTGRE_SQL_HAVING_SUBQUERY(DbType.POSTGRE_SQL, 2, "SELECT dept_id, COUNT(*) FROM sys_user GROUP BY dept_id "
+				+ "HAVING COUNT(*) > (SELECT COUNT(*) FROM sys_order)"),
+
+		POSTGRE_SQL_WINDOW_PARTITION_SUBQUERY(DbType.POSTGRE_SQL, 2,
+				"SELECT id, SUM(amount) OVER (PARTITION BY (SELECT 1 FROM sys_role LIMIT 1)) FROM sys_order"),
+
+		POSTGRE_SQL_WINDOW_ORDER_BY_SUBQUERY(DbType.POSTGRE_SQL, 2,
+				"SELECT id, SUM(amount) OVER (ORDER BY (SELECT MAX(id) FROM sys_role)) FROM sys_order"),
+
+		POSTGRE_SQL_FILTER_SUBQUERY(DbType.POSTGRE_SQL, 2,
+				"SELECT COUNT(*) FILTER (WHERE dept_id IN (SELECT id FROM sys_role)) FROM sys_user"),
+
+		POSTGRE_SQL_LIMIT_SUBQUERY(DbType.POSTGRE_SQL, 2,
+				"SELECT id FROM sys_user ORDER BY id LIMIT (SELECT COUNT(*) FROM sys_role)"),
+
+		POSTGRE_SQL_UPDATE_FROM(DbType.POSTGRE_SQL, 2,
+				"UPDATE sys_user SET amount = o.amount FROM sys_order o WHERE o.user_id = sys_user.id"),
+
+		POSTGRE_SQL_DELETE_USING(DbType.POSTGRE_SQL, 2,
+				"DELETE FROM sys_order o USING sys_user u WHERE u.id = o.user_id AND u.status = ?"),
+
+		POSTGRE_SQL_UPDATE_WITH(DbType.POSTGRE_SQL, 2,
+				"WITH d AS (SELECT id FROM sys_dept) UPDATE sys_user SET status = ? WHERE dept_id IN (SELECT id FROM d)"),
+
+		ORACLE_CONNECT_BY_SUBQUERY(DbType.ORACLE, 2, "SELECT id FROM sys_user WHERE ROWNUM <= ? AND dept_id IN "
+				+ "(SELECT id FROM sys_dept START WITH parent_id = 0 CONNECT BY PRIOR id = parent_id)"),
+
+		ORACLE_WITHIN_GROUP_ORDER_BY_SUBQUERY(DbType.ORACLE, 2, "SELECT LISTAGG(name, ',') WITHIN GROUP "
+				+ "(ORDER BY (SELECT MAX(id) FROM sys_role)) FROM sys_user"),
+
+		ORACLE_ROWNUM_PAGINATION(DbType.ORACLE, 1, "SELECT * FROM (SELECT t.*, ROWNUM rn FROM "
+				+ "(SELECT id FROM sys_user ORDER BY id) t WHERE ROWNUM <= ?) WHERE rn > ?"),
+
+		ORACLE_CASE_EXISTS(DbType.ORACLE, 2, "SELECT id, CASE WHEN EXISTS "
+				+ "(SELECT 1 FROM sys_order o WHERE o.user_id = u.id) THEN 1 ELSE 0 END FROM sys_user u"),
+
+		SQL_SERVER_OUTER_APPLY(DbType.SQL_SERVER, 2, "SELECT TOP 10 u.id FROM sys_user u OUTER APPLY "
+				+ "(SELECT TOP 1 amount FROM sys_order o WHERE o.user_id = u.id ORDER BY o.id DESC) o"),
+
+		SQL_SERVER_RECURSIVE_CTE(DbType.SQL_SERVER, 2, "WITH t AS (SELECT id, parent_id FROM sys_dept UNION ALL "
+				+ "SELECT d.id, d.parent_id FROM sys_dept d JOIN t ON d.parent_id = t.id) SELECT * FROM t"),
+
+		SQL_SERVER_OFFSET_FETCH(DbType.SQL_SERVER, 1,
+				"SELECT id FROM sys_user ORDER BY id OFFSET ? ROWS FETCH NEXT ? ROWS ONLY"),
+
+		SQL_SERVER_OFFSET_SUBQUERY(DbType.SQL_SERVER, 2,
+				"SELECT id FROM sys_user ORDER BY id OFFSET (SELECT COUNT(*) FROM sys_role) ROWS"),
+
+		H2_QUALIFY_SUBQUERY(DbType.H2, 2, "SELECT id, ROW_NUMBER() OVER (ORDER BY id) rn FROM sys_user "
+				+ "QUALIFY rn <= (SELECT COUNT(*) FROM sys_order)"),
+
+		H2_GROUP_BY_SUBQUERY(DbType.H2, 2, "SELECT id FROM sys_user GROUP BY id, (SELECT 1 FROM sys_role LIMIT 1)"),
+
+		H2_INSERT_SELECT_JOIN_ON_SUBQUERY(DbType.H2, 3, "INSERT INTO sys_user_role (user_id, role_id) "
+				+ "SELECT u.id, r.id FROM sys_user u JOIN sys_role r ON r.code IN (SELECT code FROM sys_role)");
+
+		private final DbType dbType;
+
+		private final int predicates;
+
+		private final String sql;
+
+		ConformanceCase(DbType dbType, int predicates, String sql) {
+			this.dbType = dbType;
+			this.predicates = predicates;
+			this.sql = sql;
+		}
+
+	}
+
+	@ParameterizedTest
+	@EnumSource(ConformanceCase.class)
+	void everyTableReferenceIsFilteredInPlace(ConformanceCase conformanceCase) throws Exception {
+		DataScopeSqlProcessor processor = new DataScopeSqlProcessor();
+		processor.setValueSetStrategy(DataScopeValueSetStrategy.of(conformanceCase.dbType));
+
+		String rewritten = processor.rewrite(conformanceCase.sql, TABLE_INDEX).getSql();
+
+		JsqlParserGlobal.parse(rewritten);
+		assertThat(count(PREDICATE, rewritten)).as(rewritten).isEqualTo(conformanceCase.predicates);
+		assertThat(count(SELECT, rewritten)).as(rewritten).isEqualTo(count(SELECT, conformanceCase.sql));
+	}
+
+	private static int count(Pattern pattern, String sql) {
+		Matcher matcher = pattern.matcher(sql);
+		int count = 0;
+		while (matcher.find()) {
+			count++;
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,167 @@
+package fun.yannji.data.scope.tenant;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.core.MybatisSqlSessionFactoryBuilder;
+import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import com.baomidou.mybatisplus.extension.plugins.handler.TenantLineHandler;
+import com.baomidou.mybatisplus.extension.plugins.inner.InnerInterceptor;
+import fun.yannji.data.scope.holder.DataScopeHolder;
+import fun.yannji.data.scope.interceptor.DataPermissionInterceptor;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 多行 insert ... values 的每一行都填充租户字段，租户 id 在每次执行时绑定
+ *
+ * @author yannji
+ */
+class TenantLineDataScopeTest {
+
+	private final List<String> preparedSqls = new ArrayList<>();
+
+	private final DataPermissionInterceptor interceptor = new DataPermissionInterceptor();
+
+	private SqlSessionFactory sqlSessionFactory;
+
+	private long tenantId = 7;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		UnpooledDataSource dataSource = new UnpooledDataSource("org.h2.Driver",
+				"jdbc:h2:mem:tenant_insert;DB_CLOSE_DELAY=-1", "sa", "");
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE sys_user (id BIGINT PRIMARY KEY, name VARCHAR(32), tenant_id BIGINT)");
+		}
+
+		StaticApplicationContext applicationContext = new StaticApplicationContext();
+		applicationContext.getBeanFactory().registerSingleton("tenant", new TenantLineDataScope(new TenantLineHandler() {
+
+			@Override
+			public Expression getTenantId() {
+				return new LongValue(TenantLineDataScopeTest.this.tenantId);
+			}
+
+		}));
+		DataScopeHolder dataScopeHolder = new DataScopeHolder();
+		dataScopeHolder.setApplicationContext(applicationContext);
+		dataScopeHolder.afterPropertiesSet();
+		this.interceptor.setDataScopeHolder(dataScopeHolder);
+
+		MybatisConfiguration configuration = new MybatisConfiguration(
+				new Environment("test", new JdbcTransactionFactory(), dataSource));
+		MybatisPlusInterceptor mybatisPlusInterceptor = new MybatisPlusInterceptor();
+		mybatisPlusInterceptor.addInnerInterceptor(this.interceptor);
+		mybatisPlusInterceptor.addInnerInterceptor(new InnerInterceptor() {
+
+			@Override
+			public void beforePrepare(StatementHandler sh, Connection connection, Integer transactionTimeout) {
+				TenantLineDataScopeTest.this.preparedSqls.add(sh.getBoundSql().getSql());
+			}
+
+		});
+		configuration.addInterceptor(mybatisPlusInterceptor);
+		configuration.addMapper(UserMapper.class);
+		this.sqlSessionFactory = new MybatisSqlSessionFactoryBuilder().build(configuration);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		try (SqlSession sqlSession = this.sqlSessionFactory.openSession();
+				Connection connection = sqlSession.getConnection();
+				Statement statement = connection.createStatement()) {
+			statement.execute("DROP TABLE sys_user");
+		}
+	}
+
+	@Test
+	void everyRowOfMultiRowValuesIsFilled() throws Exception {
+		try (SqlSession sqlSession = this.sqlSessionFactory.openSession(true)) {
+			UserMapper userMapper = sqlSession.getMapper(UserMapper.class);
+			assertThat(userMapper.insertNames(1L, 2L, 3L)).isEqualTo(3);
+			this.tenantId = 8;
+			assertThat(userMapper.insertNames(4L, 5L, 6L)).isEqualTo(3);
+
+			assertThat(this.preparedSqls).containsOnly("INSERT INTO sys_user (id, name, tenant_id) "
+					+ "VALUES (?, 'a', ?), (?, 'b', ?), (?, 'c', ?)");
+			// 改写计划只编译一次，租户 id 在每次执行时获取
+			assertThat(this.interceptor.getPlanCache().size()).isEqualTo(1);
+			assertThat(rows(sqlSession)).containsExactly("1:a:7", "2:b:7", "3:c:7", "4:a:8", "5:b:8", "6:c:8");
+			assertThat(userMapper.listIds()).containsExactly(4L, 5L, 6L);
+		}
+	}
+
+	@Test
+	void singleColumnRowsAreFilled() throws Exception {
+		try (SqlSession sqlSession = this.sqlSessionFactory.openSession(true)) {
+			assertThat(sqlSession.getMapper(UserMapper.class).insertIds(1L, 2L)).isEqualTo(2);
+
+			assertThat(this.preparedSqls).containsExactly("INSERT INTO sys_user (id, tenant_id) VALUES (?, ?), (?, ?)");
+			assertThat(rows(sqlSession)).containsExactly("1:null:7", "2:null:7");
+		}
+	}
+
+	@Test
+	void rowsWithTenantColumnAreKept() throws Exception {
+		try (SqlSession sqlSession = this.sqlSessionFactory.openSession(true)) {
+			assertThat(sqlSession.getMapper(UserMapper.class).insertWithTenant(1L, 2L)).isEqualTo(2);
+
+			assertThat(this.preparedSqls)
+				.containsExactly("INSERT INTO sys_user (id, tenant_id) VALUES (?, 9), (?, 9)");
+			assertThat(rows(sqlSession)).containsExactly("1:null:9", "2:null:9");
+		}
+	}
+
+	/**
+	 * 不经过拦截器直接读取所有行
+	 * @param sqlSession SqlSession
+	 * @return id:name:tenant_id
+	 */
+	private static List<String> rows(SqlSession sqlSession) throws Exception {
+		List<String> rows = new ArrayList<>();
+		try (Statement statement = sqlSession.getConnection().createStatement();
+				ResultSet resultSet = statement.executeQuery("SELECT id, name, tenant_id FROM sys_user ORDER BY id")) {
+			while (resultSet.next()) {
+				rows.add(resultSet.getLong(1) + ":" + resultSet.getString(2) + ":" + resultSet.getLong(3));
+			}
+		}
+		return rows;
+	}
+
+	interface UserMapper {
+
+		@Insert("INSERT INTO sys_user (id, name) VALUES (#{a}, 'a'), (#{b}, 'b'), (#{c}, 'c')")
+		int insertNames(@Param("a") Long a, @Param("b") Long b, @Param("c") Long c);
+
+		@Insert("INSERT INTO sys_user (id) VALUES (#{a}), (#{b})")
+		int insertIds(@Param("a") Long a, @Param("b") Long b);
+
+		@Insert("INSERT INTO sys_user (id, tenant_id) VALUES (#{a}, 9), (#{b}, 9)")
+		int insertWithTenant(@Param("a") Long a, @Param("b") Long b);
+
+		@Select("SELECT id FROM sys_user ORDER BY id")
+		List<Long> listIds();
+
+	}
+
+}
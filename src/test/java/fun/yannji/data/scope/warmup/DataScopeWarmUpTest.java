@@ -0,0 +1,173 @@
+package fun.yannji.data.scope.warmup;
+
+import com.baomidou.mybatisplus.core.MybatisConfiguration;
+import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
+import fun.yannji.data.scope.DataScope;
+import fun.yannji.data.scope.DataScopeProperties;
+import fun.yannji.data.scope.annotation.DataScoped;
+import fun.yannji.data.scope.annotation.DataScopedStatementRegistry;
+import fun.yannji.data.scope.holder.DataScopeHolder;
+import fun.yannji.data.scope.interceptor.DataPermissionInterceptor;
+import fun.yannji.data.scope.util.SqlParseUtil;
+import net.sf.jsqlparser.expression.Alias;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.context.support.StaticApplicationContext;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 启动预热后改写缓存及改写计划缓存中已有静态语句的改写结果，首次执行直接命中缓存
+ *
+ * @author yannji
+ */
+class DataScopeWarmUpTest {
+
+	private final MybatisConfiguration configuration = new MybatisConfiguration();
+
+	private final DataPermissionInterceptor interceptor = new DataPermissionInterceptor();
+
+	private final DataScopeProperties.WarmUp properties = new DataScopeProperties.WarmUp();
+
+	private DataScopeWarmUp warmUp;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		StaticApplicationContext applicationContext = new StaticApplicationContext();
+		applicationContext.getBeanFactory().registerSingleton("dept", new DeptDataScope());
+		applicationContext.getBeanFactory().registerSingleton("owner", new OwnerDataScope());
+		DataScopeHolder dataScopeHolder = new DataScopeHolder();
+		dataScopeHolder.setApplicationContext(applicationContext);
+		dataScopeHolder.afterPropertiesSet();
+		DataScopedStatementRegistry registry = new DataScopedStatementRegistry(dataScopeHolder);
+
+		this.interceptor.setStatementRegistry(registry);
+		MybatisPlusInterceptor mybatisPlusInterceptor = new MybatisPlusInterceptor();
+		mybatisPlusInterceptor.addInnerInterceptor(this.interceptor);
+		this.configuration.addInterceptor(mybatisPlusInterceptor);
+		this.configuration.addMapper(UserMapper.class);
+
+		this.properties.setParallelism(2);
+		this.warmUp = new DataScopeWarmUp(
+				new StaticListableBeanFactory(Collections.emptyMap()).getBeanProvider(SqlSessionFactory.class),
+				dataScopeHolder, registry, this.properties);
+	}
+
+	@Test
+	void staticStatementsFillRewriteCaches() throws Exception {
+		this.warmUp.warmUp(this.configuration);
+
+		// 指纹固定的 DataScope 缓存改写结果，动态 DataScope 缓存改写计划，动态 SQL 及没有声明数据权限的语句不改写
+		assertThat(this.interceptor.getSqlCache().size()).isEqualTo(1);
+		assertThat(this.interceptor.getPlanCache().size()).isEqualTo(1);
+
+		assertThat(beforeQuery("listByDept").getSql()).isEqualTo(UserMapper.SQL + " WHERE sys_user.dept_id = 1");
+		assertThat(beforeQuery("listByOwner").getSql()).isEqualTo(UserMapper.SQL + " WHERE sys_user.owner_id = 1");
+		assertThat(this.interceptor.getSqlCache().getMissCount()).isEqualTo(1);
+		assertThat(this.interceptor.getSqlCache().getHitCount()).isEqualTo(1);
+		assertThat(this.interceptor.getPlanCache().getMissCount()).isEqualTo(1);
+		assertThat(this.interceptor.getPlanCache().getHitCount()).isEqualTo(1);
+	}
+
+	@Test
+	void configuredDataScopeKeysWarmUpStatementsWithoutAnnotation() throws Exception {
+		this.properties.setDataScopeKeys(Collections.singletonList("dept"));
+
+		this.warmUp.warmUp(this.configuration);
+
+		// listByDept 与 list 的 SQL 相同，共用一条改写结果
+		assertThat(this.interceptor.getSqlCache().size()).isEqualTo(1);
+		assertThat(this.interceptor.getPlanCache().size()).isEqualTo(1);
+	}
+
+	private BoundSql beforeQuery(String method) throws Exception {
+		MappedStatement ms = this.configuration.getMappedStatement(UserMapper.class.getName() + "." + method);
+		BoundSql boundSql = ms.getBoundSql(null);
+		this.interceptor.beforeQuery(null, ms, null, RowBounds.DEFAULT, null, boundSql);
+		return boundSql;
+	}
+
+	interface UserMapper {
+
+		String SQL = "SELECT id FROM sys_user";
+
+		@DataScoped("dept")
+		@Select(SQL)
+		List<Long> listByDept();
+
+		@DataScoped("owner")
+		@Select(SQL)
+		List<Long> listByOwner();
+
+		@Select(SQL)
+		List<Long> list();
+
+		@DataScoped("dept")
+		@Select("<script>SELECT id FROM sys_user <if test=\"status != null\">WHERE status = #{status}</if></script>")
+		List<Long> listByStatus(@Param("status") Integer status);
+
+	}
+
+	/**
+	 * 指纹固定，改写结果可以缓存
+	 */
+	static class DeptDataScope implements DataScope {
+
+		@Override
+		public String getDataScopeKey() {
+			return "dept";
+		}
+
+		@Override
+		public boolean includes(String tableName) {
+			return "sys_user".equals(tableName);
+		}
+
+		@Override
+		public Expression getExpression(String tableName, Alias tableAlias) {
+			return new EqualsTo(SqlParseUtil.getAliasColumn(tableName, tableAlias, "dept_id"), new LongValue(1));
+		}
+
+		@Override
+		public String getFingerprint() {
+			return "1";
+		}
+
+	}
+
+	/**
+	 * 没有指纹，只缓存改写计划
+	 */
+	static class OwnerDataScope implements DataScope {
+
+		@Override
+		public String getDataScopeKey() {
+			return "owner";
+		}
+
+		@Override
+		public boolean includes(String tableName) {
+			return "sys_user".equals(tableName);
+		}
+
+		@Override
+		public Expression getExpression(String tableName, Alias tableAlias) {
+			return new EqualsTo(SqlParseUtil.getAliasColumn(tableName, tableAlias, "owner_id"), new LongValue(1));
+		}
+
+	}
+
+}